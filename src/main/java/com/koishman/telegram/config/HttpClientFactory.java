@@ -0,0 +1,314 @@
+package com.koishman.telegram.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.ConnectionKeepAliveStrategy;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.DefaultConnectionKeepAliveStrategy;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.client5.http.io.LeaseRequest;
+import org.apache.hc.client5.http.nio.AsyncConnectionEndpoint;
+import org.apache.hc.client5.http.socket.ConnectionSocketFactory;
+import org.apache.hc.client5.http.socket.PlainConnectionSocketFactory;
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactory;
+import org.apache.hc.client5.http.ssl.TrustAllStrategy;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.HttpRequestInterceptor;
+import org.apache.hc.core5.http.HttpResponseInterceptor;
+import org.apache.hc.core5.http.config.RegistryBuilder;
+import org.apache.hc.core5.http.nio.ssl.TlsStrategy;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.ConnPoolControl;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.pool.PoolReusePolicy;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.ssl.SSLContextBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Builds every outbound HTTP client of the application, one per use case
+ * ("telegram-api", "translation-api", ...), with the pool sizes, timeouts,
+ * keep-alive cap and idle eviction configured for it under
+ * {@code http-clients.clients.<name>}. Each client records its lease waits
+ * and per-endpoint latency; see {@link #getStats()}.
+ *
+ * <p>Clients trust all certificates (for Netskope compatibility), as the
+ * separately built clients did before.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HttpClientFactory {
+
+    private static final String STARTED_ATTRIBUTE = HttpClientFactory.class.getName() + ".started";
+    private static final String METHOD_ATTRIBUTE = HttpClientFactory.class.getName() + ".method";
+    private static final String PATH_ATTRIBUTE = HttpClientFactory.class.getName() + ".path";
+
+    private final HttpClientsConfig config;
+
+    private final Map<String, HttpClientMetrics> metricsByName = new ConcurrentHashMap<>();
+    private final List<Closeable> clients = new CopyOnWriteArrayList<>();
+    private SSLContext sslContext;
+
+    @PostConstruct
+    public void init() {
+        try {
+            sslContext = SSLContextBuilder.create()
+                    .loadTrustMaterial(new TrustAllStrategy())
+                    .build();
+        } catch (Exception e) {
+            log.error("Failed to create SSL context trusting all certificates, using the default", e);
+            sslContext = null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Closeable client : clients) {
+            try {
+                client.close();
+            } catch (Exception e) {
+                log.debug("Failed to close HTTP client", e);
+            }
+        }
+    }
+
+    /**
+     * A blocking client with a connection pool.
+     */
+    public CloseableHttpClient classicClient(String name) {
+        HttpClientsConfig.Settings settings = config.settingsFor(name);
+        HttpClientMetrics metrics = metricsFor(name);
+
+        var registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", sslContext != null
+                        ? new SSLConnectionSocketFactory(sslContext) : SSLConnectionSocketFactory.getSocketFactory())
+                .build();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                registry, PoolConcurrencyPolicy.STRICT, PoolReusePolicy.LIFO, TimeValue.NEG_ONE_MILLISECOND) {
+            @Override
+            public LeaseRequest lease(String id, HttpRoute route, Timeout requestTimeout, Object state) {
+                LeaseRequest lease = super.lease(id, route, requestTimeout, state);
+                long started = System.nanoTime();
+                return new LeaseRequest() {
+                    @Override
+                    public ConnectionEndpoint get(Timeout timeout)
+                            throws InterruptedException, ExecutionException, TimeoutException {
+                        ConnectionEndpoint endpoint = lease.get(timeout);
+                        metrics.leased(System.nanoTime() - started);
+                        return endpoint;
+                    }
+
+                    @Override
+                    public boolean cancel() {
+                        return lease.cancel();
+                    }
+                };
+            }
+        };
+        connectionManager.setMaxTotal(settings.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(settings.getMaxPerRoute());
+        metrics.setPoolStats(() -> poolStats(connectionManager));
+
+        CloseableHttpClient client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig(settings))
+                .setKeepAliveStrategy(keepAliveStrategy(settings))
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(settings.getIdleEvictSeconds()))
+                .addRequestInterceptorFirst(requestStarted())
+                .addResponseInterceptorLast(responseReceived(metrics))
+                .build();
+        clients.add(client);
+        log.info("HTTP client {}: {} per route, {} total, response timeout {}ms",
+                name, settings.getMaxPerRoute(), settings.getMaxTotal(), settings.getResponseTimeoutMs());
+        return client;
+    }
+
+    /**
+     * A started non-blocking client. With {@code http2} all requests to a
+     * host share one multiplexed HTTP/2 connection (https only); otherwise
+     * HTTP/1.1 over a connection pool. Automatic retries are off, so callers
+     * see every 429 and 503 themselves.
+     */
+    public CloseableHttpAsyncClient asyncClient(String name, boolean http2) {
+        HttpClientsConfig.Settings settings = config.settingsFor(name);
+        HttpClientMetrics metrics = metricsFor(name);
+
+        TlsStrategy tlsStrategy = sslContext != null
+                ? ClientTlsStrategyBuilder.create().setSslContext(sslContext).build()
+                : ClientTlsStrategyBuilder.create().useSystemProperties().build();
+
+        CloseableHttpAsyncClient client;
+        if (http2) {
+            client = HttpAsyncClients.customHttp2()
+                    .setTlsStrategy(tlsStrategy)
+                    .setDefaultRequestConfig(requestConfig(settings))
+                    .disableAutomaticRetries()
+                    .addRequestInterceptorFirst(requestStarted())
+                    .addResponseInterceptorLast(responseReceived(metrics))
+                    .build();
+        } else {
+            PoolingAsyncClientConnectionManager connectionManager = new PoolingAsyncClientConnectionManager(
+                    RegistryBuilder.<TlsStrategy>create().register("https", tlsStrategy).build(),
+                    PoolConcurrencyPolicy.STRICT, PoolReusePolicy.LIFO, TimeValue.NEG_ONE_MILLISECOND) {
+                @Override
+                public Future<AsyncConnectionEndpoint> lease(String id, HttpRoute route, Object state,
+                                                             Timeout requestTimeout,
+                                                             FutureCallback<AsyncConnectionEndpoint> callback) {
+                    long started = System.nanoTime();
+                    return super.lease(id, route, state, requestTimeout, new FutureCallback<AsyncConnectionEndpoint>() {
+                        @Override
+                        public void completed(AsyncConnectionEndpoint endpoint) {
+                            metrics.leased(System.nanoTime() - started);
+                            if (callback != null) {
+                                callback.completed(endpoint);
+                            }
+                        }
+
+                        @Override
+                        public void failed(Exception e) {
+                            if (callback != null) {
+                                callback.failed(e);
+                            }
+                        }
+
+                        @Override
+                        public void cancelled() {
+                            if (callback != null) {
+                                callback.cancelled();
+                            }
+                        }
+                    });
+                }
+            };
+            connectionManager.setMaxTotal(settings.getMaxTotal());
+            connectionManager.setDefaultMaxPerRoute(settings.getMaxPerRoute());
+            metrics.setPoolStats(() -> poolStats(connectionManager));
+
+            client = HttpAsyncClients.custom()
+                    .setVersionPolicy(HttpVersionPolicy.FORCE_HTTP_1)
+                    .setConnectionManager(connectionManager)
+                    .setDefaultRequestConfig(requestConfig(settings))
+                    .setKeepAliveStrategy(keepAliveStrategy(settings))
+                    .evictExpiredConnections()
+                    .evictIdleConnections(TimeValue.ofSeconds(settings.getIdleEvictSeconds()))
+                    .disableAutomaticRetries()
+                    .addRequestInterceptorFirst(requestStarted())
+                    .addResponseInterceptorLast(responseReceived(metrics))
+                    .build();
+        }
+        client.start();
+        clients.add(() -> client.close(CloseMode.GRACEFUL));
+        log.info("HTTP client {}: {}, response timeout {}ms", name,
+                http2 ? "HTTP/2" : "HTTP/1.1, " + settings.getMaxPerRoute() + " per route, " + settings.getMaxTotal() + " total",
+                settings.getResponseTimeoutMs());
+        return client;
+    }
+
+    /**
+     * A RestTemplate over a pooled client. RestTemplate only supports
+     * HttpClient 4, so this one is built with that.
+     */
+    public RestTemplate restTemplate(String name) {
+        HttpClientsConfig.Settings settings = config.settingsFor(name);
+        RestTemplateSupport.PooledRestTemplate pooled = RestTemplateSupport.create(settings, sslContext, metricsFor(name));
+        clients.add(pooled.getHttpClient());
+        log.info("HTTP client {}: {} per route, {} total, response timeout {}ms",
+                name, settings.getMaxPerRoute(), settings.getMaxTotal(), settings.getResponseTimeoutMs());
+        return pooled.getRestTemplate();
+    }
+
+    /**
+     * Per use case: pool state (leased, pending, available, max), lease
+     * wait times, and latency per endpoint.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new TreeMap<>();
+        metricsByName.forEach((name, metrics) -> stats.put(name, metrics.toMap()));
+        return stats;
+    }
+
+    private HttpClientMetrics metricsFor(String name) {
+        return metricsByName.computeIfAbsent(name, key -> new HttpClientMetrics());
+    }
+
+    private static RequestConfig requestConfig(HttpClientsConfig.Settings settings) {
+        return RequestConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(settings.getConnectTimeoutMs()))
+                .setResponseTimeout(Timeout.ofMilliseconds(settings.getResponseTimeoutMs()))
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(settings.getLeaseTimeoutMs()))
+                .setConnectionKeepAlive(TimeValue.ofSeconds(settings.getKeepAliveSeconds()))
+                .build();
+    }
+
+    // The server's Keep-Alive timeout, but never longer than configured
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(HttpClientsConfig.Settings settings) {
+        TimeValue cap = TimeValue.ofSeconds(settings.getKeepAliveSeconds());
+        return (response, context) -> {
+            TimeValue server = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return server == null || server.toMilliseconds() < 0 || server.toMilliseconds() > cap.toMilliseconds()
+                    ? cap : server;
+        };
+    }
+
+    private static HttpRequestInterceptor requestStarted() {
+        return (request, entity, context) -> {
+            context.setAttribute(STARTED_ATTRIBUTE, System.nanoTime());
+            context.setAttribute(METHOD_ATTRIBUTE, request.getMethod());
+            context.setAttribute(PATH_ATTRIBUTE, request.getPath());
+        };
+    }
+
+    // Latency up to the response head, so streamed bodies don't count
+    private static HttpResponseInterceptor responseReceived(HttpClientMetrics metrics) {
+        return (response, entity, context) -> {
+            Object started = context.getAttribute(STARTED_ATTRIBUTE);
+            if (started instanceof Long) {
+                metrics.exchanged((String) context.getAttribute(METHOD_ATTRIBUTE),
+                        (String) context.getAttribute(PATH_ATTRIBUTE), System.nanoTime() - (Long) started);
+            }
+        };
+    }
+
+    private static Map<String, Object> poolStats(ConnPoolControl<HttpRoute> pool) {
+        PoolStats total = pool.getTotalStats();
+        return poolStats(total.getLeased(), total.getPending(), total.getAvailable(), total.getMax());
+    }
+
+    static Map<String, Object> poolStats(int leased, int pending, int available, int max) {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("leased", leased);
+        stats.put("pending", pending);
+        stats.put("available", available);
+        stats.put("max", max);
+        return stats;
+    }
+}
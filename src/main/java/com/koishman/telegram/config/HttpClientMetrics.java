@@ -0,0 +1,87 @@
+package com.koishman.telegram.config;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Connection pool and latency figures of one HTTP client use case: how long
+ * requests waited for a pooled connection, how many are waiting now, and
+ * how long each endpoint takes to answer.
+ */
+public class HttpClientMetrics {
+
+    private final LatencyStats leases = new LatencyStats();
+    private final Map<String, LatencyStats> endpoints = new ConcurrentHashMap<>();
+    private volatile Supplier<Map<String, Object>> poolStats;
+
+    void setPoolStats(Supplier<Map<String, Object>> poolStats) {
+        this.poolStats = poolStats;
+    }
+
+    void leased(long nanos) {
+        leases.record(nanos);
+    }
+
+    void exchanged(String method, String path, long nanos) {
+        endpoints.computeIfAbsent(endpointOf(method, path), endpoint -> new LatencyStats()).record(nanos);
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        Supplier<Map<String, Object>> pool = poolStats;
+        // HTTP/2 clients multiplex one connection and have no pool
+        result.put("pool", pool != null ? pool.get() : null);
+        result.put("lease", leases.toMap());
+        Map<String, Object> byEndpoint = new TreeMap<>();
+        endpoints.forEach((endpoint, stats) -> byEndpoint.put(endpoint, stats.toMap()));
+        result.put("endpoints", byEndpoint);
+        return result;
+    }
+
+    /**
+     * "POST /api/translation/upload". Path segments with digits or dots
+     * (ids, file names, the bot token) become {id}, which keeps the number
+     * of endpoints small and secrets out of the figures.
+     */
+    static String endpointOf(String method, String path) {
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        StringBuilder endpoint = new StringBuilder(method).append(' ');
+        int start = endpoint.length();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                endpoint.append('/').append(segment.matches(".*[0-9.].*") ? "{id}" : segment);
+            }
+        }
+        if (endpoint.length() == start) {
+            endpoint.append('/');
+        }
+        return endpoint.toString();
+    }
+
+    private static class LatencyStats {
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        synchronized void record(long nanos) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        synchronized Map<String, Object> toMap() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("count", count);
+            result.put("avg_ms", count > 0 ? TimeUnit.NANOSECONDS.toMillis(totalNanos / count) : 0);
+            result.put("max_ms", TimeUnit.NANOSECONDS.toMillis(maxNanos));
+            return result;
+        }
+    }
+}
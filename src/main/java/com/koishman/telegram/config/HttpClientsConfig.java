@@ -0,0 +1,37 @@
+package com.koishman.telegram.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pool sizes and timeouts of the outbound HTTP clients, per use case (see
+ * {@link HttpClientFactory}). A use case not listed gets the defaults below.
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "http-clients")
+public class HttpClientsConfig {
+    private Map<String, Settings> clients = new HashMap<>();
+
+    public Settings settingsFor(String name) {
+        return clients.getOrDefault(name, new Settings());
+    }
+
+    @Getter
+    @Setter
+    public static class Settings {
+        private int maxPerRoute = 10;
+        private int maxTotal = 20;
+        private long connectTimeoutMs = 10000;
+        private long responseTimeoutMs = 60000; // Longest silence while waiting for a response
+        private long leaseTimeoutMs = 30000; // Longest wait for a free pooled connection
+        private long keepAliveSeconds = 60; // Cap on how long an idle connection is reused
+        private long idleEvictSeconds = 30; // Idle connections older than this are closed
+    }
+}
@@ -1,54 +0,0 @@
-package com.koishman.telegram.config;
-
-import lombok.extern.slf4j.Slf4j;
-import org.apache.http.conn.ssl.NoopHostnameVerifier;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.conn.ssl.TrustAllStrategy;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.ssl.SSLContextBuilder;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
-import org.springframework.web.client.RestTemplate;
-
-import javax.net.ssl.SSLContext;
-
-@Slf4j
-@Configuration
-public class RestTemplateConfig {
-
-    @Bean
-    public RestTemplate restTemplate() {
-        try {
-            // Build SSL context that trusts all certificates
-            // WARNING: This is for development/debugging only
-            // For production, use proper certificate validation
-            SSLContext sslContext = SSLContextBuilder
-                    .create()
-                    .loadTrustMaterial(new TrustAllStrategy())
-                    .build();
-
-            SSLConnectionSocketFactory sslSocketFactory = new SSLConnectionSocketFactory(
-                    sslContext,
-                    NoopHostnameVerifier.INSTANCE
-            );
-
-            CloseableHttpClient httpClient = HttpClients.custom()
-                    .setSSLSocketFactory(sslSocketFactory)
-                    .build();
-
-            HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory();
-            factory.setHttpClient(httpClient);
-            factory.setConnectTimeout(10000);
-            factory.setReadTimeout(30000);
-
-            log.info("RestTemplate configured with custom SSL context (trusts all certificates)");
-            return new RestTemplate(factory);
-
-        } catch (Exception e) {
-            log.error("Failed to configure RestTemplate with custom SSL, using default", e);
-            return new RestTemplate();
-        }
-    }
-}
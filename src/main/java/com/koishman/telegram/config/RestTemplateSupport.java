@@ -0,0 +1,110 @@
+package com.koishman.telegram.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import javax.net.ssl.SSLContext;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The HttpClient 4 side of {@link HttpClientFactory}, kept apart because its
+ * class names clash with HttpClient 5's.
+ */
+final class RestTemplateSupport {
+
+    private RestTemplateSupport() {
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class PooledRestTemplate {
+        private final RestTemplate restTemplate;
+        private final CloseableHttpClient httpClient;
+    }
+
+    static PooledRestTemplate create(HttpClientsConfig.Settings settings, SSLContext sslContext, HttpClientMetrics metrics) {
+        var registry = RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", sslContext != null
+                        ? new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE)
+                        : SSLConnectionSocketFactory.getSocketFactory())
+                .build();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(registry) {
+            @Override
+            public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+                ConnectionRequest request = super.requestConnection(route, state);
+                long started = System.nanoTime();
+                return new ConnectionRequest() {
+                    @Override
+                    public HttpClientConnection get(long timeout, TimeUnit unit)
+                            throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                        HttpClientConnection connection = request.get(timeout, unit);
+                        metrics.leased(System.nanoTime() - started);
+                        return connection;
+                    }
+
+                    @Override
+                    public boolean cancel() {
+                        return request.cancel();
+                    }
+                };
+            }
+        };
+        connectionManager.setMaxTotal(settings.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(settings.getMaxPerRoute());
+        metrics.setPoolStats(() -> {
+            PoolStats total = connectionManager.getTotalStats();
+            return HttpClientFactory.poolStats(total.getLeased(), total.getPending(), total.getAvailable(), total.getMax());
+        });
+
+        long keepAliveMs = TimeUnit.SECONDS.toMillis(settings.getKeepAliveSeconds());
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long server = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return server < 0 || server > keepAliveMs ? keepAliveMs : server;
+        };
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout((int) settings.getConnectTimeoutMs())
+                        .setSocketTimeout((int) settings.getResponseTimeoutMs())
+                        .setConnectionRequestTimeout((int) settings.getLeaseTimeoutMs())
+                        .build())
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .evictExpiredConnections()
+                .evictIdleConnections(settings.getIdleEvictSeconds(), TimeUnit.SECONDS)
+                .build();
+
+        RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+        ClientHttpRequestInterceptor timing = (request, body, execution) -> {
+            long started = System.nanoTime();
+            try {
+                return execution.execute(request, body);
+            } finally {
+                metrics.exchanged(request.getMethodValue(), request.getURI().getRawPath(), System.nanoTime() - started);
+            }
+        };
+        restTemplate.getInterceptors().add(timing);
+        return new PooledRestTemplate(restTemplate, httpClient);
+    }
+}
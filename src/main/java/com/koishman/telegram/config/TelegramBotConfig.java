@@ -14,5 +14,15 @@ public class TelegramBotConfig {
     private String botToken;
     private String webhookSecret;
     private String translationApiBase;
+    private String translationTransport = "auto"; // auto, local or http
+    private String jobCallbackUrl; // Where a remote translation service POSTs job events, if set
     private String tempDownloadDir = "./downloads";
+    private boolean http2 = true; // Multiplex Bot API calls over one HTTP/2 connection when api-base is https
+    private long progressEditIntervalMs = 1000; // Per chat; Telegram throttles edits to about one a second
+    private double globalMessagesPerSecond = 30; // Telegram's bot-wide limit
+    private double chatMessagesPerSecond = 1; // Telegram's per-chat limit
+    private int deliveryThreads = 4; // Open job outputs for delivery
+    private int deliveriesPerChat = 2; // Outputs uploaded to one chat at the same time
+    private String fileIdCacheFile = "./cache/telegram-file-ids.json"; // Where uploaded outputs' file_ids are kept
+    private int fileIdCacheMaxEntries = 10000; // Least recently used file_ids beyond this are dropped; 0 disables reuse
 }
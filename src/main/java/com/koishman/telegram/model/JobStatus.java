@@ -1,15 +1,20 @@
 package com.koishman.telegram.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
 import java.util.Map;
 
 @Data
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class JobStatus {
     private String status;
     private Map<String, String> outputs;
 
+    @JsonProperty("output_hashes")
+    private Map<String, String> outputHashes; // SHA-256 of each output's content, by output key
+
     @JsonProperty("duration_seconds")
     private String durationSeconds;
 
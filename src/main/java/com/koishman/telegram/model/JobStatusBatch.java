@@ -0,0 +1,20 @@
+package com.koishman.telegram.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class JobStatusBatch {
+    private long version;
+    private Map<String, JobStatus> jobs = new LinkedHashMap<>();
+
+    @JsonProperty("not_found")
+    private List<String> notFound = new ArrayList<>();
+}
@@ -1,5 +1,6 @@
 package com.koishman.telegram.model;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
 import java.util.List;
@@ -7,4 +8,8 @@ import java.util.List;
 @Data
 public class MediaAnalysis {
     private List<MediaTrack> tracks;
+
+    // Claims the file the translation service kept from analysis, so it isn't uploaded again
+    @JsonProperty("upload_token")
+    private String uploadToken;
 }
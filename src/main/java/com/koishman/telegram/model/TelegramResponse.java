@@ -0,0 +1,93 @@
+package com.koishman.telegram.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The envelope every Bot API method answers with. {@code result} holds the
+ * method's payload when {@code ok}; otherwise {@code errorCode} and
+ * {@code description} say what went wrong.
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class TelegramResponse {
+    private boolean ok;
+    private JsonNode result;
+    private String description;
+
+    @JsonProperty("error_code")
+    private Integer errorCode;
+
+    private Parameters parameters;
+
+    @Data
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Parameters {
+        @JsonProperty("retry_after")
+        private Integer retryAfter;
+
+        @JsonProperty("migrate_to_chat_id")
+        private Long migrateToChatId;
+    }
+
+    /**
+     * @return seconds to wait before retrying a flood-limited (429) request,
+     * or null if Telegram didn't ask for a wait
+     */
+    public Integer getRetryAfter() {
+        return parameters != null ? parameters.getRetryAfter() : null;
+    }
+
+    /**
+     * @return the sent message's id, or null if the result isn't a message
+     */
+    public Integer getMessageId() {
+        return result != null && result.has("message_id") ? result.get("message_id").asInt() : null;
+    }
+
+    /**
+     * @return the video, document or animation a sent message carries, or null
+     */
+    public SentFile getSentFile() {
+        if (result == null) {
+            return null;
+        }
+        // Telegram may store an uploaded video as an animation or document. An
+        // animation message also carries it as a document, so that comes last.
+        for (String kind : new String[]{SentFile.VIDEO, SentFile.ANIMATION, SentFile.DOCUMENT}) {
+            if (result.has(kind) && result.get(kind).has("file_id")) {
+                return new SentFile(kind, result.get(kind).get("file_id").asText());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A file Telegram stores. {@code kind} is the message field it came in,
+     * which is also the send method its {@code fileId} must be sent with.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class SentFile {
+        public static final String VIDEO = "video";
+        public static final String DOCUMENT = "document";
+        public static final String ANIMATION = "animation";
+
+        private String kind;
+        private String fileId;
+    }
+
+    public static TelegramResponse error(int errorCode, String description) {
+        TelegramResponse response = new TelegramResponse();
+        response.setOk(false);
+        response.setErrorCode(errorCode);
+        response.setDescription(description);
+        return response;
+    }
+}
@@ -12,6 +12,7 @@ public class UserSession {
     private String fileId;
     private String fileName;
     private MediaAnalysis mediaAnalysis;
+    private String uploadToken;
 
     // User selections
     private String whisperModel = "large";
@@ -4,14 +4,17 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.koishman.telegram.config.TelegramBotConfig;
 import com.koishman.telegram.model.*;
+import com.koishman.telegram.translation.model.JobEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -22,11 +25,19 @@ public class EnhancedTelegramBotService {
     private final TelegramApiClient telegramApi;
     private final TranslationApiClient translationApi;
     private final SessionManager sessionManager;
+    private final ResultDeliveryService resultDelivery;
     private final TelegramBotConfig config;
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
     private final Set<String> completedJobs = Collections.synchronizedSet(new HashSet<>());
-    private final Map<String, ScheduledFuture<?>> scheduledTasks = new ConcurrentHashMap<>();
+    // Jobs we submitted and haven't reported yet -> chat that submitted them
+    private final Map<String, Long> awaitedJobs = new ConcurrentHashMap<>();
+    // Whether the long-poll loop for remote jobs is running
+    private final AtomicBoolean statusWatchRunning = new AtomicBoolean();
+
+    private static final int STATUS_WAIT_SECONDS = 30;
+    private static final int STATUS_RETRY_SECONDS = 10;
+    private static final int LOCAL_STATUS_ATTEMPTS = 3;
 
     // Supported languages
     private static final Map<String, String> LANGUAGES = Map.of(
@@ -133,6 +144,7 @@ public class EnhancedTelegramBotService {
 
             UserSession session = sessionManager.getSession(chatId);
             session.setMediaAnalysis(analysis);
+            session.setUploadToken(analysis.getUploadToken());
             session.setState(UserSession.SessionState.FILE_UPLOADED);
             sessionManager.updateSession(chatId, session);
 
@@ -578,6 +590,7 @@ public class EnhancedTelegramBotService {
 
             JobResponse jobResponse = translationApi.uploadVideo(
                     videoFile,
+                    session.getUploadToken(),
                     targetLangs,
                     session.getWhisperModel(),
                     session.getWhisperModelType(),
@@ -593,13 +606,14 @@ public class EnhancedTelegramBotService {
             );
 
             session.setJobId(jobResponse.getJobId());
+            // Tokens are single-use
+            session.setUploadToken(null);
             sessionManager.updateSession(chatId, session);
 
             telegramApi.sendMessage(chatId, "✅ Job submitted successfully!\nJob ID: " + jobResponse.getJobId() +
                     "\n\n⏳ Processing... I'll notify you when it's done.");
 
-            // Start polling for status
-            pollJobStatus(chatId, jobResponse.getJobId());
+            awaitJob(chatId, jobResponse.getJobId());
 
         } catch (Exception e) {
             log.error("Error starting processing", e);
@@ -608,101 +622,208 @@ public class EnhancedTelegramBotService {
         }
     }
 
-    private void pollJobStatus(Long chatId, String jobId) {
-        log.info("Starting job status polling for job {} (chatId: {})", jobId, chatId);
+    /**
+     * Waits for the job to finish without polling it on its own: in-process
+     * jobs announce completion as events, and remote jobs share one long-poll
+     * request (sped up by callback events if configured). The status is
+     * checked once right away, since the job may have finished (for example
+     * by reusing an identical job's outputs) before we started waiting.
+     */
+    private void awaitJob(Long chatId, String jobId) {
+        log.info("Waiting for job {} (chatId: {})", jobId, chatId);
+        awaitedJobs.put(jobId, chatId);
 
-        ScheduledFuture<?> task = scheduler.scheduleAtFixedRate(() -> {
-            try {
-                // Check if job was already completed
-                if (completedJobs.contains(jobId)) {
-                    log.info("Job {} already completed, canceling polling task", jobId);
-                    cancelPollingTask(jobId);
-                    return;
-                }
+        try {
+            if (checkJobStatus(chatId, jobId)) {
+                awaitedJobs.remove(jobId);
+                return;
+            }
+        } catch (Exception e) {
+            log.warn("Initial status check of job {} failed: {}", jobId, e.getMessage());
+        }
 
-                log.info("Polling status for job {}...", jobId);
-                JobStatus status = translationApi.getJobStatus(jobId);
-                log.info("Job {} status: {}", jobId, status.getStatus());
+        if (!translationApi.isLocal()) {
+            startStatusWatch();
+        }
+    }
 
-                if ("done".equals(status.getStatus())) {
-                    // Mark as completed first to prevent duplicate processing
-                    if (!completedJobs.add(jobId)) {
-                        log.info("Job {} already being processed by another thread", jobId);
-                        cancelPollingTask(jobId);
-                        return;
-                    }
+    /**
+     * Receives job events published in-process by the translation service, or
+     * POSTed to {@code /telegram/job-events} by a remote one.
+     */
+    @Async("jobEventExecutor")
+    @EventListener(condition = "#event.terminal")
+    public void onJobEvent(JobEvent event) {
+        if (!event.isTerminal()) {
+            return;
+        }
 
-                    log.info("Job {} completed! Sending files to chatId {}", jobId, chatId);
-                    handleJobCompleted(chatId, status);
-                    log.info("Job {} files sent successfully", jobId);
+        Long chatId = awaitedJobs.remove(event.getJobId());
+        if (chatId == null) {
+            // Not submitted by us, or already handled
+            return;
+        }
 
-                    // Cancel the polling task
-                    cancelPollingTask(jobId);
-                } else if ("failed".equals(status.getStatus())) {
-                    log.error("Job {} failed: {}", jobId, status.getError());
-                    telegramApi.sendMessage(chatId, "❌ Processing failed: " + status.getError());
-                    cancelPollingTask(jobId);
-                } else {
-                    log.info("Job {} still processing (status: {})...", jobId, status.getStatus());
+        log.info("Job {} event: {}", event.getJobId(), event.getType());
+        try {
+            if (checkJobStatus(chatId, event.getJobId())) {
+                return;
+            }
+            log.warn("Job {} reported {} but its status disagrees", event.getJobId(), event.getType());
+        } catch (Exception e) {
+            log.error("Error checking status of job {} after {} event: {}",
+                    event.getJobId(), event.getType(), e.getMessage(), e);
+        }
+        if (translationApi.isLocal()) {
+            // In-process jobs have no status watch to fall back on
+            retryLocalStatus(chatId, event, 1);
+        } else {
+            // Leave it to the status watch
+            awaitedJobs.put(event.getJobId(), chatId);
+            startStatusWatch();
+        }
+    }
+
+    /**
+     * Checks an in-process job's status again a little later, as the status
+     * watch would for a remote job. After the last attempt the chat is told
+     * what the event said, so it is never left waiting.
+     */
+    private void retryLocalStatus(Long chatId, JobEvent event, int attempt) {
+        scheduler.schedule(() -> {
+            try {
+                if (checkJobStatus(chatId, event.getJobId())) {
+                    return;
                 }
             } catch (Exception e) {
-                log.error("Error polling job status for job {}: {}", jobId, e.getMessage(), e);
-                telegramApi.sendMessage(chatId, "❌ Error checking job status: " + e.getMessage());
-                // Don't cancel on transient errors, keep retrying
+                log.warn("Status check {} of job {} failed: {}", attempt, event.getJobId(), e.getMessage());
             }
-        }, 0, 10, TimeUnit.SECONDS);
 
-        // Store the task so we can cancel it later
-        scheduledTasks.put(jobId, task);
-        log.info("Polling task scheduled for job {} (polling every 10 seconds)", jobId);
+            if (attempt < LOCAL_STATUS_ATTEMPTS) {
+                retryLocalStatus(chatId, event, attempt + 1);
+                return;
+            }
+            if (completedJobs.add(event.getJobId())) {
+                log.error("Giving up on the status of job {} after its {} event", event.getJobId(), event.getType());
+                if (event.getType() == JobEvent.Type.FAILED) {
+                    telegramApi.sendMessage(chatId, "❌ Processing failed: " + event.getError());
+                } else {
+                    telegramApi.sendMessage(chatId, "❌ Job " + event.getJobId()
+                            + " finished, but its results could not be retrieved.");
+                }
+            }
+        }, STATUS_RETRY_SECONDS, TimeUnit.SECONDS);
     }
 
-    private void cancelPollingTask(String jobId) {
-        ScheduledFuture<?> task = scheduledTasks.remove(jobId);
-        if (task != null) {
-            task.cancel(false);
-            log.info("Polling task canceled for job {}", jobId);
+    private void startStatusWatch() {
+        if (statusWatchRunning.compareAndSet(false, true)) {
+            scheduler.execute(this::runStatusWatch);
         }
     }
 
-    private void handleJobCompleted(Long chatId, JobStatus status) {
-        try {
-            telegramApi.sendMessage(chatId, "✅ Processing completed in " + status.getDurationSeconds() + " seconds!");
+    /**
+     * Long-polls the status of every awaited remote job, one request at a
+     * time for all of them, until none is left.
+     */
+    private void runStatusWatch() {
+        log.info("Job status watch started");
+        long since = -1;
+        Set<String> watched = Collections.emptySet();
 
-            // Download and send results
-            Map<String, String> outputs = status.getOutputs();
-
-            for (Map.Entry<String, String> output : outputs.entrySet()) {
-                String key = output.getKey();
-                String filename = output.getValue();
-
-                if (filename.endsWith(".mp4") || filename.endsWith(".mkv")) {
-                    String downloadPath = config.getTempDownloadDir() + "/" + chatId + "/" + filename;
-                    File resultFile = translationApi.downloadFile(filename, downloadPath);
+        try {
+            while (!awaitedJobs.isEmpty()) {
+                Set<String> jobIds = new HashSet<>(awaitedJobs.keySet());
+                // A newly added job may be behind the version we have seen; fetch everything once
+                if (!watched.containsAll(jobIds)) {
+                    since = -1;
+                }
+                watched = jobIds;
 
-                    String caption = "📹 " + key.toUpperCase() + " version";
-                    if (resultFile.length() < 50 * 1024 * 1024) { // 50MB limit
-                        telegramApi.sendVideo(chatId, resultFile, caption);
-                    } else {
-                        telegramApi.sendDocument(chatId, resultFile, caption + " (sent as document due to size)");
+                try {
+                    JobStatusBatch batch = translationApi.awaitJobStatuses(jobIds, since, STATUS_WAIT_SECONDS);
+                    if (batch == null) {
+                        continue; // Nothing changed within the wait
                     }
+                    since = batch.getVersion();
 
-                    resultFile.delete();
-                } else if (filename.endsWith(".srt")) {
-                    String downloadPath = config.getTempDownloadDir() + "/" + chatId + "/" + filename;
-                    File srtFile = translationApi.downloadFile(filename, downloadPath);
-                    telegramApi.sendDocument(chatId, srtFile, "📝 " + key.toUpperCase() + " subtitles");
-                    srtFile.delete();
+                    for (Map.Entry<String, JobStatus> entry : batch.getJobs().entrySet()) {
+                        Long chatId = awaitedJobs.get(entry.getKey());
+                        if (chatId != null && reportJobStatus(chatId, entry.getKey(), entry.getValue())) {
+                            awaitedJobs.remove(entry.getKey());
+                        }
+                    }
+                    for (String jobId : batch.getNotFound()) {
+                        Long chatId = awaitedJobs.remove(jobId);
+                        if (chatId != null) {
+                            log.error("Job {} is unknown to the translation service", jobId);
+                            telegramApi.sendMessage(chatId, "❌ Job " + jobId + " was lost by the translation service.");
+                        }
+                    }
+                } catch (Exception e) {
+                    log.error("Error watching job statuses for {}: {}", jobIds, e.getMessage(), e);
+                    // Don't give up on transient errors, keep retrying
+                    TimeUnit.SECONDS.sleep(STATUS_RETRY_SECONDS);
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            statusWatchRunning.set(false);
+        }
 
-            telegramApi.sendMessage(chatId, "✨ All files sent! Send another video to process.");
-            sessionManager.clearSession(chatId);
+        // A job may have been added while we were stopping
+        if (!awaitedJobs.isEmpty()) {
+            startStatusWatch();
+        }
+        log.info("Job status watch stopped");
+    }
+
+    /**
+     * Fetches the job's status and, if it has finished, sends the results or
+     * the error to the chat.
+     *
+     * @return whether the job has finished, successfully or not
+     */
+    private boolean checkJobStatus(Long chatId, String jobId) {
+        // Check if job was already completed
+        if (completedJobs.contains(jobId)) {
+            log.info("Job {} already completed", jobId);
+            return true;
+        }
 
-        } catch (Exception e) {
-            log.error("Error handling completed job", e);
-            telegramApi.sendMessage(chatId, "❌ Error downloading results: " + e.getMessage());
+        return reportJobStatus(chatId, jobId, translationApi.getJobStatus(jobId));
+    }
+
+    /**
+     * Sends the results or the error of a finished job to the chat. Each job
+     * is reported at most once, whichever path sees it finish first.
+     *
+     * @return whether the job has finished, successfully or not
+     */
+    private boolean reportJobStatus(Long chatId, String jobId, JobStatus status) {
+        log.info("Job {} status: {}", jobId, status.getStatus());
+
+        if ("done".equals(status.getStatus())) {
+            // Mark as completed first to prevent duplicate processing
+            if (!completedJobs.add(jobId)) {
+                log.info("Job {} already being processed by another thread", jobId);
+                return true;
+            }
+
+            log.info("Job {} completed! Delivering files to chatId {}", jobId, chatId);
+            resultDelivery.deliver(chatId, jobId, status);
+            return true;
+        } else if ("failed".equals(status.getStatus())) {
+            if (completedJobs.add(jobId)) {
+                log.error("Job {} failed: {}", jobId, status.getError());
+                telegramApi.sendMessage(chatId, "❌ Processing failed: " + status.getError());
+            }
+            return true;
         }
+
+        log.info("Job {} still processing (status: {})...", jobId, status.getStatus());
+        return false;
     }
 
     private Map<String, String> createButton(String text, String callbackData) {
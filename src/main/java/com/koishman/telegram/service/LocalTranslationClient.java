@@ -0,0 +1,132 @@
+package com.koishman.telegram.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.koishman.telegram.model.JobResponse;
+import com.koishman.telegram.model.JobStatus;
+import com.koishman.telegram.model.JobStatusBatch;
+import com.koishman.telegram.model.MediaAnalysis;
+import com.koishman.telegram.model.MediaTrack;
+import com.koishman.telegram.translation.model.StoredUpload;
+import com.koishman.telegram.translation.model.TranslationJob;
+import com.koishman.telegram.translation.model.TranslationJobRequest;
+import com.koishman.telegram.translation.service.FFmpegService;
+import com.koishman.telegram.translation.service.FileStorageService;
+import com.koishman.telegram.translation.service.JobSubmissionService;
+import com.koishman.telegram.translation.service.JobTrackingService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Talks to the translation services in this application directly, for
+ * {@link TranslationApiClient} when the bot and the translation API share a
+ * JVM. Uploads are handed over by hard link and outputs are read where they
+ * are, instead of being posted and downloaded over loopback HTTP.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LocalTranslationClient {
+
+    private static final TypeReference<List<MediaTrack>> TRACK_LIST = new TypeReference<List<MediaTrack>>() { };
+
+    private final FFmpegService ffmpegService;
+    private final FileStorageService fileStorageService;
+    private final JobTrackingService jobTrackingService;
+    private final JobSubmissionService jobSubmissionService;
+    private final ObjectMapper objectMapper;
+
+    public MediaAnalysis analyzeMedia(File videoFile) {
+        try {
+            // The file is already here, so there is nothing to stage
+            MediaAnalysis analysis = new MediaAnalysis();
+            analysis.setTracks(objectMapper.convertValue(ffmpegService.analyzeMedia(videoFile), TRACK_LIST));
+            log.info("Analyzed {} locally: {} tracks", videoFile.getName(), analysis.getTracks().size());
+            return analysis;
+        } catch (Exception e) {
+            log.error("Failed to analyze media", e);
+            throw new RuntimeException("Media analysis failed", e);
+        }
+    }
+
+    public JobResponse uploadVideo(File videoFile,
+                                   String targetLanguages,
+                                   String whisperModel,
+                                   String whisperModelType,
+                                   String whisperBackend,
+                                   Boolean alignOutput,
+                                   String translationModel,
+                                   String subtitleBurnType,
+                                   Boolean useSubtitlesOnly,
+                                   String originalLanguage,
+                                   Integer audioTrack,
+                                   Integer subtitleTrack,
+                                   Long chatId) {
+        try {
+            StoredUpload upload = fileStorageService.storeLocalFile(videoFile);
+
+            TranslationJobRequest request = jobSubmissionService.buildRequest(targetLanguages, whisperModel,
+                    whisperModelType, whisperBackend, alignOutput, translationModel, subtitleBurnType,
+                    useSubtitlesOnly, originalLanguage, audioTrack, subtitleTrack);
+
+            TranslationJob job = jobSubmissionService.submit(upload, videoFile.getName(), request, chatId);
+            log.info("Submitted job {} locally for {}", job.getJobId(), videoFile.getName());
+
+            JobResponse response = new JobResponse();
+            response.setJobId(job.getJobId());
+            return response;
+        } catch (Exception e) {
+            log.error("Failed to submit video", e);
+            throw new RuntimeException("Video upload failed", e);
+        }
+    }
+
+    public JobStatus getJobStatus(String jobId) {
+        TranslationJob job = jobTrackingService.getJob(jobId);
+        if (job == null) {
+            throw new RuntimeException("Failed to get job status: job not found: " + jobId);
+        }
+        // Same shape as the status endpoint, so callers can't tell the transports apart
+        return objectMapper.convertValue(jobTrackingService.describe(job), JobStatus.class);
+    }
+
+    /**
+     * Never waits: in-process callers get job events instead of long-polling.
+     */
+    public JobStatusBatch getJobStatuses(Collection<String> jobIds, long since) {
+        long version = jobTrackingService.getVersion(jobIds);
+        if (version <= since) {
+            return null;
+        }
+
+        JobStatusBatch batch = new JobStatusBatch();
+        batch.setVersion(version);
+        for (String jobId : jobIds) {
+            TranslationJob job = jobTrackingService.getJob(jobId);
+            if (job == null) {
+                batch.getNotFound().add(jobId);
+            } else {
+                batch.getJobs().put(jobId, objectMapper.convertValue(jobTrackingService.describe(job), JobStatus.class));
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * @return the output file where the job left it
+     * @throws FileNotFoundException if the job has no output with that name
+     */
+    public File findOutputFile(String jobId, String filename) throws FileNotFoundException {
+        File file = fileStorageService.getOutputFile(jobId, filename);
+        if (file == null || !file.exists()) {
+            throw new FileNotFoundException("No output named " + filename);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,242 @@
+package com.koishman.telegram.service;
+
+import com.koishman.telegram.config.TelegramBotConfig;
+import com.koishman.telegram.model.JobStatus;
+import com.koishman.telegram.model.TelegramResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Sends the outputs of finished jobs to their chats. Each output is streamed
+ * from the translation service straight into the Telegram upload, with no
+ * temporary file. Outputs are sent in parallel, up to
+ * {@code telegram.deliveries-per-chat} at a time per chat, on delivery
+ * threads of their own, so a large job doesn't hold up the status watch or
+ * other chats. Output content Telegram already has, per
+ * {@link TelegramFileIdCache}, is sent by {@code file_id} without an upload.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ResultDeliveryService {
+
+    private static final long VIDEO_SIZE_LIMIT = 50L * 1024 * 1024; // Larger videos are sent as documents
+
+    private final TelegramApiClient telegramApi;
+    private final TranslationApiClient translationApi;
+    private final SessionManager sessionManager;
+    private final TelegramFileIdCache fileIdCache;
+    private final TelegramBotConfig config;
+
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private final Map<Long, ChatLane> lanes = new HashMap<>();
+    private ExecutorService executor;
+
+    // Deliveries of one chat: how many are running and which wait for a turn
+    private static class ChatLane {
+        int running;
+        final Deque<Runnable> waiting = new ArrayDeque<>();
+    }
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newFixedThreadPool(config.getDeliveryThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "delivery-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts sending the job's outputs and returns at once. The chat is told
+     * when everything has been sent, or which outputs failed.
+     */
+    public CompletableFuture<Void> deliver(Long chatId, String jobId, JobStatus status) {
+        telegramApi.sendMessageAsync(chatId, "✅ Processing completed in " + status.getDurationSeconds() + " seconds!", null);
+
+        Map<String, String> hashes = status.getOutputHashes() != null ? status.getOutputHashes() : Map.of();
+        List<CompletableFuture<Boolean>> sends = new ArrayList<>();
+        status.getOutputs().forEach((key, filename) -> {
+            if (filename.endsWith(".mp4") || filename.endsWith(".mkv") || filename.endsWith(".srt")) {
+                sends.add(inLane(chatId, () -> sendOutput(chatId, jobId, key, filename, hashes.get(key))));
+            }
+        });
+
+        return CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).thenRun(() -> {
+            long failed = sends.stream().filter(send -> !send.join()).count();
+            log.info("Job {} delivered to chatId {}: {} of {} files sent", jobId, chatId, sends.size() - failed, sends.size());
+            if (failed == 0) {
+                telegramApi.sendMessageAsync(chatId, "✨ All files sent! Send another video to process.", null);
+            } else {
+                telegramApi.sendMessageAsync(chatId, "⚠️ " + failed + " of " + sends.size()
+                        + " files could not be sent. Send another video to process.", null);
+            }
+            sessionManager.clearSession(chatId);
+        });
+    }
+
+    /**
+     * @return whether the output was sent; failures are reported to the chat
+     */
+    private CompletableFuture<Boolean> sendOutput(Long chatId, String jobId, String key, String filename, String hash) {
+        TelegramResponse.SentFile cached = fileIdCache.get(hash);
+        CompletableFuture<TelegramResponse> sent;
+        if (cached != null) {
+            sent = resend(chatId, key, filename, cached).thenCompose(response -> {
+                if (response.isOk()) {
+                    return CompletableFuture.completedFuture(response);
+                }
+                // Telegram no longer knows the file; upload it after all
+                log.warn("Cached file_id for {} refused: {}", filename, response.getDescription());
+                fileIdCache.invalidate(hash, cached);
+                return openAndUpload(chatId, jobId, key, filename, hash);
+            });
+        } else {
+            sent = openAndUpload(chatId, jobId, key, filename, hash);
+        }
+
+        return sent.handle((response, error) -> {
+            if (error == null && response.isOk()) {
+                log.info("Sent {} to chatId {}{}", filename, chatId, cached != null ? " by file_id" : "");
+                return true;
+            }
+            String reason = error != null ? causeOf(error).getMessage() : response.getDescription();
+            log.error("Failed to send {} to chatId {}: {}", filename, chatId, reason);
+            telegramApi.sendMessageAsync(chatId, "❌ Failed to send " + key.toUpperCase() + " result: " + reason, null);
+            return false;
+        });
+    }
+
+    private CompletableFuture<TelegramResponse> resend(Long chatId, String key, String filename,
+                                                       TelegramResponse.SentFile cached) {
+        // Why the first upload went as a document isn't known, so no size remark
+        return telegramApi.sendStoredFileAsync(chatId, cached, caption(key, filename, true));
+    }
+
+    private CompletableFuture<TelegramResponse> openAndUpload(Long chatId, String jobId, String key, String filename,
+                                                              String hash) {
+        return CompletableFuture
+                .supplyAsync(() -> {
+                    try {
+                        return translationApi.openOutput(jobId, filename);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor)
+                .thenCompose(content -> upload(chatId, jobId, key, filename, content)
+                        .whenComplete((response, error) -> closeQuietly(content)))
+                .thenApply(response -> {
+                    if (response.isOk()) {
+                        fileIdCache.put(hash, response.getSentFile());
+                    }
+                    return response;
+                });
+    }
+
+    private CompletableFuture<TelegramResponse> upload(Long chatId, String jobId, String key, String filename,
+                                                       TranslationApiClient.OutputContent content) {
+        // The stream opened here serves the first attempt; a retried upload opens the output again
+        AtomicBoolean opened = new AtomicBoolean();
+        TelegramApiClient.UploadSource source = () -> opened.compareAndSet(false, true)
+                ? content.getStream() : translationApi.openOutput(jobId, filename).getStream();
+
+        boolean video = !filename.endsWith(".srt") && content.getSize() >= 0 && content.getSize() < VIDEO_SIZE_LIMIT;
+        String caption = caption(key, filename, video);
+        return video
+                ? telegramApi.sendVideoAsync(chatId, source, filename, caption)
+                : telegramApi.sendDocumentAsync(chatId, source, filename, caption);
+    }
+
+    private static String caption(String key, String filename, boolean video) {
+        if (filename.endsWith(".srt")) {
+            return "📝 " + key.toUpperCase() + " subtitles";
+        }
+        String caption = "📹 " + key.toUpperCase() + " version";
+        return video ? caption : caption + " (sent as document due to size)";
+    }
+
+    /**
+     * Runs {@code task} once fewer than {@code telegram.deliveries-per-chat}
+     * deliveries of the chat are running.
+     */
+    private <T> CompletableFuture<T> inLane(Long chatId, Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> task.get().whenComplete((value, error) -> {
+            finished(chatId);
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        });
+
+        boolean startNow;
+        synchronized (lanes) {
+            ChatLane lane = lanes.computeIfAbsent(chatId, id -> new ChatLane());
+            startNow = lane.running < config.getDeliveriesPerChat();
+            if (startNow) {
+                lane.running++;
+            } else {
+                lane.waiting.add(start);
+            }
+        }
+        if (startNow) {
+            start.run();
+        }
+        return result;
+    }
+
+    private void finished(Long chatId) {
+        Runnable next;
+        synchronized (lanes) {
+            ChatLane lane = lanes.get(chatId);
+            // The finished delivery's slot passes to the next one waiting
+            next = lane.waiting.poll();
+            if (next == null && --lane.running == 0) {
+                lanes.remove(chatId);
+            }
+        }
+        if (next != null) {
+            next.run();
+        }
+    }
+
+    private static Throwable causeOf(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof UncheckedIOException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    private static void closeQuietly(TranslationApiClient.OutputContent content) {
+        try {
+            content.close();
+        } catch (IOException e) {
+            log.debug("Failed to close output stream", e);
+        }
+    }
+}
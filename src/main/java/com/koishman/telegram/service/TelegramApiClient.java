@@ -1,278 +1,467 @@
 package com.koishman.telegram.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.koishman.telegram.config.HttpClientFactory;
 import com.koishman.telegram.config.TelegramBotConfig;
+import com.koishman.telegram.model.TelegramResponse;
+import com.koishman.telegram.service.TelegramOutboundScheduler.Priority;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.hc.client5.http.classic.methods.HttpPost;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
-import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
-import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactory;
-import org.apache.hc.client5.http.ssl.TrustAllStrategy;
-import org.apache.hc.core5.http.io.entity.StringEntity;
-import org.apache.hc.core5.ssl.SSLContextBuilder;
+import org.apache.hc.client5.http.async.methods.AbstractBinResponseConsumer;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.async.methods.SimpleRequestProducer;
+import org.apache.hc.client5.http.async.methods.SimpleResponseConsumer;
+import org.apache.hc.client5.http.entity.mime.AbstractContentBody;
+import org.apache.hc.client5.http.entity.mime.ContentBody;
+import org.apache.hc.client5.http.entity.mime.FileBody;
+import org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import org.apache.hc.core5.http.nio.support.classic.AbstractClassicEntityProducer;
 import org.springframework.stereotype.Service;
 
-import javax.net.ssl.SSLContext;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
-
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bot API client. The {@code *Async} methods don't block: they return as
+ * soon as the request is queued and complete on the client's I/O threads,
+ * so callbacks chained onto them must not block either. Against an https
+ * API base with {@code telegram.http2} on, all requests share one
+ * multiplexed HTTP/2 connection. Calls that post to chats go through the
+ * {@link TelegramOutboundScheduler}, which keeps them within Telegram's
+ * rate limits.
+ *
+ * <p>The other methods are blocking wrappers kept for existing callers.
+ * They log failures instead of throwing, except {@link #downloadFile}.
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class TelegramApiClient {
 
+    private static final int UPLOAD_BUFFER_SIZE = 64 * 1024;
+
     private final TelegramBotConfig config;
+    private final TelegramOutboundScheduler scheduler;
+    private final HttpClientFactory httpClients;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final CloseableHttpClient httpClient = createHttpClient();
 
-    private static CloseableHttpClient createHttpClient() {
+    private final AtomicInteger uploadThreadCounter = new AtomicInteger();
+    // Writes multipart bodies into the client's buffers, one thread per upload in flight
+    private final ExecutorService uploadWriter = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "telegram-upload-" + uploadThreadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private CloseableHttpAsyncClient httpClient;
+
+    /**
+     * Opens the content of a file to upload. Called on an upload thread, and
+     * again if the upload is retried.
+     */
+    @FunctionalInterface
+    public interface UploadSource {
+        InputStream open() throws IOException;
+    }
+
+    @PostConstruct
+    public void init() {
+        boolean http2 = config.isHttp2() && config.getApiBase() != null && config.getApiBase().startsWith("https:");
+        httpClient = httpClients.asyncClient("telegram-api", http2);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploadWriter.shutdownNow();
+    }
+
+    // ---- Non-blocking API ----
+
+    /**
+     * Calls a Bot API method with JSON parameters right away, bypassing the
+     * {@link TelegramOutboundScheduler}. The future fails only if Telegram
+     * couldn't be reached; a refused call completes with {@code ok == false}.
+     */
+    public CompletableFuture<TelegramResponse> call(String method, Map<String, Object> params) {
+        String json;
         try {
-            // Create SSL context that trusts all certificates (for Netskope compatibility)
-            SSLContext sslContext = SSLContextBuilder.create()
-                    .loadTrustMaterial(new TrustAllStrategy())
-                    .build();
-
-            SSLConnectionSocketFactory sslSocketFactory = new SSLConnectionSocketFactory(sslContext);
-
-            return HttpClients.custom()
-                    .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
-                            .setSSLSocketFactory(sslSocketFactory)
-                            .build())
-                    .build();
+            json = objectMapper.writeValueAsString(params);
         } catch (Exception e) {
-            log.error("Failed to create HTTP client with custom SSL", e);
-            return HttpClients.createDefault();
+            return CompletableFuture.failedFuture(e);
         }
+        SimpleHttpRequest request = SimpleRequestBuilder.post(methodUrl(method))
+                .setBody(json, ContentType.APPLICATION_JSON)
+                .build();
+        return execute(SimpleRequestProducer.create(request), SimpleResponseConsumer.create())
+                .thenApply(this::parse);
     }
 
-    public void sendMessage(Long chatId, String text) {
-        sendMessage(chatId, text, null);
+    public CompletableFuture<TelegramResponse> sendMessageAsync(Long chatId, String text, Object replyMarkup) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("chat_id", chatId);
+        requestBody.put("text", text);
+        if (replyMarkup != null) {
+            requestBody.put("reply_markup", replyMarkup);
+        }
+        return scheduler.submit(Priority.USER_MESSAGE, chatId, null, () -> call("sendMessage", requestBody));
     }
 
-    public void sendMessage(Long chatId, String text, Object replyMarkup) {
-        String url = config.getApiBase() + "/bot" + config.getBotToken() + "/sendMessage";
-
+    public CompletableFuture<TelegramResponse> editMessageTextAsync(Long chatId, Integer messageId, String text, Object replyMarkup) {
         Map<String, Object> requestBody = new HashMap<>();
         requestBody.put("chat_id", chatId);
+        requestBody.put("message_id", messageId);
         requestBody.put("text", text);
         if (replyMarkup != null) {
             requestBody.put("reply_markup", replyMarkup);
         }
+        return scheduler.submit(Priority.USER_MESSAGE, chatId, null, () -> call("editMessageText", requestBody));
+    }
 
-        try {
-            String json = objectMapper.writeValueAsString(requestBody);
-
-            HttpPost httpPost = new HttpPost(url);
-            httpPost.setHeader("Content-Type", "application/json");
-            httpPost.setEntity(new StringEntity(json));
-
-            httpClient.execute(httpPost, response -> {
-                log.info("Message sent to chatId {}: {} (status: {})", chatId, text, response.getCode());
-                return null;
-            });
-        } catch (Exception e) {
-            log.error("Failed to send message to chatId {}", chatId, e);
+    public CompletableFuture<TelegramResponse> answerCallbackQueryAsync(String callbackQueryId, String text) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("callback_query_id", callbackQueryId);
+        if (text != null) {
+            requestBody.put("text", text);
         }
+        // Answers don't post to the chat, so only the global limit applies
+        return scheduler.submit(Priority.CALLBACK_ANSWER, null, null, () -> call("answerCallbackQuery", requestBody));
     }
 
-    public void editMessageText(Long chatId, Integer messageId, String text, Object replyMarkup) {
-        String url = config.getApiBase() + "/bot" + config.getBotToken() + "/editMessageText";
+    public CompletableFuture<TelegramResponse> sendProgressMessageAsync(Long chatId, String text) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("chat_id", chatId);
+        requestBody.put("text", text);
+        requestBody.put("parse_mode", "HTML");
+        return scheduler.submit(Priority.USER_MESSAGE, chatId, null, () -> call("sendMessage", requestBody));
+    }
 
+    /**
+     * Low priority; an edit still queued is replaced by a newer one of the
+     * same message.
+     */
+    public CompletableFuture<TelegramResponse> updateProgressMessageAsync(Long chatId, Integer messageId, String text) {
         Map<String, Object> requestBody = new HashMap<>();
         requestBody.put("chat_id", chatId);
         requestBody.put("message_id", messageId);
         requestBody.put("text", text);
-        if (replyMarkup != null) {
-            requestBody.put("reply_markup", replyMarkup);
-        }
+        requestBody.put("parse_mode", "HTML");
+        return scheduler.submit(Priority.PROGRESS_EDIT, chatId, chatId + ":" + messageId,
+                () -> call("editMessageText", requestBody));
+    }
 
-        try {
-            String json = objectMapper.writeValueAsString(requestBody);
+    public CompletableFuture<TelegramResponse> sendVideoAsync(Long chatId, File videoFile, String caption) {
+        return scheduler.submit(Priority.DELIVERY, chatId, null,
+                () -> sendFile("sendVideo", "video", chatId, fileBody(videoFile), caption));
+    }
 
-            HttpPost httpPost = new HttpPost(url);
-            httpPost.setHeader("Content-Type", "application/json");
-            httpPost.setEntity(new StringEntity(json));
+    /**
+     * Uploads a video read from {@code source} as it is sent, without a
+     * local copy.
+     */
+    public CompletableFuture<TelegramResponse> sendVideoAsync(Long chatId, UploadSource source, String filename, String caption) {
+        return scheduler.submit(Priority.DELIVERY, chatId, null,
+                () -> sendFile("sendVideo", "video", chatId, streamedBody(source, filename), caption));
+    }
 
-            httpClient.execute(httpPost, response -> {
-                log.info("Message edited for chatId {}: {} (status: {})", chatId, text, response.getCode());
-                return null;
-            });
-        } catch (Exception e) {
-            log.error("Failed to edit message for chatId {}", chatId, e);
-        }
+    public CompletableFuture<TelegramResponse> sendDocumentAsync(Long chatId, File documentFile, String caption) {
+        return scheduler.submit(Priority.DELIVERY, chatId, null,
+                () -> sendFile("sendDocument", "document", chatId, fileBody(documentFile), caption));
     }
 
+    public CompletableFuture<TelegramResponse> sendDocumentAsync(Long chatId, UploadSource source, String filename, String caption) {
+        return scheduler.submit(Priority.DELIVERY, chatId, null,
+                () -> sendFile("sendDocument", "document", chatId, streamedBody(source, filename), caption));
+    }
 
-    public void answerCallbackQuery(String callbackQueryId, String text) {
-        String url = config.getApiBase() + "/bot" + config.getBotToken() + "/answerCallbackQuery";
+    /**
+     * Sends a file Telegram already stores, by the {@code file_id} of an
+     * earlier upload, with the send method of its kind. Nothing is uploaded.
+     */
+    public CompletableFuture<TelegramResponse> sendStoredFileAsync(Long chatId, TelegramResponse.SentFile file, String caption) {
+        String method = "send" + Character.toUpperCase(file.getKind().charAt(0)) + file.getKind().substring(1);
+        return scheduler.submit(Priority.DELIVERY, chatId, null,
+                () -> sendFileId(method, file.getKind(), chatId, file.getFileId(), caption));
+    }
 
+    /**
+     * Downloads a file users sent to the bot, streaming it straight to
+     * {@code outputPath}. Fails if Telegram refuses or the download breaks.
+     */
+    public CompletableFuture<File> downloadFileAsync(String fileId, String outputPath) {
         Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("callback_query_id", callbackQueryId);
-        if (text != null) {
-            requestBody.put("text", text);
-        }
+        requestBody.put("file_id", fileId);
 
-        try {
-            String json = objectMapper.writeValueAsString(requestBody);
+        return call("getFile", requestBody).thenCompose(response -> {
+            if (!response.isOk() || response.getResult() == null || !response.getResult().has("file_path")) {
+                throw new CompletionException(new IOException("getFile failed: " + response.getDescription()));
+            }
+            String filePath = response.getResult().get("file_path").asText();
+            String downloadUrl = config.getApiBase() + "/file/bot" + config.getBotToken() + "/" + filePath;
 
-            HttpPost httpPost = new HttpPost(url);
-            httpPost.setHeader("Content-Type", "application/json");
-            httpPost.setEntity(new StringEntity(json));
+            File outputFile = new File(outputPath);
+            outputFile.getParentFile().mkdirs();
+            return execute(SimpleRequestProducer.create(SimpleRequestBuilder.get(downloadUrl).build()),
+                    new FileResponseConsumer(outputFile));
+        });
+    }
 
-            httpClient.execute(httpPost, response -> {
-                log.debug("Callback query answered (status: {})", response.getCode());
-                return null;
-            });
-        } catch (Exception e) {
-            log.error("Failed to answer callback query", e);
+    // ---- Blocking wrappers ----
+
+    public void sendMessage(Long chatId, String text) {
+        sendMessage(chatId, text, null);
+    }
+
+    public void sendMessage(Long chatId, String text, Object replyMarkup) {
+        TelegramResponse response = await(sendMessageAsync(chatId, text, replyMarkup), "send message to chatId " + chatId);
+        if (response != null && response.isOk()) {
+            log.info("Message sent to chatId {}: {}", chatId, text);
+        }
+    }
+
+    public void editMessageText(Long chatId, Integer messageId, String text, Object replyMarkup) {
+        TelegramResponse response = await(editMessageTextAsync(chatId, messageId, text, replyMarkup),
+                "edit message for chatId " + chatId);
+        if (response != null && response.isOk()) {
+            log.info("Message edited for chatId {}: {}", chatId, text);
         }
     }
 
-    public java.io.File downloadFile(String fileId, String outputPath) {
+    public void answerCallbackQuery(String callbackQueryId, String text) {
+        await(answerCallbackQueryAsync(callbackQueryId, text), "answer callback query");
+    }
+
+    public File downloadFile(String fileId, String outputPath) {
         try {
-            // First, get file path
-            String getFileUrl = config.getApiBase() + "/bot" + config.getBotToken() + "/getFile";
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("file_id", fileId);
-
-            String json = objectMapper.writeValueAsString(requestBody);
-            HttpPost httpPost = new HttpPost(getFileUrl);
-            httpPost.setHeader("Content-Type", "application/json");
-            httpPost.setEntity(new StringEntity(json));
-
-            String filePath = httpClient.execute(httpPost, response -> {
-                String responseBody = org.apache.hc.core5.http.io.entity.EntityUtils.toString(response.getEntity());
-                com.fasterxml.jackson.databind.JsonNode jsonNode = objectMapper.readTree(responseBody);
-                return jsonNode.get("result").get("file_path").asText();
-            });
-
-            // Download the file
-            String downloadUrl = config.getApiBase() + "/file/bot" + config.getBotToken() + "/" + filePath;
-            org.apache.hc.client5.http.classic.methods.HttpGet httpGet = new org.apache.hc.client5.http.classic.methods.HttpGet(downloadUrl);
+            File outputFile = downloadFileAsync(fileId, outputPath).join();
+            log.info("File downloaded: {}", outputFile.getAbsolutePath());
+            return outputFile;
+        } catch (CompletionException | CancellationException e) {
+            log.error("Failed to download file {}", fileId, causeOf(e));
+            throw new RuntimeException("File download failed", causeOf(e));
+        }
+    }
 
-            java.io.File outputFile = new java.io.File(outputPath);
-            outputFile.getParentFile().mkdirs();
+    public void sendVideo(Long chatId, File videoFile, String caption) {
+        TelegramResponse response = await(sendVideoAsync(chatId, videoFile, caption), "send video to chatId " + chatId);
+        if (response != null && response.isOk()) {
+            log.info("Video sent to chatId {}", chatId);
+        }
+    }
 
-            httpClient.execute(httpGet, response -> {
-                try (java.io.InputStream inputStream = response.getEntity().getContent();
-                     java.io.FileOutputStream outputStream = new java.io.FileOutputStream(outputFile)) {
-                    byte[] buffer = new byte[8192];
-                    int bytesRead;
-                    while ((bytesRead = inputStream.read(buffer)) != -1) {
-                        outputStream.write(buffer, 0, bytesRead);
-                    }
-                }
-                log.info("File downloaded: {}", outputFile.getAbsolutePath());
-                return outputFile;
-            });
+    public void sendDocument(Long chatId, File documentFile, String caption) {
+        TelegramResponse response = await(sendDocumentAsync(chatId, documentFile, caption), "send document to chatId " + chatId);
+        if (response != null && response.isOk()) {
+            log.info("Document sent to chatId {}", chatId);
+        }
+    }
 
-            return outputFile;
-        } catch (Exception e) {
-            log.error("Failed to download file {}", fileId, e);
-            throw new RuntimeException("File download failed", e);
+    public Integer sendProgressMessage(Long chatId, String text) {
+        TelegramResponse response = await(sendProgressMessageAsync(chatId, text), "send progress message to chatId " + chatId);
+        Integer messageId = response != null ? response.getMessageId() : null;
+        if (messageId != null) {
+            log.info("Progress message sent to chatId {} (messageId: {})", chatId, messageId);
         }
+        return messageId;
     }
 
-    public void sendVideo(Long chatId, java.io.File videoFile, String caption) {
-        String url = config.getApiBase() + "/bot" + config.getBotToken() + "/sendVideo";
+    public void updateProgressMessage(Long chatId, Integer messageId, String text) {
+        TelegramResponse response = await(updateProgressMessageAsync(chatId, messageId, text),
+                "update progress message for chatId " + chatId);
+        if (response != null && response.isOk()) {
+            log.debug("Progress message updated for chatId {} (messageId: {})", chatId, messageId);
+        }
+    }
 
-        try {
-            var entity = org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder.create()
-                    .addBinaryBody("video", videoFile, org.apache.hc.core5.http.ContentType.APPLICATION_OCTET_STREAM, videoFile.getName())
-                    .addTextBody("chat_id", String.valueOf(chatId));
+    // ---- Internals ----
 
-            if (caption != null) {
-                entity.addTextBody("caption", caption);
+    private String methodUrl(String method) {
+        return config.getApiBase() + "/bot" + config.getBotToken() + "/" + method;
+    }
+
+    private static ContentBody fileBody(File file) {
+        return new FileBody(file, ContentType.APPLICATION_OCTET_STREAM, file.getName());
+    }
+
+    private static ContentBody streamedBody(UploadSource source, String filename) {
+        return new AbstractContentBody(ContentType.APPLICATION_OCTET_STREAM) {
+            @Override
+            public String getFilename() {
+                return filename;
             }
 
-            HttpPost httpPost = new HttpPost(url);
-            httpPost.setEntity(entity.build());
+            @Override
+            public long getContentLength() {
+                return -1;
+            }
 
-            httpClient.execute(httpPost, response -> {
-                log.info("Video sent to chatId {} (status: {})", chatId, response.getCode());
-                return null;
-            });
-        } catch (Exception e) {
-            log.error("Failed to send video to chatId {}", chatId, e);
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                try (InputStream in = source.open()) {
+                    in.transferTo(out);
+                }
+            }
+        };
+    }
+
+    private CompletableFuture<TelegramResponse> sendFileId(String method, String field, Long chatId, String fileId, String caption) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("chat_id", chatId);
+        requestBody.put(field, fileId);
+        if (caption != null) {
+            requestBody.put("caption", caption);
         }
+        return call(method, requestBody);
     }
 
-    public void sendDocument(Long chatId, java.io.File documentFile, String caption) {
-        String url = config.getApiBase() + "/bot" + config.getBotToken() + "/sendDocument";
+    private CompletableFuture<TelegramResponse> sendFile(String method, String field, Long chatId, ContentBody body, String caption) {
+        var entity = MultipartEntityBuilder.create()
+                .addPart(field, body)
+                .addTextBody("chat_id", String.valueOf(chatId));
+        if (caption != null) {
+            entity.addTextBody("caption", caption);
+        }
+        HttpEntity multipart = entity.build();
+
+        // The body is written from the file as the connection takes it, never held in memory
+        AsyncRequestProducer request = AsyncRequestBuilder.post(methodUrl(method))
+                .setEntity(new AbstractClassicEntityProducer(UPLOAD_BUFFER_SIZE,
+                        ContentType.parse(multipart.getContentType()), uploadWriter) {
+                    @Override
+                    protected void produceData(ContentType contentType, OutputStream outputStream) throws IOException {
+                        multipart.writeTo(outputStream);
+                    }
+                })
+                .build();
+        return execute(request, SimpleResponseConsumer.create()).thenApply(this::parse);
+    }
 
-        try {
-            var entity = org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder.create()
-                    .addBinaryBody("document", documentFile, org.apache.hc.core5.http.ContentType.APPLICATION_OCTET_STREAM, documentFile.getName())
-                    .addTextBody("chat_id", String.valueOf(chatId));
+    private <T> CompletableFuture<T> execute(AsyncRequestProducer request, AsyncResponseConsumer<T> consumer) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        httpClient.execute(request, consumer, new FutureCallback<T>() {
+            @Override
+            public void completed(T result) {
+                future.complete(result);
+            }
 
-            if (caption != null) {
-                entity.addTextBody("caption", caption);
+            @Override
+            public void failed(Exception e) {
+                future.completeExceptionally(e);
             }
 
-            HttpPost httpPost = new HttpPost(url);
-            httpPost.setEntity(entity.build());
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+        return future;
+    }
 
-            httpClient.execute(httpPost, response -> {
-                log.info("Document sent to chatId {} (status: {})", chatId, response.getCode());
-                return null;
-            });
+    private TelegramResponse parse(SimpleHttpResponse response) {
+        try {
+            TelegramResponse parsed = objectMapper.readValue(response.getBodyText(), TelegramResponse.class);
+            if (!parsed.isOk() && parsed.getErrorCode() == null) {
+                parsed.setErrorCode(response.getCode());
+            }
+            return parsed;
         } catch (Exception e) {
-            log.error("Failed to send document to chatId {}", chatId, e);
+            // Not an answer of the Bot API itself, e.g. a proxy's error page
+            return TelegramResponse.error(response.getCode(), "HTTP " + response.getCode() + " without a Bot API response");
         }
     }
 
-    public Integer sendProgressMessage(Long chatId, String text) {
-        String url = config.getApiBase() + "/bot" + config.getBotToken() + "/sendMessage";
-
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("chat_id", chatId);
-        requestBody.put("text", text);
-        requestBody.put("parse_mode", "HTML");
-
+    private TelegramResponse await(CompletableFuture<TelegramResponse> call, String action) {
         try {
-            String json = objectMapper.writeValueAsString(requestBody);
-
-            HttpPost httpPost = new HttpPost(url);
-            httpPost.setHeader("Content-Type", "application/json");
-            httpPost.setEntity(new StringEntity(json));
-
-            return httpClient.execute(httpPost, response -> {
-                String responseBody = org.apache.hc.core5.http.io.entity.EntityUtils.toString(response.getEntity());
-                com.fasterxml.jackson.databind.JsonNode jsonNode = objectMapper.readTree(responseBody);
-                Integer messageId = jsonNode.get("result").get("message_id").asInt();
-                log.info("Progress message sent to chatId {} (messageId: {})", chatId, messageId);
-                return messageId;
-            });
-        } catch (Exception e) {
-            log.error("Failed to send progress message to chatId {}", chatId, e);
+            TelegramResponse response = call.join();
+            if (!response.isOk()) {
+                log.warn("Telegram refused to {}: {} {}", action, response.getErrorCode(), response.getDescription());
+            }
+            return response;
+        } catch (CompletionException | CancellationException e) {
+            log.error("Failed to {}", action, causeOf(e));
             return null;
         }
     }
 
-    public void updateProgressMessage(Long chatId, Integer messageId, String text) {
-        String url = config.getApiBase() + "/bot" + config.getBotToken() + "/editMessageText";
+    private static Throwable causeOf(RuntimeException e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
 
-        Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("chat_id", chatId);
-        requestBody.put("message_id", messageId);
-        requestBody.put("text", text);
-        requestBody.put("parse_mode", "HTML");
+    /**
+     * Writes a response body to a file as it arrives.
+     */
+    private static class FileResponseConsumer extends AbstractBinResponseConsumer<File> {
+        private final File file;
+        private FileChannel channel;
 
-        try {
-            String json = objectMapper.writeValueAsString(requestBody);
+        FileResponseConsumer(File file) {
+            this.file = file;
+        }
 
-            HttpPost httpPost = new HttpPost(url);
-            httpPost.setHeader("Content-Type", "application/json");
-            httpPost.setEntity(new StringEntity(json));
+        @Override
+        protected void start(HttpResponse response, ContentType contentType) throws HttpException, IOException {
+            if (response.getCode() != HttpStatus.SC_OK) {
+                throw new HttpException("File download answered HTTP " + response.getCode());
+            }
+            channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        }
 
-            httpClient.execute(httpPost, response -> {
-                log.debug("Progress message updated for chatId {} (messageId: {})", chatId, messageId);
-                return null;
-            });
-        } catch (Exception e) {
-            log.error("Failed to update progress message for chatId {}", chatId, e);
+        @Override
+        protected int capacityIncrement() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        protected void data(ByteBuffer src, boolean endOfStream) throws IOException {
+            while (src.hasRemaining()) {
+                channel.write(src);
+            }
+            if (endOfStream) {
+                channel.close();
+            }
+        }
+
+        @Override
+        protected File buildResult() {
+            return file;
+        }
+
+        @Override
+        public void releaseResources() {
+            if (channel != null && channel.isOpen()) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.debug("Failed to close {}", file, e);
+                }
+            }
         }
     }
 }
@@ -0,0 +1,183 @@
+package com.koishman.telegram.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.koishman.telegram.config.TelegramBotConfig;
+import com.koishman.telegram.model.TelegramResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the {@code file_id} Telegram assigned to each uploaded job
+ * output, and whether it stored it as a video, document or animation, keyed
+ * by the output's content hash, so identical content is sent again by
+ * {@code file_id} with the matching method instead of being uploaded. At most
+ * {@code telegram.file-id-cache-max-entries} are kept, least recently used
+ * first out. The map is saved to {@code telegram.file-id-cache-file} shortly
+ * after it changes and on shutdown, and loaded again on startup.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TelegramFileIdCache {
+
+    private static final long SAVE_DELAY_MS = 1000; // Coalesces the saves of outputs uploaded together
+    private static final TypeReference<LinkedHashMap<String, TelegramResponse.SentFile>> ENTRIES =
+            new TypeReference<LinkedHashMap<String, TelegramResponse.SentFile>>() { };
+
+    private final TelegramBotConfig config;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Content hash -> uploaded file, in access order; guarded by itself
+    private Map<String, TelegramResponse.SentFile> entries;
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private ScheduledExecutorService saver;
+
+    @PostConstruct
+    public void init() {
+        entries = new LinkedHashMap<String, TelegramResponse.SentFile>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TelegramResponse.SentFile> eldest) {
+                return size() > config.getFileIdCacheMaxEntries();
+            }
+        };
+        saver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-id-cache-saver");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (!isEnabled()) {
+            return;
+        }
+        Path file = Paths.get(config.getFileIdCacheFile());
+        if (Files.exists(file)) {
+            try {
+                // Saved least recently used first, so the access order survives
+                Map<String, TelegramResponse.SentFile> saved = objectMapper.readValue(file.toFile(), ENTRIES);
+                // Entries without a kind can't be sent with the right method
+                saved.values().removeIf(sent -> sent.getKind() == null || sent.getFileId() == null);
+                synchronized (entries) {
+                    entries.putAll(saved);
+                }
+            } catch (IOException e) {
+                log.warn("Unreadable file_id cache {}, starting empty", file, e);
+            }
+        }
+        log.info("Telegram file_id cache initialized: file={}, entries={}, maxEntries={}",
+                file, entries.size(), config.getFileIdCacheMaxEntries());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        saver.shutdownNow();
+        if (saveScheduled.get()) {
+            // Changes from the last second haven't been saved yet
+            save();
+        }
+    }
+
+    public boolean isEnabled() {
+        return config.getFileIdCacheMaxEntries() > 0;
+    }
+
+    /**
+     * @return the earlier upload of this content, or null on a miss
+     */
+    public TelegramResponse.SentFile get(String contentHash) {
+        if (!isEnabled() || contentHash == null) {
+            return null;
+        }
+        TelegramResponse.SentFile cached;
+        synchronized (entries) {
+            cached = entries.get(contentHash);
+        }
+        (cached != null ? hits : misses).incrementAndGet();
+        return cached;
+    }
+
+    public void put(String contentHash, TelegramResponse.SentFile file) {
+        if (!isEnabled() || contentHash == null || file == null) {
+            return;
+        }
+        synchronized (entries) {
+            entries.put(contentHash, file);
+        }
+        scheduleSave();
+    }
+
+    /**
+     * Forgets a {@code file_id} Telegram refused, unless it was replaced meanwhile.
+     */
+    public void invalidate(String contentHash, TelegramResponse.SentFile cached) {
+        boolean removed;
+        synchronized (entries) {
+            removed = entries.remove(contentHash, cached);
+        }
+        if (removed) {
+            stale.incrementAndGet();
+            scheduleSave();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long hit = hits.get();
+        long miss = misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isEnabled());
+        synchronized (entries) {
+            stats.put("entries", entries.size());
+        }
+        stats.put("hits", hit);
+        stats.put("misses", miss);
+        stats.put("stale", stale.get());
+        stats.put("hit_ratio", hit + miss == 0 ? 0.0 : (double) hit / (hit + miss));
+        return stats;
+    }
+
+    private void scheduleSave() {
+        if (saveScheduled.compareAndSet(false, true)) {
+            saver.schedule(() -> {
+                saveScheduled.set(false);
+                save();
+            }, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void save() {
+        Map<String, TelegramResponse.SentFile> snapshot;
+        synchronized (entries) {
+            snapshot = new LinkedHashMap<>(entries);
+        }
+
+        Path file = Paths.get(config.getFileIdCacheFile()).toAbsolutePath();
+        try {
+            Files.createDirectories(file.getParent());
+            // Write to a temp file first so a crash never leaves a partial cache
+            Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            objectMapper.writeValue(temp.toFile(), snapshot);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to save file_id cache {}", file, e);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.koishman.telegram.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.koishman.telegram.config.HttpClientFactory;
 import com.koishman.telegram.config.TelegramBotConfig;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -12,6 +13,7 @@ import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.util.HashMap;
 import java.util.Map;
@@ -26,12 +28,20 @@ public class TelegramLongPollingService {
 
     private final TelegramBotConfig config;
     private final EnhancedTelegramBotService botService;
-    private final RestTemplate restTemplate;
+    private final HttpClientFactory httpClients;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    private RestTemplate restTemplate;
+
     private final AtomicBoolean running = new AtomicBoolean(false);
     private final AtomicLong lastUpdateId = new AtomicLong(0);
 
+    @PostConstruct
+    public void init() {
+        // Its own pool and a read timeout longer than the long-poll timeout
+        restTemplate = httpClients.restTemplate("telegram-polling");
+    }
+
     @EventListener(ApplicationReadyEvent.class)
     public void startPolling() {
         if (running.compareAndSet(false, true)) {
@@ -0,0 +1,395 @@
+package com.koishman.telegram.service;
+
+import com.koishman.telegram.config.TelegramBotConfig;
+import com.koishman.telegram.model.TelegramResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Sends every outbound Bot API call within Telegram's limits: about
+ * {@code telegram.global-messages-per-second} overall and
+ * {@code telegram.chat-messages-per-second} per chat, each enforced by a
+ * token bucket. Ready requests go out by {@link Priority}; a chat waiting
+ * for its bucket doesn't hold up other chats. A 429 blocks the chat (or
+ * everything, for calls without a chat) for its {@code retry_after} and the
+ * request is sent again. A queued request with the same supersede key as a
+ * newer one is replaced by it, so only the latest progress edit is sent.
+ *
+ * <p>One dispatcher thread hands requests to the non-blocking client; it
+ * never waits for a response.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TelegramOutboundScheduler {
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long CHAT_CLEANUP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * Highest first.
+     */
+    public enum Priority {
+        CALLBACK_ANSWER,
+        USER_MESSAGE,
+        DELIVERY,
+        PROGRESS_EDIT
+    }
+
+    private final TelegramBotConfig config;
+
+    // Nanosecond time source; tests swap it for one they move by hand
+    private LongSupplier clock = System::nanoTime;
+    private final Object lock = new Object();
+    private final List<Deque<Outbound>> queues = new ArrayList<>();
+    private final Map<String, Outbound> queuedByKey = new HashMap<>();
+    private final Map<Long, ChatLimit> chats = new HashMap<>();
+    private final PriorityStats[] stats = new PriorityStats[Priority.values().length];
+    private TokenBucket globalBucket;
+    private long globalBlockedUntilNanos;
+    private long lastCleanupNanos;
+    private long superseded;
+    private long rateLimited;
+    private long failed;
+    private Thread dispatcher;
+
+    private static class Outbound {
+        final Priority priority;
+        final Long chatId;
+        final String key;
+        final long enqueuedAtNanos;
+        final CompletableFuture<TelegramResponse> future = new CompletableFuture<>();
+        Supplier<CompletableFuture<TelegramResponse>> call;
+        int attempts;
+
+        Outbound(Priority priority, Long chatId, String key, Supplier<CompletableFuture<TelegramResponse>> call,
+                 long enqueuedAtNanos) {
+            this.priority = priority;
+            this.chatId = chatId;
+            this.key = key;
+            this.call = call;
+            this.enqueuedAtNanos = enqueuedAtNanos;
+        }
+    }
+
+    private static class ChatLimit {
+        final TokenBucket bucket;
+        long blockedUntilNanos;
+
+        ChatLimit(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+
+    private static class PriorityStats {
+        long sent;
+        long totalWaitNanos;
+        long maxWaitNanos;
+    }
+
+    @PostConstruct
+    public void init() {
+        initQueues();
+
+        dispatcher = new Thread(this::dispatchLoop, "telegram-outbound");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Sets up the queues and buckets without starting the dispatcher thread.
+     * Tests call this and then {@link #dispatchNext()} themselves.
+     */
+    void initQueues() {
+        for (Priority priority : Priority.values()) {
+            queues.add(new ArrayDeque<>());
+            stats[priority.ordinal()] = new PriorityStats();
+        }
+        long now = clock.getAsLong();
+        globalBucket = new TokenBucket(config.getGlobalMessagesPerSecond(), now);
+        lastCleanupNanos = now;
+    }
+
+    void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+        synchronized (lock) {
+            for (Deque<Outbound> queue : queues) {
+                queue.forEach(request -> request.future.cancel(false));
+                queue.clear();
+            }
+            queuedByKey.clear();
+        }
+    }
+
+    /**
+     * Queues a call. {@code call} is invoked once the limits allow it, and
+     * again after a 429.
+     *
+     * @param chatId       chat the call sends to, or null if it doesn't count against a chat
+     * @param supersedeKey requests with the same key replace each other while queued, or null
+     * @return the call's response; a superseded request gets the response of the one that replaced it
+     */
+    public CompletableFuture<TelegramResponse> submit(Priority priority, Long chatId, String supersedeKey,
+                                                      Supplier<CompletableFuture<TelegramResponse>> call) {
+        synchronized (lock) {
+            if (supersedeKey != null) {
+                Outbound queued = queuedByKey.get(supersedeKey);
+                if (queued != null) {
+                    // Keeps its place in the queue, sends the newer content
+                    queued.call = call;
+                    superseded++;
+                    return queued.future;
+                }
+            }
+
+            Outbound request = new Outbound(priority, chatId, supersedeKey, call, clock.getAsLong());
+            queues.get(priority.ordinal()).addLast(request);
+            if (supersedeKey != null) {
+                queuedByKey.put(supersedeKey, request);
+            }
+            lock.notifyAll();
+            return request.future;
+        }
+    }
+
+    /**
+     * Queue depths, wait times and outcome counts, for monitoring.
+     */
+    public Map<String, Object> getStats() {
+        synchronized (lock) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            for (Priority priority : Priority.values()) {
+                PriorityStats priorityStats = stats[priority.ordinal()];
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("queued", queues.get(priority.ordinal()).size());
+                entry.put("sent", priorityStats.sent);
+                entry.put("avg_wait_ms", priorityStats.sent > 0
+                        ? TimeUnit.NANOSECONDS.toMillis(priorityStats.totalWaitNanos / priorityStats.sent) : 0);
+                entry.put("max_wait_ms", TimeUnit.NANOSECONDS.toMillis(priorityStats.maxWaitNanos));
+                result.put(priority.name().toLowerCase(), entry);
+            }
+            result.put("superseded", superseded);
+            result.put("rate_limited", rateLimited);
+            result.put("failed", failed);
+            result.put("tracked_chats", chats.size());
+            return result;
+        }
+    }
+
+    private void dispatchLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Outbound next;
+            synchronized (lock) {
+                long now = clock.getAsLong();
+                long[] waitNanos = new long[1];
+                next = takeReady(now, waitNanos);
+                if (next == null) {
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(lock, waitNanos[0]);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            dispatch(next);
+        }
+    }
+
+    /**
+     * Sends the highest-priority request whose limits allow it to go now, if
+     * any, on the calling thread. For tests that drive the scheduler without
+     * the dispatcher thread.
+     *
+     * @return whether a request was sent
+     */
+    boolean dispatchNext() {
+        Outbound next;
+        synchronized (lock) {
+            next = takeReady(clock.getAsLong(), new long[1]);
+        }
+        if (next == null) {
+            return false;
+        }
+        dispatch(next);
+        return true;
+    }
+
+    /**
+     * Takes the highest-priority request whose limits allow it to go now.
+     * If there is none, sets {@code waitNanos[0]} to how long until one might.
+     */
+    // Called with the lock held
+    private Outbound takeReady(long now, long[] waitNanos) {
+        cleanupChats(now);
+
+        long globalWait = Math.max(globalBlockedUntilNanos - now, globalBucket.nanosUntilToken(now));
+        if (globalWait > 0) {
+            waitNanos[0] = globalWait;
+            return null;
+        }
+
+        long earliest = Long.MAX_VALUE;
+        for (Deque<Outbound> queue : queues) {
+            for (Iterator<Outbound> it = queue.iterator(); it.hasNext(); ) {
+                Outbound request = it.next();
+                ChatLimit chat = request.chatId != null ? chatLimit(request.chatId, now) : null;
+                long wait = chat != null
+                        ? Math.max(chat.blockedUntilNanos - now, chat.bucket.nanosUntilToken(now)) : 0;
+                if (wait <= 0) {
+                    it.remove();
+                    if (request.key != null) {
+                        queuedByKey.remove(request.key, request);
+                    }
+                    globalBucket.take();
+                    if (chat != null) {
+                        chat.bucket.take();
+                    }
+                    return request;
+                }
+                earliest = Math.min(earliest, wait);
+            }
+        }
+        waitNanos[0] = earliest == Long.MAX_VALUE ? TimeUnit.SECONDS.toNanos(1) : earliest;
+        return null;
+    }
+
+    private void dispatch(Outbound request) {
+        if (request.attempts++ == 0) {
+            long waited = clock.getAsLong() - request.enqueuedAtNanos;
+            synchronized (lock) {
+                PriorityStats priorityStats = stats[request.priority.ordinal()];
+                priorityStats.sent++;
+                priorityStats.totalWaitNanos += waited;
+                priorityStats.maxWaitNanos = Math.max(priorityStats.maxWaitNanos, waited);
+            }
+        }
+
+        CompletableFuture<TelegramResponse> call;
+        try {
+            call = request.call.get();
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        call.whenComplete((response, error) -> {
+            if (error != null) {
+                synchronized (lock) {
+                    failed++;
+                }
+                request.future.completeExceptionally(error);
+            } else if (response.getErrorCode() != null && response.getErrorCode() == 429
+                    && response.getRetryAfter() != null && request.attempts < MAX_ATTEMPTS) {
+                retryAfter(request, response.getRetryAfter());
+            } else {
+                request.future.complete(response);
+            }
+        });
+    }
+
+    private void retryAfter(Outbound request, int retryAfterSeconds) {
+        log.warn("Telegram rate limit hit{}, retrying in {}s",
+                request.chatId != null ? " for chat " + request.chatId : "", retryAfterSeconds);
+        synchronized (lock) {
+            rateLimited++;
+            long now = clock.getAsLong();
+            long blockedUntil = now + TimeUnit.SECONDS.toNanos(retryAfterSeconds);
+            if (request.chatId != null) {
+                ChatLimit chat = chatLimit(request.chatId, now);
+                chat.blockedUntilNanos = Math.max(chat.blockedUntilNanos, blockedUntil);
+            } else {
+                globalBlockedUntilNanos = Math.max(globalBlockedUntilNanos, blockedUntil);
+            }
+
+            if (request.key != null && queuedByKey.containsKey(request.key)) {
+                // A newer version is already queued, so this one is superseded after all
+                queuedByKey.get(request.key).future.whenComplete((response, error) -> {
+                    if (error != null) {
+                        request.future.completeExceptionally(error);
+                    } else {
+                        request.future.complete(response);
+                    }
+                });
+                return;
+            }
+            queues.get(request.priority.ordinal()).addFirst(request);
+            if (request.key != null) {
+                queuedByKey.put(request.key, request);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    // Called with the lock held
+    private ChatLimit chatLimit(Long chatId, long now) {
+        return chats.computeIfAbsent(chatId, id -> new ChatLimit(new TokenBucket(config.getChatMessagesPerSecond(), now)));
+    }
+
+    // Called with the lock held. A full, unblocked bucket is the same as none.
+    private void cleanupChats(long now) {
+        if (now - lastCleanupNanos < CHAT_CLEANUP_INTERVAL_NANOS) {
+            return;
+        }
+        lastCleanupNanos = now;
+        chats.values().removeIf(chat -> chat.blockedUntilNanos <= now && chat.bucket.isFull(now));
+    }
+
+    /**
+     * Refills continuously at {@code perSecond}, holding at most a second's
+     * worth (and at least one token).
+     */
+    private static class TokenBucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAtNanos;
+
+        TokenBucket(double perSecond, long now) {
+            this.tokensPerNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = Math.max(1, perSecond);
+            this.tokens = capacity;
+            this.refilledAtNanos = now;
+        }
+
+        long nanosUntilToken(long now) {
+            refill(now);
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+        }
+
+        boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        void take() {
+            tokens -= 1;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - refilledAtNanos) * tokensPerNano);
+            refilledAtNanos = now;
+        }
+    }
+}
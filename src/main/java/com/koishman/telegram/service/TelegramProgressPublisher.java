@@ -0,0 +1,140 @@
+package com.koishman.telegram.service;
+
+import com.koishman.telegram.config.TelegramBotConfig;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Edits progress messages without blocking the caller. Only the latest text
+ * of each message is kept; each chat gets at most one edit per
+ * {@code telegram.progress-edit-interval-ms} (Telegram throttles edits to
+ * about one per second per chat), and text identical to what the message
+ * already shows is not sent, since Telegram rejects it anyway. Edits go
+ * out as {@link TelegramOutboundScheduler.Priority#PROGRESS_EDIT}s.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TelegramProgressPublisher {
+
+    private static final int MAX_REMEMBERED_MESSAGES = 1000;
+
+    private final TelegramApiClient telegramApi;
+    private final TelegramBotConfig config;
+
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+        Thread thread = new Thread(runnable, "progress-publisher-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<Long, ChatState> chats = new ConcurrentHashMap<>();
+    // "chatId:messageId" -> text the message shows; bounded, oldest first out
+    private final Map<String, String> sentTexts = Collections.synchronizedMap(
+            new LinkedHashMap<String, String>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > MAX_REMEMBERED_MESSAGES;
+                }
+            });
+
+    private static class ChatState {
+        // Message -> latest text not yet sent, in order of first update
+        final Map<Integer, String> pending = new LinkedHashMap<>();
+        long nextEditAtMillis;
+        boolean flushScheduled;
+        boolean retired;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Queues {@code text} as the new content of the message, replacing any
+     * update of it that hasn't been sent yet.
+     */
+    public void publish(Long chatId, Integer messageId, String text) {
+        while (true) {
+            ChatState state = chats.computeIfAbsent(chatId, id -> new ChatState());
+            synchronized (state) {
+                if (state.retired) {
+                    continue; // Lost a race with retirement; a fresh state is in the map now
+                }
+                state.pending.put(messageId, text);
+                if (!state.flushScheduled) {
+                    scheduleFlush(chatId, state);
+                }
+                return;
+            }
+        }
+    }
+
+    // Called with the state's lock held
+    private void scheduleFlush(Long chatId, ChatState state) {
+        state.flushScheduled = true;
+        long delay = Math.max(0, state.nextEditAtMillis - System.currentTimeMillis());
+        scheduler.schedule(() -> flush(chatId, state), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush(Long chatId, ChatState state) {
+        Integer messageId;
+        String text;
+        synchronized (state) {
+            state.flushScheduled = false;
+            if (state.pending.isEmpty()) {
+                // Nothing new for a whole interval, so a fresh state can't edit too early
+                state.retired = true;
+                chats.remove(chatId, state);
+                return;
+            }
+            // Messages of the same chat take turns
+            Iterator<Map.Entry<Integer, String>> next = state.pending.entrySet().iterator();
+            Map.Entry<Integer, String> entry = next.next();
+            messageId = entry.getKey();
+            text = entry.getValue();
+            next.remove();
+        }
+
+        String key = chatId + ":" + messageId;
+        if (text.equals(sentTexts.get(key))) {
+            edited(chatId, state, false);
+            return;
+        }
+        // Not waited for, so a chat held up by rate limits doesn't hold up the others
+        telegramApi.updateProgressMessageAsync(chatId, messageId, text).whenComplete((response, error) -> {
+            boolean sent = error == null && response.isOk();
+            if (sent) {
+                sentTexts.put(key, text);
+            } else {
+                log.warn("Failed to edit progress message {} in chat {}: {}", messageId, chatId,
+                        error != null ? error.toString() : response.getDescription());
+            }
+            edited(chatId, state, sent);
+        });
+    }
+
+    private void edited(Long chatId, ChatState state, boolean sent) {
+        synchronized (state) {
+            if (sent) {
+                state.nextEditAtMillis = System.currentTimeMillis() + config.getProgressEditIntervalMs();
+            }
+            // Also runs with nothing pending, to retire the chat once the interval is over
+            scheduleFlush(chatId, state);
+        }
+    }
+}
@@ -1,29 +1,41 @@
 package com.koishman.telegram.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.koishman.telegram.config.HttpClientFactory;
 import com.koishman.telegram.config.TelegramBotConfig;
 import com.koishman.telegram.model.JobResponse;
 import com.koishman.telegram.model.JobStatus;
+import com.koishman.telegram.model.JobStatusBatch;
 import com.koishman.telegram.model.MediaAnalysis;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
 import org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
-import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
-import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactory;
-import org.apache.hc.client5.http.ssl.TrustAllStrategy;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpStatus;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
-import org.apache.hc.core5.ssl.SSLContextBuilder;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import javax.net.ssl.SSLContext;
+import javax.annotation.PostConstruct;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Slf4j
 @Service
@@ -31,29 +43,60 @@ import java.io.InputStream;
 public class TranslationApiClient {
 
     private final TelegramBotConfig config;
+    private final LocalTranslationClient localClient;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final CloseableHttpClient httpClient = createHttpClient();
+    private final HttpClientFactory httpClients;
+    private CloseableHttpClient httpClient;
 
-    private static CloseableHttpClient createHttpClient() {
-        try {
-            SSLContext sslContext = SSLContextBuilder.create()
-                    .loadTrustMaterial(new TrustAllStrategy())
-                    .build();
+    @Value("${server.port:8080}")
+    private int serverPort;
 
-            SSLConnectionSocketFactory sslSocketFactory = new SSLConnectionSocketFactory(sslContext);
+    // Whether to call the translation services in this JVM instead of going over HTTP
+    private boolean local;
 
-            return HttpClients.custom()
-                    .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
-                            .setSSLSocketFactory(sslSocketFactory)
-                            .build())
-                    .build();
-        } catch (Exception e) {
-            log.error("Failed to create HTTP client with custom SSL", e);
-            return HttpClients.createDefault();
+    @PostConstruct
+    public void init() {
+        String transport = config.getTranslationTransport();
+        if ("auto".equals(transport)) {
+            local = pointsAtThisServer(config.getTranslationApiBase());
+        } else {
+            local = "local".equals(transport);
         }
+        log.info("Translation API transport: {} (translation-api-base: {})",
+                local ? "local" : "http", config.getTranslationApiBase());
+        if (!local) {
+            httpClient = httpClients.classicClient("translation-api");
+        }
+    }
+
+    /**
+     * The translation API is part of this application, so a base URL on the
+     * loopback interface and our own port can only be this process.
+     */
+    private boolean pointsAtThisServer(String apiBase) {
+        try {
+            URI uri = URI.create(apiBase);
+            int port = uri.getPort() != -1 ? uri.getPort() : "https".equals(uri.getScheme()) ? 443 : 80;
+            return Arrays.asList("localhost", "127.0.0.1", "[::1]", "::1").contains(uri.getHost()) && port == serverPort;
+        } catch (RuntimeException e) {
+            log.warn("Can't parse translation-api-base {}, using HTTP", apiBase, e);
+            return false;
+        }
+    }
+
+    public boolean isLocal() {
+        return local;
+    }
+
+    private boolean hasCallbackUrl() {
+        return config.getJobCallbackUrl() != null && !config.getJobCallbackUrl().isEmpty();
     }
 
     public MediaAnalysis analyzeMedia(File videoFile) {
+        if (local) {
+            return localClient.analyzeMedia(videoFile);
+        }
+
         String url = config.getTranslationApiBase() + "/api/translation/analyze";
 
         try {
@@ -75,7 +118,13 @@ public class TranslationApiClient {
         }
     }
 
+    /**
+     * Submits a job. With an upload token from {@link #analyzeMedia}, the
+     * service uses the file it already has; if the token has expired, the
+     * file is uploaded again.
+     */
     public JobResponse uploadVideo(File videoFile,
+                                   String uploadToken,
                                    String targetLanguages,
                                    String whisperModel,
                                    String whisperModelType,
@@ -88,55 +137,95 @@ public class TranslationApiClient {
                                    Integer audioTrack,
                                    Integer subtitleTrack,
                                    Long chatId) {
+        if (local) {
+            return localClient.uploadVideo(videoFile, targetLanguages, whisperModel, whisperModelType, whisperBackend,
+                    alignOutput, translationModel, subtitleBurnType, useSubtitlesOnly, originalLanguage, audioTrack,
+                    subtitleTrack, chatId);
+        }
+
         String url = config.getTranslationApiBase() + "/api/translation/upload";
 
         try {
-            var builder = MultipartEntityBuilder.create()
-                    .addBinaryBody("file", videoFile, ContentType.APPLICATION_OCTET_STREAM, videoFile.getName())
-                    .addTextBody("langs", targetLanguages)
-                    .addTextBody("model", whisperModel)
-                    .addTextBody("model_type", whisperModelType)
-                    .addTextBody("whisper_backend", whisperBackend != null ? whisperBackend : "faster-whisper")
-                    .addTextBody("align_output", alignOutput != null && alignOutput ? "true" : "false")
-                    .addTextBody("translation_model", translationModel != null ? translationModel : "m2m100")
-                    .addTextBody("subtitle_burn_type", subtitleBurnType)
-                    .addTextBody("align", "True");
+            Map<String, String> fields = new LinkedHashMap<>();
+            fields.put("langs", targetLanguages);
+            fields.put("model", whisperModel);
+            fields.put("model_type", whisperModelType);
+            fields.put("whisper_backend", whisperBackend != null ? whisperBackend : "faster-whisper");
+            fields.put("align_output", alignOutput != null && alignOutput ? "true" : "false");
+            fields.put("translation_model", translationModel != null ? translationModel : "m2m100");
+            fields.put("subtitle_burn_type", subtitleBurnType);
+            fields.put("align", "True");
 
             if (chatId != null) {
-                builder.addTextBody("chat_id", String.valueOf(chatId));
+                fields.put("chat_id", String.valueOf(chatId));
             }
 
             if (useSubtitlesOnly != null && useSubtitlesOnly) {
-                builder.addTextBody("use_subtitles_only", "true");
+                fields.put("use_subtitles_only", "true");
             }
 
             if (originalLanguage != null && !originalLanguage.isEmpty()) {
-                builder.addTextBody("original_lang", originalLanguage);
+                fields.put("original_lang", originalLanguage);
             }
 
             if (audioTrack != null) {
-                builder.addTextBody("audio_track", String.valueOf(audioTrack));
+                fields.put("audio_track", String.valueOf(audioTrack));
             }
 
             if (subtitleTrack != null) {
-                builder.addTextBody("subtitle_track", String.valueOf(subtitleTrack));
+                fields.put("subtitle_track", String.valueOf(subtitleTrack));
             }
 
-            HttpPost httpPost = new HttpPost(url);
-            httpPost.setEntity(builder.build());
+            if (hasCallbackUrl()) {
+                fields.put("callback_url", config.getJobCallbackUrl());
+                fields.put("callback_secret", config.getWebhookSecret());
+            }
 
-            return httpClient.execute(httpPost, response -> {
-                String responseBody = EntityUtils.toString(response.getEntity());
-                log.info("Upload response: {}", responseBody);
-                return objectMapper.readValue(responseBody, JobResponse.class);
-            });
+            if (uploadToken != null) {
+                Map<String, String> tokenFields = new LinkedHashMap<>(fields);
+                tokenFields.put("upload_token", uploadToken);
+                JobResponse response = postUpload(url, tokenFields, null);
+                if (response != null) {
+                    return response;
+                }
+                log.info("Upload token {} expired, uploading {} again", uploadToken, videoFile.getName());
+            }
+
+            return postUpload(url, fields, videoFile);
         } catch (Exception e) {
             log.error("Failed to upload video", e);
             throw new RuntimeException("Video upload failed", e);
         }
     }
 
+    /**
+     * @return the job, or null if the service no longer has the staged file
+     */
+    private JobResponse postUpload(String url, Map<String, String> fields, File videoFile) throws IOException {
+        var builder = MultipartEntityBuilder.create();
+        if (videoFile != null) {
+            builder.addBinaryBody("file", videoFile, ContentType.APPLICATION_OCTET_STREAM, videoFile.getName());
+        }
+        fields.forEach(builder::addTextBody);
+
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.setEntity(builder.build());
+
+        return httpClient.execute(httpPost, response -> {
+            String responseBody = EntityUtils.toString(response.getEntity());
+            log.info("Upload response: {}", responseBody);
+            if (response.getCode() == HttpStatus.SC_GONE) {
+                return null;
+            }
+            return objectMapper.readValue(responseBody, JobResponse.class);
+        });
+    }
+
     public JobStatus getJobStatus(String jobId) {
+        if (local) {
+            return localClient.getJobStatus(jobId);
+        }
+
         String url = config.getTranslationApiBase() + "/api/translation/status/" + jobId;
 
         try {
@@ -153,30 +242,84 @@ public class TranslationApiClient {
         }
     }
 
-    public File downloadFile(String filename, String outputPath) {
-        String url = config.getTranslationApiBase() + "/api/translation/download/" + filename;
+    /**
+     * Long-polls the status of several jobs: the service answers as soon as
+     * one of them changes past {@code since}, or after {@code waitSeconds}.
+     *
+     * @param since version of the last batch seen, or -1 to answer at once
+     * @return the jobs' statuses, or null if none changed within the wait
+     */
+    public JobStatusBatch awaitJobStatuses(Collection<String> jobIds, long since, int waitSeconds) {
+        if (local) {
+            return localClient.getJobStatuses(jobIds, since);
+        }
+
+        String url = config.getTranslationApiBase() + "/api/translation/status?ids=" + String.join(",", jobIds)
+                + (since >= 0 ? "&since=" + since + "&wait=" + waitSeconds + "s" : "");
 
         try {
             HttpGet httpGet = new HttpGet(url);
-            File outputFile = new File(outputPath);
-
-            httpClient.execute(httpGet, response -> {
-                try (InputStream inputStream = response.getEntity().getContent();
-                     FileOutputStream outputStream = new FileOutputStream(outputFile)) {
-                    byte[] buffer = new byte[8192];
-                    int bytesRead;
-                    while ((bytesRead = inputStream.read(buffer)) != -1) {
-                        outputStream.write(buffer, 0, bytesRead);
-                    }
+
+            return httpClient.execute(httpGet, response -> {
+                if (response.getCode() == HttpStatus.SC_NOT_MODIFIED) {
+                    return null;
                 }
-                log.info("Downloaded file: {}", outputFile.getAbsolutePath());
-                return outputFile;
+                String responseBody = EntityUtils.toString(response.getEntity());
+                log.debug("Job statuses response for {}: {}", jobIds, responseBody);
+                return objectMapper.readValue(responseBody, JobStatusBatch.class);
             });
-
-            return outputFile;
         } catch (Exception e) {
-            log.error("Failed to download file: {}", filename, e);
-            throw new RuntimeException("File download failed", e);
+            log.error("Failed to get job statuses for {}", jobIds, e);
+            throw new RuntimeException("Failed to get job statuses", e);
+        }
+    }
+
+    /**
+     * Opens an output of a job for reading, straight from the translation
+     * service without saving it first.
+     */
+    public OutputContent openOutput(String jobId, String filename) throws IOException {
+        if (local) {
+            File file = localClient.findOutputFile(jobId, filename);
+            return new OutputContent(new FileInputStream(file), file.length());
+        }
+
+        // By job, since jobs of different chats can have outputs of the same name
+        String url = config.getTranslationApiBase() + "/api/translation/download/"
+                + URLEncoder.encode(filename, StandardCharsets.UTF_8).replace("+", "%20")
+                + "?jobId=" + URLEncoder.encode(jobId, StandardCharsets.UTF_8);
+        CloseableHttpResponse response = httpClient.execute(new HttpGet(url));
+        if (response.getCode() != HttpStatus.SC_OK || response.getEntity() == null) {
+            response.close();
+            throw new IOException("Download of " + filename + " answered HTTP " + response.getCode());
+        }
+
+        HttpEntity entity = response.getEntity();
+        InputStream stream = new FilterInputStream(entity.getContent()) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    response.close();
+                }
+            }
+        };
+        return new OutputContent(stream, entity.getContentLength());
+    }
+
+    /**
+     * An output being read. Close it if it isn't read to the end.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class OutputContent implements Closeable {
+        private final InputStream stream;
+        private final long size; // -1 if unknown
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
         }
     }
 }
@@ -1,25 +1,40 @@
 package com.koishman.telegram.translation.controller;
 
 import com.koishman.telegram.translation.model.MediaTrackInfo;
+import com.koishman.telegram.translation.model.StagedUpload;
+import com.koishman.telegram.translation.model.StoredUpload;
 import com.koishman.telegram.translation.model.TranslationJob;
 import com.koishman.telegram.translation.model.TranslationJobRequest;
 import com.koishman.telegram.translation.service.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 @Slf4j
 @RestController
@@ -29,55 +44,72 @@ public class TranslationController {
 
     private final FileStorageService fileStorageService;
     private final JobTrackingService jobTrackingService;
-    private final SubtitleProcessingService subtitleProcessingService;
+    private final JobSubmissionService jobSubmissionService;
     private final FFmpegService ffmpegService;
+    private final TranslationMemoryService translationMemoryService;
+    private final StagedUploadService stagedUploadService;
+    private final ChunkedUploadService chunkedUploadService;
+    private final JobStatusWatcher jobStatusWatcher;
+    private final JobProgressStreamService jobProgressStream;
+    private final JobCallbackNotifier jobCallbackNotifier;
 
     @PostMapping("/upload")
     public ResponseEntity<?> uploadVideo(
-            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "file", required = false) MultipartFile file,
+            @RequestParam(value = "upload_token", required = false) String uploadToken,
             @RequestParam(value = "langs", required = false) String langs,
-            @RequestParam(value = "model", defaultValue = "large") String model,
-            @RequestParam(value = "model_type", defaultValue = "faster-whisper") String modelType,
-            @RequestParam(value = "whisper_backend", defaultValue = "faster-whisper") String whisperBackend,
-            @RequestParam(value = "translation_model", defaultValue = "m2m100") String translationModel,
-            @RequestParam(value = "subtitle_burn_type", defaultValue = "hard") String subtitleBurnType,
-            @RequestParam(value = "use_subtitles_only", defaultValue = "false") Boolean useSubtitlesOnly,
+            @RequestParam(value = "model", required = false) String model,
+            @RequestParam(value = "model_type", required = false) String modelType,
+            @RequestParam(value = "whisper_backend", required = false) String whisperBackend,
+            @RequestParam(value = "translation_model", required = false) String translationModel,
+            @RequestParam(value = "subtitle_burn_type", required = false) String subtitleBurnType,
+            @RequestParam(value = "use_subtitles_only", required = false) Boolean useSubtitlesOnly,
             @RequestParam(value = "original_lang", required = false) String originalLang,
             @RequestParam(value = "audio_track", required = false) Integer audioTrack,
             @RequestParam(value = "subtitle_track", required = false) Integer subtitleTrack,
-            @RequestParam(value = "align_output", defaultValue = "true") Boolean alignOutput,
-            @RequestParam(value = "chat_id", required = false) Long chatId
+            @RequestParam(value = "align_output", required = false) Boolean alignOutput,
+            @RequestParam(value = "chat_id", required = false) Long chatId,
+            @RequestParam(value = "callback_url", required = false) String callbackUrl,
+            @RequestParam(value = "callback_secret", required = false) String callbackSecret
     ) {
-        try {
-            log.info("Received upload request: file={}, langs={}, model={}, chatId={}", file.getOriginalFilename(), langs, model, chatId);
+        if (callbackUrl != null && !callbackUrl.isEmpty() && !jobCallbackNotifier.isAllowed(callbackUrl)) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "callback_url is not allowed");
+            return ResponseEntity.badRequest().body(error);
+        }
 
-            // Store uploaded file
-            File uploadedFile = fileStorageService.storeUploadedFile(file);
+        try {
+            StoredUpload upload;
+            String originalFilename;
+            if (uploadToken != null) {
+                // The file was already stored by /analyze
+                StagedUpload staged = stagedUploadService.claim(uploadToken);
+                if (staged == null) {
+                    Map<String, String> error = new HashMap<>();
+                    error.put("error", "Upload token unknown or expired");
+                    return ResponseEntity.status(HttpStatus.GONE).body(error);
+                }
+                upload = staged.getUpload();
+                originalFilename = staged.getOriginalFilename();
+            } else if (file != null) {
+                // Store uploaded file, hashing it on the way
+                upload = fileStorageService.storeUploadedFileHashed(file);
+                originalFilename = file.getOriginalFilename();
+            } else {
+                Map<String, String> error = new HashMap<>();
+                error.put("error", "Either file or upload_token is required");
+                return ResponseEntity.badRequest().body(error);
+            }
+            log.info("Received upload request: file={}, token={}, langs={}, model={}, chatId={}",
+                    originalFilename, uploadToken, langs, model, chatId);
 
-            // Create job
-            TranslationJob job = jobTrackingService.createJob(file.getOriginalFilename(), uploadedFile.getAbsolutePath());
-            job.setChatId(chatId);
+            // Unset parameters take the defaults of TranslationJobRequest, as for in-process submissions
+            TranslationJobRequest request = jobSubmissionService.buildRequest(langs, model, modelType,
+                    whisperBackend, alignOutput, translationModel, subtitleBurnType, useSubtitlesOnly,
+                    originalLang, audioTrack, subtitleTrack);
 
-            // Prepare request
-            TranslationJobRequest request = new TranslationJobRequest();
-            if (langs != null && !langs.isEmpty()) {
-                request.setTargetLanguages(Arrays.asList(langs.split("\\s+")));
-            }
-            request.setWhisperModel(model);
-            request.setWhisperModelType(modelType);
-            request.setWhisperBackend(whisperBackend);
-            request.setTranslationModel(translationModel);
-            request.setSubtitleBurnType(subtitleBurnType);
-            request.setUseSubtitlesOnly(useSubtitlesOnly);
-            request.setOriginalLanguage(originalLang);
-            request.setAudioTrack(audioTrack);
-            request.setSubtitleTrack(subtitleTrack);
-            request.setAlignOutput(alignOutput);
-
-            job.setRequest(request);
-
-            // Start processing asynchronously
-            subtitleProcessingService.processJob(job.getJobId());
+            TranslationJob job = jobSubmissionService.submit(upload, originalFilename, request, chatId,
+                    callbackUrl, callbackSecret);
 
             Map<String, String> response = new HashMap<>();
             response.put("job_id", job.getJobId());
@@ -103,27 +135,141 @@ public class TranslationController {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
             }
 
-            Map<String, Object> response = new HashMap<>();
-            response.put("status", job.getStatus() == TranslationJob.JobStatus.COMPLETED ? "done" : "processing");
-            response.put("outputs", job.getOutputs());
-            response.put("duration_seconds", String.valueOf(job.getDurationSeconds()));
+            return ResponseEntity.ok(jobTrackingService.describe(job));
+
+        } catch (Exception e) {
+            log.error("Failed to get job status", e);
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
+        }
+    }
+
+    /**
+     * Status of several jobs in one request. With {@code since} (or
+     * {@code If-None-Match}) and {@code wait}, the request is held until one
+     * of the jobs changes past that version or the wait expires, so a client
+     * needs one outstanding request for all its jobs. Answers carry the
+     * version as ETag; an unchanged state is a bodiless 304.
+     */
+    @GetMapping("/status")
+    public DeferredResult<ResponseEntity<?>> getJobStatuses(
+            @RequestParam("ids") String ids,
+            @RequestParam(value = "wait", required = false) String wait,
+            @RequestParam(value = "since", required = false) Long since,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        List<String> jobIds = Arrays.stream(ids.split(","))
+                .map(String::trim)
+                .filter(id -> !id.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+        long baseline = since != null ? since : versionFromEtag(ifNoneMatch);
+
+        long waitMillis;
+        try {
+            // "30s", "500ms", or plain seconds
+            Duration requested = wait != null ? DurationStyle.detectAndParse(wait, ChronoUnit.SECONDS) : Duration.ZERO;
+            waitMillis = Math.max(0, Math.min(requested.toMillis(), jobStatusWatcher.getMaxWaitSeconds() * 1000));
+        } catch (IllegalArgumentException e) {
+            DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Invalid wait: " + wait);
+            result.setResult(ResponseEntity.badRequest().body(error));
+            return result;
+        }
+
+        // Unknown and finished jobs will never change, so waiting on them alone is pointless
+        List<TranslationJob> jobs = jobIds.stream().map(jobTrackingService::getJob).collect(Collectors.toList());
+        boolean canChange = jobs.stream().allMatch(job -> job != null)
+                && jobs.stream().anyMatch(job -> job.getStatus() != TranslationJob.JobStatus.COMPLETED
+                        && job.getStatus() != TranslationJob.JobStatus.FAILED);
+        if (waitMillis == 0 || baseline < 0 || !canChange) {
+            DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+            result.setResult(jobStatuses(jobIds, baseline));
+            return result;
+        }
+
+        // The request thread returns to the pool while we wait
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>(waitMillis);
+        CompletableFuture<Void> change = jobStatusWatcher.awaitChange(jobIds, baseline);
+        result.onTimeout(() -> result.setResult(jobStatuses(jobIds, baseline)));
+        result.onCompletion(() -> change.cancel(false));
+        // Runs on the watcher's notifier thread, not on the pipeline thread that published the change
+        change.thenRun(() -> result.setResult(jobStatuses(jobIds, baseline)));
+        return result;
+    }
+
+    /**
+     * Server-Sent Events stream of the job's progress: {@code status},
+     * {@code progress} (stage, language, percentages, ffmpeg fps/speed/ETA),
+     * {@code output}, and finally {@code completed} or {@code failed}.
+     */
+    @GetMapping(value = "/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamJobEvents(@PathVariable String jobId) {
+        try {
+            return jobProgressStream.subscribe(jobId);
+        } catch (NoSuchElementException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+        }
+    }
 
-            if (job.getStatus() == TranslationJob.JobStatus.FAILED) {
-                response.put("error", job.getErrorMessage());
+    private ResponseEntity<?> jobStatuses(List<String> jobIds, long baseline) {
+        try {
+            long version = jobTrackingService.getVersion(jobIds);
+            String etag = "\"" + version + "\"";
+            if (version <= baseline) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
             }
 
-            return ResponseEntity.ok(response);
+            Map<String, Object> jobs = new LinkedHashMap<>();
+            List<String> notFound = new ArrayList<>();
+            for (String jobId : jobIds) {
+                TranslationJob job = jobTrackingService.getJob(jobId);
+                if (job == null) {
+                    notFound.add(jobId);
+                    continue;
+                }
+                Map<String, Object> status = jobTrackingService.describe(job);
+                status.put("version", job.getVersion());
+                jobs.put(jobId, status);
+            }
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("version", version);
+            response.put("jobs", jobs);
+            response.put("not_found", notFound);
+            return ResponseEntity.ok().eTag(etag).body(response);
 
         } catch (Exception e) {
-            log.error("Failed to get job status", e);
+            log.error("Failed to get job statuses", e);
             Map<String, String> error = new HashMap<>();
             error.put("error", e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
         }
     }
 
+    /**
+     * @return the version in an ETag we issued, or -1 for none
+     */
+    private long versionFromEtag(String etag) {
+        if (etag == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(etag.trim().replaceFirst("^W/", "").replace("\"", ""));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Serves an output with Range, If-Range and conditional GET support, so
+     * interrupted downloads of large videos resume where they stopped.
+     */
     @GetMapping("/download/{filename}")
-    public ResponseEntity<Resource> downloadFile(@PathVariable String filename, @RequestParam(required = false) String jobId) {
+    public void downloadFile(@PathVariable String filename, @RequestParam(required = false) String jobId,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
         try {
             // Extract job ID from filename if not provided
             if (jobId == null && filename.contains("/")) {
@@ -136,26 +282,22 @@ public class TranslationController {
             if (jobId != null) {
                 file = fileStorageService.getOutputFile(jobId, filename);
             } else {
-                // Try to find in all job directories
-                file = findFileInOutputs(filename);
+                // Look the name up in the output index
+                file = fileStorageService.findOutputFile(filename);
             }
 
             if (file == null || !file.exists()) {
-                return ResponseEntity.notFound().build();
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
             }
 
-            Resource resource = new FileSystemResource(file);
-
-            String contentType = determineContentType(filename);
-
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .body(resource);
+            FileDownloadWriter.write(file, determineContentType(filename), filename, request, response);
 
         } catch (Exception e) {
             log.error("Download failed", e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+            if (!response.isCommitted()) {
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
         }
     }
 
@@ -164,17 +306,24 @@ public class TranslationController {
         try {
             log.info("Analyzing media file: {}", file.getOriginalFilename());
 
-            // Store file temporarily
-            File uploadedFile = fileStorageService.storeUploadedFile(file);
+            // Keep the file (hashed for deduplication) so /upload can claim it by token
+            StoredUpload upload = fileStorageService.storeUploadedFileHashed(file);
 
             // Analyze tracks
-            List<MediaTrackInfo> tracks = ffmpegService.analyzeMedia(uploadedFile);
+            List<MediaTrackInfo> tracks;
+            try {
+                tracks = ffmpegService.analyzeMedia(upload.getFile());
+            } catch (RuntimeException e) {
+                upload.getFile().delete();
+                throw e;
+            }
+
+            StagedUpload staged = stagedUploadService.stage(upload, file.getOriginalFilename());
 
             Map<String, Object> response = new HashMap<>();
             response.put("tracks", tracks);
-
-            // Clean up temporary file
-            uploadedFile.delete();
+            response.put("upload_token", staged.getToken());
+            response.put("expires_in_seconds", stagedUploadService.getTtlSeconds());
 
             return ResponseEntity.ok(response);
 
@@ -186,22 +335,122 @@ public class TranslationController {
         }
     }
 
-    private File findFileInOutputs(String filename) {
-        File outputDir = new File(fileStorageService.getOutputDir());
-        if (!outputDir.exists() || !outputDir.isDirectory()) {
-            return null;
+    /**
+     * Starts a chunked upload. Chunks are then PUT to
+     * {@code /uploads/{uploadId}/chunks/{offset}} and the upload committed,
+     * which yields an upload token for {@code /upload}.
+     */
+    @PostMapping("/uploads")
+    public ResponseEntity<?> initiateChunkedUpload(
+            @RequestParam("filename") String filename,
+            @RequestParam("size") long size,
+            @RequestParam(value = "sha256", required = false) String sha256
+    ) {
+        try {
+            ChunkedUploadSession session = chunkedUploadService.initiate(filename, size, sha256);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("upload_id", session.getUploadId());
+            response.put("chunk_size", session.getChunkSize());
+            response.put("chunk_count", session.getChunkCount());
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            return chunkedUploadError("Failed to initiate chunked upload", e);
         }
+    }
 
-        for (File jobDir : outputDir.listFiles()) {
-            if (jobDir.isDirectory()) {
-                File targetFile = new File(jobDir, filename);
-                if (targetFile.exists()) {
-                    return targetFile;
-                }
-            }
+    @PutMapping(value = "/uploads/{uploadId}/chunks/{offset}")
+    public ResponseEntity<?> uploadChunk(
+            @PathVariable String uploadId,
+            @PathVariable long offset,
+            @RequestHeader(value = "X-Chunk-SHA256", required = false) String chunkSha256,
+            InputStream body
+    ) {
+        try {
+            boolean written = chunkedUploadService.writeChunk(uploadId, offset, body, chunkSha256);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("offset", offset);
+            // Already received, or being written by a parallel request
+            response.put("status", written ? "received" : "skipped");
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            return chunkedUploadError("Failed to write chunk at " + offset + " of upload " + uploadId, e);
+        }
+    }
+
+    /**
+     * Reports which chunks are still missing, so a client can resume after a dropped connection.
+     */
+    @GetMapping("/uploads/{uploadId}")
+    public ResponseEntity<?> getChunkedUploadStatus(@PathVariable String uploadId) {
+        try {
+            ChunkedUploadSession session = chunkedUploadService.getSession(uploadId);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("upload_id", session.getUploadId());
+            response.put("size", session.getSize());
+            response.put("chunk_size", session.getChunkSize());
+            response.put("received_bytes", session.receivedBytes());
+            response.put("missing_chunks", session.missingChunks());
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            return chunkedUploadError("Failed to get chunked upload status", e);
+        }
+    }
+
+    @PostMapping("/uploads/{uploadId}/commit")
+    public ResponseEntity<?> commitChunkedUpload(@PathVariable String uploadId) {
+        try {
+            ChunkedUploadSession session = chunkedUploadService.getSession(uploadId);
+            StoredUpload upload = chunkedUploadService.commit(uploadId);
+            StagedUpload staged = stagedUploadService.stage(upload, session.getFilename());
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("upload_token", staged.getToken());
+            response.put("sha256", upload.getContentHash());
+            response.put("expires_in_seconds", stagedUploadService.getTtlSeconds());
+
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            return chunkedUploadError("Failed to commit chunked upload " + uploadId, e);
+        }
+    }
+
+    @DeleteMapping("/uploads/{uploadId}")
+    public ResponseEntity<?> abortChunkedUpload(@PathVariable String uploadId) {
+        chunkedUploadService.abort(uploadId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/memory/stats")
+    public ResponseEntity<?> getTranslationMemoryStats() {
+        return ResponseEntity.ok(translationMemoryService.getStats());
+    }
+
+    private ResponseEntity<?> chunkedUploadError(String message, Exception e) {
+        HttpStatus status;
+        if (e instanceof NoSuchElementException) {
+            status = HttpStatus.NOT_FOUND;
+        } else if (e instanceof IllegalArgumentException) {
+            status = HttpStatus.BAD_REQUEST;
+        } else if (e instanceof IllegalStateException) {
+            status = HttpStatus.CONFLICT;
+        } else {
+            status = HttpStatus.INTERNAL_SERVER_ERROR;
         }
+        log.error(message, e);
 
-        return null;
+        Map<String, String> error = new HashMap<>();
+        error.put("error", e.getMessage());
+        return ResponseEntity.status(status).body(error);
     }
 
     private String determineContentType(String filename) {
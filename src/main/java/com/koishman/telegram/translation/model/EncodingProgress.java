@@ -0,0 +1,34 @@
+package com.koishman.telegram.translation.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A progress report of a running ffmpeg encode, parsed from its
+ * {@code -progress} output.
+ */
+@Data
+@AllArgsConstructor
+public class EncodingProgress {
+    private double fps;
+    private double speed; // Multiple of real time, 0 if not known yet
+    private double outTimeSeconds;
+    private double durationSeconds; // 0 if unknown
+
+    public int getPercent() {
+        if (durationSeconds <= 0) {
+            return 0;
+        }
+        return (int) Math.max(0, Math.min(100, outTimeSeconds / durationSeconds * 100));
+    }
+
+    /**
+     * @return estimated seconds until the encode finishes, or null if unknown
+     */
+    public Long getEtaSeconds() {
+        if (durationSeconds <= 0 || speed <= 0) {
+            return null;
+        }
+        return Math.max(0, Math.round((durationSeconds - outTimeSeconds) / speed));
+    }
+}
@@ -0,0 +1,47 @@
+package com.koishman.telegram.translation.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A change in a job's lifecycle. Published in-process as an application
+ * event and POSTed as JSON to the job's callback URL, if it has one.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class JobEvent {
+
+    public enum Type {
+        STAGE_CHANGED,
+        OUTPUT_ADDED,
+        COMPLETED,
+        FAILED
+    }
+
+    @JsonProperty("job_id")
+    private String jobId;
+
+    private Type type;
+
+    private String stage; // STAGE_CHANGED
+
+    private String state; // STAGE_CHANGED
+
+    @JsonProperty("output_key")
+    private String outputKey; // OUTPUT_ADDED
+
+    private String filename; // OUTPUT_ADDED
+
+    private String error; // FAILED
+
+    private long timestamp;
+
+    public boolean isTerminal() {
+        return type == Type.COMPLETED || type == Type.FAILED;
+    }
+}
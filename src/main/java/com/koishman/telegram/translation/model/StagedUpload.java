@@ -0,0 +1,13 @@
+package com.koishman.telegram.translation.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class StagedUpload {
+    private String token;
+    private String originalFilename;
+    private StoredUpload upload;
+    private long expiresAtMillis;
+}
@@ -0,0 +1,13 @@
+package com.koishman.telegram.translation.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.io.File;
+
+@Data
+@AllArgsConstructor
+public class StoredUpload {
+    private File file;
+    private String contentHash; // SHA-256 of the file content, hex
+}
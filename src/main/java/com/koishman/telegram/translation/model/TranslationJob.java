@@ -3,8 +3,8 @@ package com.koishman.telegram.translation.model;
 import lombok.Data;
 
 import java.time.LocalDateTime;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Data
 public class TranslationJob {
@@ -12,13 +12,19 @@ public class TranslationJob {
     private String fileName;
     private String filePath;
     private JobStatus status = JobStatus.PENDING;
-    private Map<String, String> outputs = new HashMap<>();
+    private Map<String, String> outputs = new ConcurrentHashMap<>();
+    private Map<String, String> outputHashes = new ConcurrentHashMap<>(); // Output key -> SHA-256 of its content
     private LocalDateTime createdAt = LocalDateTime.now();
     private LocalDateTime startedAt;
     private LocalDateTime completedAt;
     private String errorMessage;
     private TranslationJobRequest request;
     private Long chatId;
+    private String contentHash;
+    private String reusedFromJobId; // Set when outputs come from an identical earlier job
+    private String callbackUrl; // Receives job events as they happen, if set
+    private String callbackSecret;
+    private volatile long version; // Bumped on every job event; see JobTrackingService
 
     public enum JobStatus {
         PENDING,
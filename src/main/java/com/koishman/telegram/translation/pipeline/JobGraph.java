@@ -0,0 +1,73 @@
+package com.koishman.telegram.translation.pipeline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dependency graph of the stages that make up one job. Stages can only depend
+ * on stages added before them, so the graph is acyclic by construction.
+ */
+public class JobGraph {
+
+    private final Map<String, PipelineStage> stages = new LinkedHashMap<>();
+
+    public JobGraph addStage(String name, StageType type, String label, PipelineStage.Action action,
+                             String... dependencies) {
+        return addStage(name, type, label, action, Arrays.asList(dependencies));
+    }
+
+    public JobGraph addStage(String name, StageType type, String label, PipelineStage.Action action,
+                             List<String> dependencies) {
+        if (stages.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate stage: " + name);
+        }
+        for (String dependency : dependencies) {
+            if (!stages.containsKey(dependency)) {
+                throw new IllegalArgumentException("Stage " + name + " depends on unknown stage " + dependency);
+            }
+        }
+
+        stages.put(name, new PipelineStage(name, type, label, new ArrayList<>(dependencies), action));
+        return this;
+    }
+
+    public PipelineStage getStage(String name) {
+        return stages.get(name);
+    }
+
+    public boolean hasStage(String name) {
+        return stages.containsKey(name);
+    }
+
+    /**
+     * @return stages in insertion order, which is also a valid topological order
+     */
+    public Collection<PipelineStage> getStages() {
+        return Collections.unmodifiableCollection(stages.values());
+    }
+
+    /**
+     * Estimates overall completion from 0 to 100, weighting each stage by its type.
+     */
+    public int getOverallProgress() {
+        int totalWeight = 0;
+        int completedWeight = 0;
+
+        for (PipelineStage stage : stages.values()) {
+            int weight = stage.getType().getProgressWeight();
+            totalWeight += weight;
+            if (stage.getState() == PipelineStage.State.DONE) {
+                completedWeight += weight * 100;
+            } else if (stage.getState() == PipelineStage.State.RUNNING) {
+                completedWeight += weight * stage.getProgress();
+            }
+        }
+
+        return totalWeight == 0 ? 0 : completedWeight / totalWeight;
+    }
+}
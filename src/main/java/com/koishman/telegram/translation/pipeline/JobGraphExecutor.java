@@ -0,0 +1,172 @@
+package com.koishman.telegram.translation.pipeline;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Runs a {@link JobGraph}, starting each stage as soon as its dependencies are
+ * done. Independent stages overlap, subject to per-{@link StageType}
+ * concurrency limits that are shared across all jobs. A stage holds its
+ * type's permit while it runs, or only per batch if it was set up with
+ * {@link PipelineStage#setPermitPerBatch}. When a stage fails, its
+ * dependents and any stage that has not started yet are skipped.
+ */
+@Slf4j
+@Component
+public class JobGraphExecutor {
+
+    @Value("${translation.pipeline.concurrency.extract-audio:2}")
+    private int extractAudioConcurrency;
+
+    @Value("${translation.pipeline.concurrency.extract-subtitles:2}")
+    private int extractSubtitlesConcurrency;
+
+    @Value("${translation.pipeline.concurrency.transcribe:1}")
+    private int transcribeConcurrency;
+
+    @Value("${translation.pipeline.concurrency.translate:2}")
+    private int translateConcurrency;
+
+    @Value("${translation.pipeline.concurrency.burn:2}")
+    private int burnConcurrency;
+
+    @Value("${translation.pipeline.concurrency.mux:2}")
+    private int muxConcurrency;
+
+    private final Map<StageType, Semaphore> permits = new EnumMap<>(StageType.class);
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private ExecutorService executorService;
+
+    @PostConstruct
+    public void init() {
+        permits.put(StageType.EXTRACT_AUDIO, new Semaphore(extractAudioConcurrency, true));
+        permits.put(StageType.EXTRACT_SUBTITLES, new Semaphore(extractSubtitlesConcurrency, true));
+        permits.put(StageType.TRANSCRIBE, new Semaphore(transcribeConcurrency, true));
+        permits.put(StageType.TRANSLATE, new Semaphore(translateConcurrency, true));
+        permits.put(StageType.BURN, new Semaphore(burnConcurrency, true));
+        permits.put(StageType.MUX, new Semaphore(muxConcurrency, true));
+
+        // Stage threads mostly wait on external processes or permits, so the pool is unbounded
+        executorService = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "pipeline-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        log.info("Pipeline concurrency: extract={}, extract_subtitles={}, transcribe={}, translate={}, burn={}, mux={}",
+                extractAudioConcurrency, extractSubtitlesConcurrency, transcribeConcurrency, translateConcurrency,
+                burnConcurrency, muxConcurrency);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Executes the graph and blocks until every stage has finished or been skipped.
+     *
+     * @param onChange called whenever a stage starts, reports progress, finishes, fails or is skipped
+     * @throws Exception the failure of the first stage that failed
+     */
+    public void execute(String jobId, JobGraph graph, Consumer<PipelineStage> onChange) throws Exception {
+        Map<String, CompletableFuture<Void>> futures = new HashMap<>();
+        AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+
+        for (PipelineStage stage : graph.getStages()) {
+            CompletableFuture<?>[] dependencies = stage.getDependencies().stream()
+                    .map(futures::get)
+                    .toArray(CompletableFuture[]::new);
+
+            CompletableFuture<Void> future = CompletableFuture.allOf(dependencies)
+                    .thenRunAsync(() -> runStage(jobId, stage, firstFailure, onChange), executorService)
+                    .whenComplete((ignored, error) -> {
+                        if (error != null && stage.getState() == PipelineStage.State.PENDING) {
+                            stage.setState(PipelineStage.State.SKIPPED);
+                            onChange.accept(stage);
+                        }
+                    });
+
+            futures.put(stage.getName(), future);
+        }
+
+        try {
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            // Reported below through firstFailure
+        }
+
+        Throwable failure = firstFailure.get();
+        if (failure instanceof Exception) {
+            throw (Exception) failure;
+        } else if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    private void runStage(String jobId, PipelineStage stage, AtomicReference<Throwable> firstFailure,
+                          Consumer<PipelineStage> onChange) {
+        Semaphore semaphore = permits.get(stage.getType());
+        // A stage taking its permit per batch holds none while waiting for input
+        Semaphore stagePermit = stage.isPermitPerBatch() ? null : semaphore;
+        if (stagePermit == null) {
+            stage.setPermit(semaphore);
+        }
+
+        try {
+            if (stagePermit != null) {
+                stagePermit.acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            firstFailure.compareAndSet(null, e);
+            throw new CompletionException(e);
+        }
+
+        try {
+            // Fail fast: don't start new work once the job is doomed
+            if (firstFailure.get() != null) {
+                throw new CompletionException(new IllegalStateException("Job already failed"));
+            }
+
+            log.info("Job {}: starting stage {}", jobId, stage.getName());
+            stage.setProgressListener(onChange);
+            stage.setState(PipelineStage.State.RUNNING);
+            onChange.accept(stage);
+
+            stage.getAction().run(stage);
+
+            stage.setState(PipelineStage.State.DONE);
+            log.info("Job {}: finished stage {}", jobId, stage.getName());
+            onChange.accept(stage);
+
+        } catch (CompletionException e) {
+            throw e;
+        } catch (Throwable e) {
+            log.error("Job {}: stage {} failed", jobId, stage.getName(), e);
+            firstFailure.compareAndSet(null, e);
+            stage.setState(PipelineStage.State.FAILED);
+            onChange.accept(stage);
+            throw new CompletionException(e);
+        } finally {
+            if (stagePermit != null) {
+                stagePermit.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.koishman.telegram.translation.pipeline;
+
+import com.koishman.telegram.translation.model.EncodingProgress;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * A node in a {@link JobGraph}: an action that may run once all of its
+ * dependencies have completed.
+ */
+@Getter
+public class PipelineStage {
+
+    public enum State {
+        PENDING,
+        RUNNING,
+        DONE,
+        FAILED,
+        SKIPPED
+    }
+
+    @FunctionalInterface
+    public interface Action {
+        void run(PipelineStage stage) throws Exception;
+    }
+
+    private final String name;
+    private final StageType type;
+    private final String label;
+    private final List<String> dependencies;
+    private final Action action;
+
+    private volatile State state = State.PENDING;
+    private volatile int progress;
+    private volatile EncodingProgress encodingProgress; // Latest ffmpeg report of BURN and MUX stages
+    @Getter(AccessLevel.NONE)
+    private volatile Consumer<PipelineStage> progressListener = stage -> { };
+    private volatile boolean permitPerBatch;
+    @Getter(AccessLevel.NONE)
+    private volatile Semaphore permit; // Set while running if permitPerBatch
+
+    PipelineStage(String name, StageType type, String label, List<String> dependencies, Action action) {
+        this.name = name;
+        this.type = type;
+        this.label = label;
+        this.dependencies = dependencies;
+        this.action = action;
+    }
+
+    void setState(State state) {
+        this.state = state;
+        if (state == State.DONE) {
+            this.progress = 100;
+        }
+    }
+
+    void setProgressListener(Consumer<PipelineStage> progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Makes the stage take its type's concurrency permit only around each
+     * {@link #withPermit} call instead of for its whole run. Meant for stages
+     * that spend most of their time waiting on another stage. Set before the
+     * graph runs.
+     */
+    public void setPermitPerBatch(boolean permitPerBatch) {
+        this.permitPerBatch = permitPerBatch;
+    }
+
+    void setPermit(Semaphore permit) {
+        this.permit = permit;
+    }
+
+    /**
+     * Runs one batch of work under the stage type's concurrency limit, if the
+     * stage takes its permit per batch. Otherwise the stage already holds it
+     * and {@code work} just runs.
+     */
+    public <T> T withPermit(Callable<T> work) throws Exception {
+        Semaphore semaphore = permit;
+        if (semaphore == null) {
+            return work.call();
+        }
+        semaphore.acquire();
+        try {
+            return work.call();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Reports progress of a running stage, from 0 to 100.
+     */
+    public void setProgress(int progress) {
+        int clamped = Math.max(0, Math.min(100, progress));
+        if (clamped != this.progress) {
+            this.progress = clamped;
+            progressListener.accept(this);
+        }
+    }
+
+    /**
+     * Reports progress of a running ffmpeg encode. Listeners hear of it when
+     * the percentage changes, like with {@link #setProgress}.
+     */
+    public void setEncodingProgress(EncodingProgress encodingProgress) {
+        this.encodingProgress = encodingProgress;
+        setProgress(encodingProgress.getPercent());
+    }
+}
@@ -0,0 +1,130 @@
+package com.koishman.telegram.translation.pipeline;
+
+import com.koishman.telegram.translation.model.SubtitleSegment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hands transcribed segments from the transcription stage to stages that
+ * consume them while transcription is still running. Every reader sees every
+ * segment in order. Readers may join late and replay what they missed.
+ * The publisher blocks while any active reader lags more than
+ * {@code capacity} segments behind, which bounds the buffering between stages.
+ */
+public class SegmentFeed {
+
+    private final int capacity;
+    private final List<SubtitleSegment> segments = new ArrayList<>();
+    private final List<Reader> readers = new ArrayList<>();
+    private boolean completed;
+    private Throwable failure;
+
+    public SegmentFeed(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Appends a segment, waiting while the slowest active reader is too far behind.
+     *
+     * @throws IllegalStateException if the feed has failed, e.g. because a reader gave up
+     */
+    public synchronized void publish(SubtitleSegment segment) throws InterruptedException {
+        while (failure == null && segments.size() - slowestPosition() >= capacity) {
+            wait();
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Segment feed failed", failure);
+        }
+        segments.add(segment);
+        notifyAll();
+    }
+
+    public synchronized void complete() {
+        completed = true;
+        notifyAll();
+    }
+
+    /**
+     * Fails the feed for the publisher and every reader. Only the first failure is kept.
+     */
+    public synchronized void fail(Throwable cause) {
+        if (failure == null) {
+            failure = cause;
+        }
+        completed = true;
+        notifyAll();
+    }
+
+    public synchronized boolean isCompleted() {
+        return completed;
+    }
+
+    public synchronized int size() {
+        return segments.size();
+    }
+
+    /**
+     * @return every segment published so far
+     */
+    public synchronized List<SubtitleSegment> getSegments() {
+        return Collections.unmodifiableList(new ArrayList<>(segments));
+    }
+
+    /**
+     * Starts reading from the first segment. Close the reader when done so it
+     * no longer holds back the publisher.
+     */
+    public synchronized Reader open() {
+        Reader reader = new Reader();
+        readers.add(reader);
+        notifyAll();
+        return reader;
+    }
+
+    private int slowestPosition() {
+        int slowest = segments.size();
+        for (Reader reader : readers) {
+            slowest = Math.min(slowest, reader.position);
+        }
+        return slowest;
+    }
+
+    public class Reader implements AutoCloseable {
+
+        private int position;
+
+        /**
+         * Blocks until at least one unread segment is available and returns up
+         * to {@code max} of them.
+         *
+         * @return the next segments, or an empty list once the feed is complete
+         * @throws IllegalStateException if the feed has failed
+         */
+        public List<SubtitleSegment> next(int max) throws InterruptedException {
+            synchronized (SegmentFeed.this) {
+                while (position >= segments.size() && !completed) {
+                    SegmentFeed.this.wait();
+                }
+                if (failure != null) {
+                    throw new IllegalStateException("Segment feed failed", failure);
+                }
+
+                int end = Math.min(segments.size(), position + max);
+                List<SubtitleSegment> batch = new ArrayList<>(segments.subList(position, end));
+                position = end;
+                SegmentFeed.this.notifyAll();
+                return batch;
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (SegmentFeed.this) {
+                readers.remove(this);
+                SegmentFeed.this.notifyAll();
+            }
+        }
+    }
+}
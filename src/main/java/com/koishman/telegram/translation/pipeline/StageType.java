@@ -0,0 +1,24 @@
+package com.koishman.telegram.translation.pipeline;
+
+/**
+ * Kinds of pipeline stages. Each kind has its own concurrency limit, shared by
+ * all jobs, and a weight used when estimating overall job progress.
+ */
+public enum StageType {
+    EXTRACT_AUDIO(10),
+    EXTRACT_SUBTITLES(5),
+    TRANSCRIBE(25),
+    TRANSLATE(15),
+    BURN(15),
+    MUX(5);
+
+    private final int progressWeight;
+
+    StageType(int progressWeight) {
+        this.progressWeight = progressWeight;
+    }
+
+    public int getProgressWeight() {
+        return progressWeight;
+    }
+}
@@ -0,0 +1,276 @@
+package com.koishman.telegram.translation.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.koishman.telegram.translation.model.SubtitleSegment;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache for intermediate pipeline artifacts (extracted
+ * audio, transcripts, translations), so a job skips any stage whose inputs
+ * match an earlier job. Entries live under {@code dir/kind/ab/key}; the cache
+ * is bounded by {@code translation.cache.max-size-mb} and evicts the least
+ * recently used entries, using the file modification time as the access time.
+ * The total size is tracked as entries are added, so the tree is only walked
+ * once at startup and again when the limit is exceeded.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ArtifactCacheService {
+
+    public static final String AUDIO = "audio";
+    public static final String TRANSCRIPT = "transcript";
+    public static final String TRANSLATION = "translation";
+
+    private static final TypeReference<List<SubtitleSegment>> SEGMENT_LIST = new TypeReference<List<SubtitleSegment>>() { };
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${translation.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${translation.cache.dir:./cache/artifacts}")
+    private String cacheDir;
+
+    @Value("${translation.cache.max-size-mb:10240}")
+    private long maxSizeMb;
+
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            try {
+                Files.createDirectories(Paths.get(cacheDir));
+                totalBytes.set(scanEntries().stream().mapToLong(path -> path.toFile().length()).sum());
+                log.info("Artifact cache initialized: dir={}, maxSizeMb={}, sizeBytes={}", cacheDir, maxSizeMb, totalBytes.get());
+            } catch (IOException e) {
+                log.error("Failed to initialize artifact cache, cache disabled", e);
+                enabled = false;
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Builds a cache key from everything that determines an artifact.
+     */
+    public String key(Object... parts) {
+        StringBuilder raw = new StringBuilder();
+        for (Object part : parts) {
+            raw.append(part).append('\u0000');
+        }
+        return sha256(raw.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the cached file, or null on a miss
+     */
+    public File get(String kind, String key) {
+        if (!enabled) {
+            return null;
+        }
+
+        Path entry = entryPath(kind, key);
+        if (!Files.exists(entry)) {
+            return null;
+        }
+
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            log.debug("Failed to touch cache entry {}", entry, e);
+        }
+        log.info("Artifact cache hit: {} {}", kind, key);
+        return entry.toFile();
+    }
+
+    /**
+     * Copies {@code source} into the cache. Failures are logged and otherwise
+     * ignored, since the cache is only an optimization.
+     */
+    public void put(String kind, String key, File source) {
+        if (!enabled) {
+            return;
+        }
+
+        Path entry = entryPath(kind, key);
+        try {
+            Files.createDirectories(entry.getParent());
+            // Copy to a temp file first so readers never see a partial entry
+            Path temp = Files.createTempFile(entry.getParent(), key, ".tmp");
+            Files.copy(source.toPath(), temp, StandardCopyOption.REPLACE_EXISTING);
+            long added = Files.size(temp);
+            long replaced = entry.toFile().length();
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            totalBytes.addAndGet(added - replaced);
+            log.debug("Cached {} {}", kind, key);
+        } catch (IOException e) {
+            log.warn("Failed to cache {} {}", kind, key, e);
+            return;
+        }
+
+        if (totalBytes.get() > maxSizeMb * 1024 * 1024) {
+            evict();
+        }
+    }
+
+    /**
+     * Makes a cached file available at {@code target}, as a hard link where
+     * possible so large artifacts aren't copied.
+     *
+     * @return false on a miss
+     */
+    public boolean restore(String kind, String key, File target) {
+        File entry = get(kind, key);
+        if (entry == null) {
+            return false;
+        }
+
+        try {
+            Files.deleteIfExists(target.toPath());
+            try {
+                Files.createLink(target.toPath(), entry.toPath());
+            } catch (UnsupportedOperationException | IOException e) {
+                Files.copy(entry.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException e) {
+            // Evicted between the lookup and the link; treat it as a miss
+            log.warn("Failed to restore cache entry {} {}", kind, key, e);
+            return false;
+        }
+    }
+
+    /**
+     * @return the cached segments, or null on a miss
+     */
+    public List<SubtitleSegment> getSegments(String kind, String key) {
+        File entry = get(kind, key);
+        if (entry == null) {
+            return null;
+        }
+
+        try {
+            return objectMapper.readValue(entry, SEGMENT_LIST);
+        } catch (IOException e) {
+            log.warn("Unreadable cache entry {}, ignoring", entry, e);
+            return null;
+        }
+    }
+
+    public void putSegments(String kind, String key, List<SubtitleSegment> segments) {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            Path temp = Files.createTempFile("segments", ".json");
+            try {
+                Files.write(temp, objectMapper.writeValueAsBytes(segments));
+                put(kind, key, temp.toFile());
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to cache {} {}", kind, key, e);
+        }
+    }
+
+    /**
+     * Hashes segments exactly as they are stored, so a transcript's hash is
+     * the same whether it was just produced or read back from the cache.
+     */
+    public String hashSegments(List<SubtitleSegment> segments) {
+        try {
+            return sha256(objectMapper.writeValueAsBytes(segments));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialize segments", e);
+        }
+    }
+
+    private synchronized void evict() {
+        long maxBytes = maxSizeMb * 1024 * 1024;
+        if (totalBytes.get() <= maxBytes) {
+            // Another put already evicted
+            return;
+        }
+
+        List<Path> entries;
+        try {
+            entries = scanEntries();
+        } catch (IOException e) {
+            log.warn("Failed to scan artifact cache", e);
+            return;
+        }
+
+        // Recount from the tree, which also corrects any drift in the running total
+        long total = entries.stream().mapToLong(path -> path.toFile().length()).sum();
+        entries.sort(Comparator.comparingLong(path -> path.toFile().lastModified()));
+        for (Path entry : entries) {
+            if (total <= maxBytes) {
+                break;
+            }
+            long size = entry.toFile().length();
+            try {
+                Files.deleteIfExists(entry);
+                total -= size;
+                log.info("Evicted artifact cache entry {} ({} bytes)", entry.getFileName(), size);
+            } catch (IOException e) {
+                log.warn("Failed to evict cache entry {}", entry, e);
+            }
+        }
+        totalBytes.set(total);
+    }
+
+    private List<Path> scanEntries() throws IOException {
+        try (Stream<Path> files = Files.walk(Paths.get(cacheDir))) {
+            return files.filter(Files::isRegularFile)
+                    .filter(path -> !path.getFileName().toString().endsWith(".tmp"))
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    private Path entryPath(String kind, String key) {
+        // Shard by the first two hex characters to keep directories small
+        return Paths.get(cacheDir, kind, key.substring(0, 2), key);
+    }
+
+    private String sha256(byte[] bytes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(bytes)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.koishman.telegram.translation.service;
+
+import com.koishman.telegram.translation.model.StoredUpload;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resumable uploads for media too large for one multipart request. A client
+ * initiates an upload with the total size, PUTs fixed-size chunks by offset
+ * (in any order and in parallel), and commits. Each chunk is written straight
+ * into the preallocated upload file at its offset, so nothing is spooled or
+ * copied. A chunk counts only once all of its bytes have arrived, so after a
+ * dropped connection the client re-sends just the missing chunks.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChunkedUploadService {
+
+    private final FileStorageService fileStorageService;
+
+    @Value("${translation.chunked-upload.chunk-size-mb:8}")
+    private long chunkSizeMb;
+
+    @Value("${translation.chunked-upload.max-size-mb:20480}")
+    private long maxSizeMb;
+
+    @Value("${translation.chunked-upload.idle-timeout-seconds:3600}")
+    private long idleTimeoutSeconds;
+
+    private final Map<String, ChunkedUploadSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Starts an upload and preallocates its file.
+     *
+     * @param sha256 expected SHA-256 of the whole file, checked at commit, or null
+     */
+    public ChunkedUploadSession initiate(String filename, long size, String sha256) throws IOException {
+        if (size <= 0 || size > maxSizeMb * 1024 * 1024) {
+            throw new IllegalArgumentException("Upload size must be between 1 byte and " + maxSizeMb + " MB");
+        }
+
+        File file = fileStorageService.createUploadFile(filename);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
+        }
+
+        ChunkedUploadSession session = new ChunkedUploadSession(UUID.randomUUID().toString(), filename, file, size,
+                chunkSizeMb * 1024 * 1024, sha256 != null ? sha256.toLowerCase() : null, sha256());
+        sessions.put(session.getUploadId(), session);
+        log.info("Initiated chunked upload {} for {} ({} bytes, {} chunks)",
+                session.getUploadId(), filename, size, session.getChunkCount());
+        return session;
+    }
+
+    /**
+     * Writes one chunk at its offset. The body must be exactly the chunk's
+     * length; a chunk that is short (e.g. because the connection dropped) is
+     * not marked received and must be sent again.
+     *
+     * @param chunkSha256 expected SHA-256 of the chunk, or null
+     * @return false if the chunk was already received or is being written by another request
+     */
+    public boolean writeChunk(String uploadId, long offset, InputStream body, String chunkSha256) throws IOException {
+        ChunkedUploadSession session = getSession(uploadId);
+        if (offset < 0 || offset >= session.getSize() || offset % session.getChunkSize() != 0) {
+            throw new IllegalArgumentException("Offset must be a multiple of the chunk size (" +
+                    session.getChunkSize() + ") within the file");
+        }
+
+        int chunk = (int) (offset / session.getChunkSize());
+        if (!session.begin(chunk)) {
+            return false;
+        }
+
+        boolean success = false;
+        try {
+            long length = session.chunkLength(chunk);
+            MessageDigest digest = sha256();
+            long written = 0;
+
+            try (FileChannel channel = FileChannel.open(session.getFile().toPath(), StandardOpenOption.WRITE)) {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = body.read(buffer)) != -1) {
+                    if (written + read > length) {
+                        throw new IllegalArgumentException("Chunk " + chunk + " is longer than " + length + " bytes");
+                    }
+                    digest.update(buffer, 0, read);
+                    ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+                    while (data.hasRemaining()) {
+                        channel.write(data, offset + written + data.position());
+                    }
+                    written += read;
+                }
+            }
+
+            if (written != length) {
+                throw new IllegalArgumentException("Chunk " + chunk + " is incomplete: " + written + " of " +
+                        length + " bytes");
+            }
+            if (chunkSha256 != null && !chunkSha256.equalsIgnoreCase(toHex(digest.digest()))) {
+                throw new IllegalArgumentException("Chunk " + chunk + " failed SHA-256 verification");
+            }
+
+            success = true;
+        } finally {
+            session.finish(chunk, success);
+            session.touch();
+        }
+
+        session.advanceHash();
+        log.debug("Upload {}: chunk {} received", uploadId, chunk);
+        return true;
+    }
+
+    public ChunkedUploadSession getSession(String uploadId) {
+        ChunkedUploadSession session = sessions.get(uploadId);
+        if (session == null) {
+            throw new NoSuchElementException("Unknown upload: " + uploadId);
+        }
+        return session;
+    }
+
+    /**
+     * Finishes an upload once every chunk has arrived and checks the whole-file hash.
+     *
+     * @return the stored file, now owned by the caller
+     */
+    public StoredUpload commit(String uploadId) throws IOException {
+        ChunkedUploadSession session = getSession(uploadId);
+        if (!session.isComplete()) {
+            throw new IllegalStateException("Upload " + uploadId + " is missing " +
+                    session.missingChunks().size() + " chunks");
+        }
+        if (!sessions.remove(uploadId, session)) {
+            throw new NoSuchElementException("Unknown upload: " + uploadId);
+        }
+
+        String contentHash = toHex(session.digest());
+        if (session.getExpectedSha256() != null && !session.getExpectedSha256().equals(contentHash)) {
+            session.getFile().delete();
+            throw new IllegalArgumentException("Upload " + uploadId + " failed SHA-256 verification");
+        }
+
+        log.info("Committed chunked upload {}: {} (sha256: {})", uploadId, session.getFile(), contentHash);
+        return new StoredUpload(session.getFile(), contentHash);
+    }
+
+    public void abort(String uploadId) {
+        ChunkedUploadSession session = sessions.remove(uploadId);
+        if (session != null) {
+            session.getFile().delete();
+            log.info("Aborted chunked upload {}", uploadId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${translation.staging.gc-interval-ms:60000}")
+    public void collectAbandoned() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutSeconds * 1000;
+        for (ChunkedUploadSession session : sessions.values()) {
+            if (session.getLastActivityMillis() < cutoff && sessions.remove(session.getUploadId(), session)) {
+                session.getFile().delete();
+                log.info("Deleted abandoned chunked upload {} ({})", session.getUploadId(), session.getFilename());
+            }
+        }
+    }
+
+    private MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
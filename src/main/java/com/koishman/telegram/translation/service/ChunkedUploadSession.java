@@ -0,0 +1,173 @@
+package com.koishman.telegram.translation.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * State of one chunked upload: the preallocated target file, which chunks
+ * have landed, and the whole-file SHA-256, which advances over the
+ * contiguous prefix of received chunks as they arrive so it is nearly done
+ * by commit time.
+ */
+public class ChunkedUploadSession {
+
+    private final String uploadId;
+    private final String filename;
+    private final File file;
+    private final long size;
+    private final long chunkSize;
+    private final String expectedSha256;
+    private final BitSet received = new BitSet();
+    private final BitSet inFlight = new BitSet();
+    private volatile long lastActivityMillis = System.currentTimeMillis();
+
+    // Guarded by digest
+    private final MessageDigest digest;
+    private int hashedChunks;
+
+    ChunkedUploadSession(String uploadId, String filename, File file, long size, long chunkSize,
+                         String expectedSha256, MessageDigest digest) {
+        this.uploadId = uploadId;
+        this.filename = filename;
+        this.file = file;
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.expectedSha256 = expectedSha256;
+        this.digest = digest;
+    }
+
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    String getExpectedSha256() {
+        return expectedSha256;
+    }
+
+    long getLastActivityMillis() {
+        return lastActivityMillis;
+    }
+
+    void touch() {
+        lastActivityMillis = System.currentTimeMillis();
+    }
+
+    public int getChunkCount() {
+        return (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+    }
+
+    long chunkLength(int chunk) {
+        return Math.min(chunkSize, size - chunk * chunkSize);
+    }
+
+    /**
+     * Reserves a chunk for writing, so two connections never write the same chunk at once.
+     *
+     * @return false if the chunk is already received or being written
+     */
+    synchronized boolean begin(int chunk) {
+        if (received.get(chunk) || inFlight.get(chunk)) {
+            return false;
+        }
+        inFlight.set(chunk);
+        return true;
+    }
+
+    synchronized void finish(int chunk, boolean success) {
+        inFlight.clear(chunk);
+        if (success) {
+            received.set(chunk);
+        }
+    }
+
+    synchronized boolean isReceived(int chunk) {
+        return received.get(chunk);
+    }
+
+    synchronized boolean isComplete() {
+        return received.cardinality() == getChunkCount();
+    }
+
+    public synchronized List<Integer> missingChunks() {
+        List<Integer> missing = new ArrayList<>();
+        for (int chunk = received.nextClearBit(0); chunk < getChunkCount(); chunk = received.nextClearBit(chunk + 1)) {
+            missing.add(chunk);
+        }
+        return missing;
+    }
+
+    public synchronized long receivedBytes() {
+        long bytes = 0;
+        for (int chunk = received.nextSetBit(0); chunk >= 0; chunk = received.nextSetBit(chunk + 1)) {
+            bytes += chunkLength(chunk);
+        }
+        return bytes;
+    }
+
+    /**
+     * Feeds every newly contiguous received chunk into the whole-file digest.
+     * The chunks were just written, so reading them back hits the page cache.
+     */
+    void advanceHash() throws IOException {
+        synchronized (digest) {
+            if (hashedChunks >= getChunkCount() || !isReceived(hashedChunks)) {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+                while (hashedChunks < getChunkCount() && isReceived(hashedChunks)) {
+                    long position = hashedChunks * chunkSize;
+                    long end = position + chunkLength(hashedChunks);
+                    while (position < end) {
+                        buffer.clear();
+                        buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                        int read = channel.read(buffer, position);
+                        if (read < 0) {
+                            throw new IOException("Upload file is shorter than its received chunks");
+                        }
+                        buffer.flip();
+                        digest.update(buffer);
+                        position += read;
+                    }
+                    hashedChunks++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the whole-file digest; only valid once every chunk is received and hashed
+     */
+    byte[] digest() throws IOException {
+        advanceHash();
+        synchronized (digest) {
+            if (hashedChunks < getChunkCount()) {
+                throw new IllegalStateException("Upload " + uploadId + " is missing chunks");
+            }
+            return digest.digest();
+        }
+    }
+}
@@ -2,24 +2,42 @@ package com.koishman.telegram.translation.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.koishman.telegram.translation.model.EncodingProgress;
 import com.koishman.telegram.translation.model.MediaTrackInfo;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class FFmpegService {
 
+    private static final Pattern SILENCE_START = Pattern.compile("silence_start: (-?[\\d.]+)");
+    private static final Pattern SILENCE_END = Pattern.compile("silence_end: (-?[\\d.]+)");
+    private static final Pattern PROGRESS_LINE = Pattern.compile("^(fps|speed|out_time_us|progress)=(.*)$");
+
     private final ObjectMapper objectMapper;
 
+    @Value("${translation.ffmpeg.burn-memory-budget-mb:2048}")
+    private long burnMemoryBudgetMb;
+
+    @Value("${translation.ffmpeg.frames-in-flight-per-output:48}")
+    private int framesInFlightPerOutput;
+
     public List<MediaTrackInfo> analyzeMedia(File mediaFile) {
         List<MediaTrackInfo> tracks = new ArrayList<>();
 
@@ -116,7 +134,216 @@ public class FFmpegService {
         }
     }
 
+    /**
+     * Converts a text subtitle stream (subrip, ass, mov_text, webvtt) to SRT.
+     * Only the subtitle stream is demuxed; audio and video are not decoded.
+     *
+     * @param streamIndex absolute stream index, as reported by {@link #analyzeMedia}
+     */
+    public File extractSubtitles(File videoFile, int streamIndex, File outputSubtitleFile) {
+        try {
+            List<String> command = new ArrayList<>();
+            command.add("ffmpeg");
+            command.add("-nostdin");
+            command.add("-i");
+            command.add(videoFile.getAbsolutePath());
+            command.add("-y");
+            command.add("-map");
+            command.add("0:" + streamIndex);
+            command.add("-c:s");
+            command.add("srt");
+            command.add(outputSubtitleFile.getAbsolutePath());
+
+            executeFFmpeg(command);
+            log.info("Subtitles extracted to: {}", outputSubtitleFile.getAbsolutePath());
+
+            return outputSubtitleFile;
+
+        } catch (Exception e) {
+            log.error("Failed to extract subtitles", e);
+            throw new RuntimeException("Subtitle extraction failed", e);
+        }
+    }
+
+    /**
+     * Decodes the audio track to 16 kHz mono s16le PCM on ffmpeg's stdout and
+     * hands the stream to {@code reader}, so no intermediate WAV file is
+     * written. ffmpeg's exit status is checked once the reader returns.
+     */
+    public <T> T streamAudio(File videoFile, Integer audioTrackIndex, AudioStreamReader<T> reader) {
+        return streamAudio(videoFile, audioTrackIndex, null, null, reader);
+    }
+
+    /**
+     * Streams only part of the audio track.
+     *
+     * @param startSeconds where to start, or null for the beginning
+     * @param durationSeconds how much to stream, or null for everything up to the end
+     */
+    public <T> T streamAudio(File videoFile, Integer audioTrackIndex, Double startSeconds, Double durationSeconds,
+                             AudioStreamReader<T> reader) {
+        Process process = null;
+        try {
+            List<String> command = new ArrayList<>();
+            command.add("ffmpeg");
+            command.add("-nostdin");
+            if (startSeconds != null) {
+                // Input seeking, so ffmpeg doesn't decode everything before the range
+                command.add("-ss");
+                command.add(String.format(Locale.ROOT, "%.3f", startSeconds));
+            }
+            command.add("-i");
+            command.add(videoFile.getAbsolutePath());
+            if (durationSeconds != null) {
+                command.add("-t");
+                command.add(String.format(Locale.ROOT, "%.3f", durationSeconds));
+            }
+
+            if (audioTrackIndex != null) {
+                command.add("-map");
+                command.add("0:a:" + audioTrackIndex);
+            }
+
+            command.add("-vn");
+            command.add("-f");
+            command.add("s16le");
+            command.add("-acodec");
+            command.add("pcm_s16le");
+            command.add("-ar");
+            command.add("16000");
+            command.add("-ac");
+            command.add("1");
+            command.add("pipe:1");
+
+            log.debug("Executing FFmpeg: {}", String.join(" ", command));
+            process = new ProcessBuilder(command).start();
+
+            Process ffmpeg = process;
+            Thread stderrDrain = new Thread(() -> drainLog(ffmpeg.getErrorStream()), "ffmpeg-audio-stderr");
+            stderrDrain.setDaemon(true);
+            stderrDrain.start();
+
+            T result;
+            try (InputStream pcm = process.getInputStream()) {
+                result = reader.read(pcm);
+            }
+
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new RuntimeException("FFmpeg command failed with exit code: " + exitCode);
+            }
+            log.info("Audio streamed from: {}", videoFile.getAbsolutePath());
+
+            return result;
+
+        } catch (Exception e) {
+            log.error("Failed to stream audio", e);
+            throw new RuntimeException("Audio extraction failed", e);
+        } finally {
+            if (process != null) {
+                process.destroy();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface AudioStreamReader<T> {
+        T read(InputStream pcm) throws Exception;
+    }
+
+    /**
+     * Finds silent stretches in the audio track with ffmpeg's silencedetect filter.
+     *
+     * @return the midpoint of each silence in seconds, in order
+     */
+    public List<Double> detectSilences(File mediaFile, Integer audioTrackIndex, double noiseDb, double minSilenceSeconds) {
+        try {
+            List<String> command = new ArrayList<>();
+            command.add("ffmpeg");
+            command.add("-nostdin");
+            command.add("-i");
+            command.add(mediaFile.getAbsolutePath());
+
+            if (audioTrackIndex != null) {
+                command.add("-map");
+                command.add("0:a:" + audioTrackIndex);
+            }
+
+            command.add("-vn");
+            command.add("-af");
+            command.add(String.format(Locale.ROOT, "silencedetect=noise=%.1fdB:d=%.2f", noiseDb, minSilenceSeconds));
+            command.add("-f");
+            command.add("null");
+            command.add("-");
+
+            log.debug("Executing FFmpeg: {}", String.join(" ", command));
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.redirectErrorStream(true);
+            Process process = pb.start();
+
+            List<Double> midpoints = new ArrayList<>();
+            Double silenceStart = null;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Matcher start = SILENCE_START.matcher(line);
+                    Matcher end = SILENCE_END.matcher(line);
+                    if (start.find()) {
+                        silenceStart = Double.parseDouble(start.group(1));
+                    } else if (end.find() && silenceStart != null) {
+                        midpoints.add((silenceStart + Double.parseDouble(end.group(1))) / 2);
+                        silenceStart = null;
+                    }
+                }
+            }
+
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new RuntimeException("FFmpeg command failed with exit code: " + exitCode);
+            }
+            log.info("Detected {} silences in {}", midpoints.size(), mediaFile.getName());
+
+            return midpoints;
+
+        } catch (Exception e) {
+            log.error("Failed to detect silences", e);
+            throw new RuntimeException("Silence detection failed", e);
+        }
+    }
+
+    /**
+     * @return the container duration in seconds, or 0 if it can't be probed
+     */
+    public double probeDurationSeconds(File mediaFile) {
+        try {
+            ProcessBuilder pb = new ProcessBuilder(
+                    "ffprobe",
+                    "-v", "quiet",
+                    "-print_format", "json",
+                    "-show_entries", "format=duration",
+                    mediaFile.getAbsolutePath()
+            );
+
+            Process process = pb.start();
+            JsonNode root = objectMapper.readTree(process.getInputStream());
+            process.waitFor();
+
+            return root.path("format").path("duration").asDouble(0);
+
+        } catch (Exception e) {
+            log.warn("Failed to probe duration of {}", mediaFile, e);
+            return 0;
+        }
+    }
+
     public File burnSubtitles(File videoFile, File subtitleFile, File outputFile) {
+        return burnSubtitles(videoFile, subtitleFile, outputFile, null);
+    }
+
+    /**
+     * @param onProgress receives ffmpeg's progress reports while encoding, or null
+     */
+    public File burnSubtitles(File videoFile, File subtitleFile, File outputFile, Consumer<EncodingProgress> onProgress) {
         try {
             List<String> command = new ArrayList<>();
             command.add("ffmpeg");
@@ -124,12 +351,12 @@ public class FFmpegService {
             command.add(videoFile.getAbsolutePath());
             command.add("-y");
             command.add("-vf");
-            command.add("subtitles=" + subtitleFile.getAbsolutePath().replace("\\", "/").replace(":", "\\:"));
+            command.add(subtitlesFilter(subtitleFile));
             command.add("-c:a");
             command.add("copy");
             command.add(outputFile.getAbsolutePath());
 
-            executeFFmpeg(command);
+            executeFFmpeg(command, onProgress, onProgress != null ? probeDurationSeconds(videoFile) : 0);
             log.info("Subtitles burned to: {}", outputFile.getAbsolutePath());
 
             return outputFile;
@@ -140,7 +367,149 @@ public class FFmpegService {
         }
     }
 
+    /**
+     * Burns several subtitle files into the same video, decoding the input only
+     * once: a filter_complex split feeds one subtitles filter and one encoder per
+     * output. Outputs are grouped so that the estimated frame buffers of each
+     * ffmpeg run stay within {@code translation.ffmpeg.burn-memory-budget-mb};
+     * a group of one falls back to {@link #burnSubtitles}.
+     */
+    public List<File> burnSubtitlesMulti(File videoFile, List<File> subtitleFiles, List<File> outputFiles) {
+        return burnSubtitlesMulti(videoFile, subtitleFiles, outputFiles, null);
+    }
+
+    /**
+     * @param onProgress receives progress across all ffmpeg runs while encoding, or null
+     */
+    public List<File> burnSubtitlesMulti(File videoFile, List<File> subtitleFiles, List<File> outputFiles,
+                                         Consumer<EncodingProgress> onProgress) {
+        if (subtitleFiles.size() != outputFiles.size()) {
+            throw new IllegalArgumentException("Each subtitle file needs exactly one output file");
+        }
+
+        int maxOutputsPerRun = maxOutputsPerDecode(videoFile);
+        log.info("Burning {} subtitle tracks, up to {} outputs per decode", subtitleFiles.size(), maxOutputsPerRun);
+
+        int runs = (subtitleFiles.size() + maxOutputsPerRun - 1) / maxOutputsPerRun;
+        double duration = onProgress != null ? probeDurationSeconds(videoFile) : 0;
+
+        for (int start = 0; start < subtitleFiles.size(); start += maxOutputsPerRun) {
+            int end = Math.min(start + maxOutputsPerRun, subtitleFiles.size());
+            // Each run re-reads the whole input, so report progress over all runs' input time
+            double offset = duration * (start / maxOutputsPerRun);
+            Consumer<EncodingProgress> runProgress = onProgress == null ? null
+                    : progress -> onProgress.accept(new EncodingProgress(progress.getFps(), progress.getSpeed(),
+                            offset + progress.getOutTimeSeconds(), duration * runs));
+            if (end - start == 1) {
+                burnSubtitles(videoFile, subtitleFiles.get(start), outputFiles.get(start), runProgress);
+            } else {
+                burnSubtitlesSingleDecode(videoFile, subtitleFiles.subList(start, end), outputFiles.subList(start, end),
+                        runProgress, duration);
+            }
+        }
+
+        return outputFiles;
+    }
+
+    private void burnSubtitlesSingleDecode(File videoFile, List<File> subtitleFiles, List<File> outputFiles,
+                                           Consumer<EncodingProgress> onProgress, double durationSeconds) {
+        try {
+            int outputs = subtitleFiles.size();
+
+            // [0:v]split=N[v0][v1]...;[v0]subtitles=a.srt[o0];[v1]subtitles=b.srt[o1];...
+            StringBuilder filter = new StringBuilder("[0:v]split=").append(outputs);
+            for (int i = 0; i < outputs; i++) {
+                filter.append("[v").append(i).append("]");
+            }
+            for (int i = 0; i < outputs; i++) {
+                filter.append(";[v").append(i).append("]")
+                      .append(subtitlesFilter(subtitleFiles.get(i)))
+                      .append("[o").append(i).append("]");
+            }
+
+            List<String> command = new ArrayList<>();
+            command.add("ffmpeg");
+            command.add("-i");
+            command.add(videoFile.getAbsolutePath());
+            command.add("-y");
+            command.add("-filter_complex");
+            command.add(filter.toString());
+
+            for (int i = 0; i < outputs; i++) {
+                command.add("-map");
+                command.add("[o" + i + "]");
+                command.add("-map");
+                command.add("0:a:0?");
+                command.add("-c:a");
+                command.add("copy");
+                command.add(outputFiles.get(i).getAbsolutePath());
+            }
+
+            executeFFmpeg(command, onProgress, durationSeconds);
+            log.info("Subtitles burned in a single decode to: {}", outputFiles);
+
+        } catch (Exception e) {
+            log.error("Failed to burn subtitles", e);
+            throw new RuntimeException("Subtitle burning failed", e);
+        }
+    }
+
+    /**
+     * Estimates how many encoders can share one decode within the memory budget.
+     * Each output holds roughly {@code frames-in-flight-per-output} raw YUV 4:2:0
+     * frames in its filter and encoder lookahead queues.
+     */
+    private int maxOutputsPerDecode(File videoFile) {
+        int[] size = probeVideoSize(videoFile);
+        if (size == null) {
+            return 1;
+        }
+
+        long bytesPerFrame = (long) size[0] * size[1] * 3 / 2;
+        long bytesPerOutput = bytesPerFrame * framesInFlightPerOutput;
+        long budgetBytes = burnMemoryBudgetMb * 1024 * 1024;
+
+        return (int) Math.max(1, budgetBytes / Math.max(1, bytesPerOutput));
+    }
+
+    private int[] probeVideoSize(File videoFile) {
+        try {
+            ProcessBuilder pb = new ProcessBuilder(
+                    "ffprobe",
+                    "-v", "quiet",
+                    "-print_format", "json",
+                    "-select_streams", "v:0",
+                    "-show_entries", "stream=width,height",
+                    videoFile.getAbsolutePath()
+            );
+
+            Process process = pb.start();
+            JsonNode root = objectMapper.readTree(process.getInputStream());
+            process.waitFor();
+
+            JsonNode streams = root.path("streams");
+            if (streams.size() == 0) {
+                return null;
+            }
+            int width = streams.get(0).path("width").asInt(0);
+            int height = streams.get(0).path("height").asInt(0);
+            return width > 0 && height > 0 ? new int[]{width, height} : null;
+
+        } catch (Exception e) {
+            log.warn("Failed to probe video size of {}, burning outputs one at a time", videoFile, e);
+            return null;
+        }
+    }
+
     public File muxSoftSubtitles(File videoFile, List<File> subtitleFiles, List<String> languages, File outputFile) {
+        return muxSoftSubtitles(videoFile, subtitleFiles, languages, outputFile, null);
+    }
+
+    /**
+     * @param onProgress receives ffmpeg's progress reports while muxing, or null
+     */
+    public File muxSoftSubtitles(File videoFile, List<File> subtitleFiles, List<String> languages, File outputFile,
+                                 Consumer<EncodingProgress> onProgress) {
         try {
             List<String> command = new ArrayList<>();
             command.add("ffmpeg");
@@ -176,7 +545,7 @@ public class FFmpegService {
             command.add("srt");
             command.add(outputFile.getAbsolutePath());
 
-            executeFFmpeg(command);
+            executeFFmpeg(command, onProgress, onProgress != null ? probeDurationSeconds(videoFile) : 0);
             log.info("Soft subtitles muxed to: {}", outputFile.getAbsolutePath());
 
             return outputFile;
@@ -187,7 +556,36 @@ public class FFmpegService {
         }
     }
 
+    private String subtitlesFilter(File subtitleFile) {
+        return "subtitles=" + subtitleFile.getAbsolutePath().replace("\\", "/").replace(":", "\\:");
+    }
+
+    private void drainLog(InputStream stream) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                log.debug("FFmpeg: {}", line);
+            }
+        } catch (Exception e) {
+            log.debug("FFmpeg output closed", e);
+        }
+    }
+
     private void executeFFmpeg(List<String> command) throws Exception {
+        executeFFmpeg(command, null, 0);
+    }
+
+    /**
+     * Runs ffmpeg, logging its output. With a progress listener, ffmpeg also
+     * writes {@code key=value} progress blocks to stdout (merged with its log),
+     * and each block ending in {@code progress=...} is reported.
+     */
+    private void executeFFmpeg(List<String> command, Consumer<EncodingProgress> onProgress,
+                               double durationSeconds) throws Exception {
+        if (onProgress != null) {
+            command = new ArrayList<>(command);
+            command.addAll(1, Arrays.asList("-progress", "pipe:1", "-nostats"));
+        }
         log.debug("Executing FFmpeg: {}", String.join(" ", command));
 
         ProcessBuilder pb = new ProcessBuilder(command);
@@ -197,9 +595,38 @@ public class FFmpegService {
 
         // Log output
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            double fps = 0;
+            double speed = 0;
+            double outTimeSeconds = 0;
             String line;
             while ((line = reader.readLine()) != null) {
-                log.debug("FFmpeg: {}", line);
+                Matcher progress = onProgress != null ? PROGRESS_LINE.matcher(line) : null;
+                if (progress == null || !progress.matches()) {
+                    log.debug("FFmpeg: {}", line);
+                    continue;
+                }
+
+                String value = progress.group(2).trim();
+                switch (progress.group(1)) {
+                    case "fps":
+                        fps = parseProgressNumber(value, fps);
+                        break;
+                    case "speed":
+                        speed = parseProgressNumber(value.replace("x", ""), speed);
+                        break;
+                    case "out_time_us":
+                        outTimeSeconds = parseProgressNumber(value, outTimeSeconds * 1_000_000) / 1_000_000;
+                        break;
+                    case "progress":
+                        try {
+                            onProgress.accept(new EncodingProgress(fps, speed, outTimeSeconds, durationSeconds));
+                        } catch (RuntimeException e) {
+                            log.warn("FFmpeg progress listener failed", e);
+                        }
+                        break;
+                    default:
+                        break;
+                }
             }
         }
 
@@ -208,4 +635,13 @@ public class FFmpegService {
             throw new RuntimeException("FFmpeg command failed with exit code: " + exitCode);
         }
     }
+
+    private double parseProgressNumber(String value, double fallback) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            // "N/A" until ffmpeg has enough data
+            return fallback;
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package com.koishman.telegram.translation.service;
 
+import com.koishman.telegram.translation.model.StoredUpload;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
 import org.springframework.beans.factory.annotation.Value;
@@ -9,10 +10,17 @@ import org.springframework.web.multipart.MultipartFile;
 import javax.annotation.PostConstruct;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
@@ -24,6 +32,9 @@ public class FileStorageService {
     @Value("${translation.storage.output-dir:./outputs}")
     private String outputDir;
 
+    // Output name -> file, so downloads by name don't scan every job directory
+    private final Map<String, Path> outputIndex = new ConcurrentHashMap<>();
+
     @PostConstruct
     public void init() {
         try {
@@ -41,17 +52,143 @@ public class FileStorageService {
         String safeFilename = UUID.randomUUID() + "_" + originalFilename;
         Path targetPath = Paths.get(uploadDir, safeFilename);
 
-        file.transferTo(targetPath);
+        // An absolute File lets the servlet container move its temp file instead of copying it
+        file.transferTo(targetPath.toAbsolutePath().toFile());
         log.info("File uploaded: {}", targetPath);
 
         return targetPath.toFile();
     }
 
+    /**
+     * Stores the upload like {@link #storeUploadedFile} and hashes the stored
+     * file. {@code transferTo} moves the multipart temp file where it can, so
+     * the content is read only once, by the hash.
+     */
+    public StoredUpload storeUploadedFileHashed(MultipartFile file) throws IOException {
+        File stored = storeUploadedFile(file);
+        String contentHash = hashFile(stored);
+        log.info("File hashed: {} (sha256: {})", stored, contentHash);
+
+        return new StoredUpload(stored, contentHash);
+    }
+
+    /**
+     * @return a new, not yet existing path in the upload directory for {@code originalFilename}
+     */
+    public File createUploadFile(String originalFilename) {
+        return Paths.get(uploadDir, UUID.randomUUID() + "_" + new File(originalFilename).getName()).toFile();
+    }
+
+    /**
+     * Takes a file that is already on this machine as an upload, as a hard
+     * link where possible so the content isn't copied.
+     */
+    public StoredUpload storeLocalFile(File file) throws IOException {
+        Path targetPath = Paths.get(uploadDir, UUID.randomUUID() + "_" + file.getName());
+
+        try {
+            Files.createLink(targetPath, file.toPath());
+        } catch (UnsupportedOperationException | IOException e) {
+            log.debug("Hard link not possible for {}, copying instead", file, e);
+            Files.copy(file.toPath(), targetPath);
+        }
+
+        String contentHash = hashFile(targetPath.toFile());
+        log.info("File stored: {} (sha256: {})", targetPath, contentHash);
+
+        return new StoredUpload(targetPath.toFile(), contentHash);
+    }
+
+    /**
+     * @return the SHA-256 of a file's content, as computed for uploads
+     */
+    public String hashFile(File file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file.toPath()), digest)) {
+            byte[] buffer = new byte[64 * 1024];
+            while (in.read(buffer) != -1) {
+                // Reading is enough; the digest sees every byte
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Makes an output of one job available as an output of another job.
+     * A hard link shares the data; a copy is made where links aren't supported.
+     */
+    public File linkOutputFile(String sourceJobId, String sourceFilename, String targetJobId, String targetFilename)
+            throws IOException {
+        Path source = Paths.get(outputDir, sourceJobId, sourceFilename);
+        Path target = createOutputDirectory(targetJobId).toPath().resolve(targetFilename);
+
+        try {
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException | IOException e) {
+            if (!Files.exists(source)) {
+                throw e;
+            }
+            log.debug("Hard link not possible for {}, copying instead", source, e);
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        return target.toFile();
+    }
+
     public File getOutputFile(String jobId, String filename) {
         Path outputPath = Paths.get(outputDir, jobId, filename);
         return outputPath.toFile();
     }
 
+    /**
+     * Records a job output in the output index. A later output with the same
+     * name takes over the name.
+     */
+    public void registerOutput(String jobId, String filename) {
+        outputIndex.put(filename, Paths.get(outputDir, jobId, filename));
+    }
+
+    /**
+     * Looks up an output by name in the output index. Outputs not in the
+     * index, e.g. from before a restart, are searched for in every job's
+     * output directory and then indexed.
+     *
+     * @return the file, or null
+     */
+    public File findOutputFile(String filename) {
+        Path indexed = outputIndex.get(filename);
+        if (indexed != null) {
+            if (Files.exists(indexed)) {
+                return indexed.toFile();
+            }
+            outputIndex.remove(filename, indexed);
+        }
+
+        File found = scanOutputs(filename);
+        if (found != null) {
+            outputIndex.put(filename, found.toPath());
+        }
+        return found;
+    }
+
+    private File scanOutputs(String filename) {
+        File outputRoot = new File(outputDir);
+        if (!outputRoot.exists() || !outputRoot.isDirectory()) {
+            return null;
+        }
+
+        for (File jobDir : outputRoot.listFiles()) {
+            if (jobDir.isDirectory()) {
+                File targetFile = new File(jobDir, filename);
+                if (targetFile.exists()) {
+                    return targetFile;
+                }
+            }
+        }
+
+        return null;
+    }
+
     public File createOutputDirectory(String jobId) throws IOException {
         Path jobOutputDir = Paths.get(outputDir, jobId);
         Files.createDirectories(jobOutputDir);
@@ -65,6 +202,7 @@ public class FileStorageService {
     public void deleteJobFiles(String jobId) {
         try {
             Path jobOutputDir = Paths.get(outputDir, jobId);
+            outputIndex.values().removeIf(path -> path.startsWith(jobOutputDir));
             if (Files.exists(jobOutputDir)) {
                 FileUtils.deleteDirectory(jobOutputDir.toFile());
                 log.info("Deleted job files for: {}", jobId);
@@ -74,6 +212,22 @@ public class FileStorageService {
         }
     }
 
+    private MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
     public String getOutputDir() {
         return outputDir;
     }
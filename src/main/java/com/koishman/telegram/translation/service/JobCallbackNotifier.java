@@ -0,0 +1,118 @@
+package com.koishman.telegram.translation.service;
+
+import com.koishman.telegram.config.HttpClientFactory;
+import com.koishman.telegram.translation.model.JobEvent;
+import com.koishman.telegram.translation.model.TranslationJob;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PostConstruct;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+
+/**
+ * Delivers the completion or failure of a job to the callback URL a remote
+ * client registered when it submitted the job, so it learns about it
+ * without polling. Only URLs under {@code translation.callbacks.allowed-urls}
+ * are accepted. Delivery is best effort: a client that misses an event can
+ * still ask {@code /status/{jobId}}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class JobCallbackNotifier {
+
+    public static final String SECRET_HEADER = "X-Callback-Secret";
+
+    private final JobTrackingService jobTrackingService;
+    private final HttpClientFactory httpClients;
+
+    @Value("${translation.callbacks.allowed-urls:}")
+    private List<String> allowedUrls;
+
+    private RestTemplate restTemplate;
+
+    @PostConstruct
+    public void init() {
+        restTemplate = httpClients.restTemplate("job-callbacks");
+    }
+
+    /**
+     * @return whether {@code url} has the scheme, host and port of an allowed
+     * URL and lies under its path
+     */
+    public boolean isAllowed(String url) {
+        URI target;
+        try {
+            target = new URI(url).normalize();
+        } catch (URISyntaxException e) {
+            return false;
+        }
+        if (target.getHost() == null || target.getUserInfo() != null
+                || !("http".equalsIgnoreCase(target.getScheme()) || "https".equalsIgnoreCase(target.getScheme()))) {
+            return false;
+        }
+
+        for (String allowedUrl : allowedUrls) {
+            try {
+                URI allowed = new URI(allowedUrl.trim()).normalize();
+                String allowedPath = allowed.getPath() != null ? allowed.getPath() : "";
+                String targetPath = target.getPath() != null ? target.getPath() : "";
+                if (allowed.getScheme() != null && allowed.getScheme().equalsIgnoreCase(target.getScheme())
+                        && target.getHost().equalsIgnoreCase(allowed.getHost())
+                        && portOf(target) == portOf(allowed)
+                        && (targetPath.equals(allowedPath) || allowedPath.isEmpty()
+                        || targetPath.startsWith(allowedPath.endsWith("/") ? allowedPath : allowedPath + "/"))) {
+                    return true;
+                }
+            } catch (URISyntaxException e) {
+                log.warn("Ignoring malformed translation.callbacks.allowed-urls entry {}", allowedUrl);
+            }
+        }
+        return false;
+    }
+
+    private static int portOf(URI uri) {
+        if (uri.getPort() != -1) {
+            return uri.getPort();
+        }
+        return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+    }
+
+    @Async("jobEventExecutor")
+    @EventListener(condition = "#event.terminal")
+    public void onJobEvent(JobEvent event) {
+        TranslationJob job = jobTrackingService.getJob(event.getJobId());
+        if (job == null || job.getCallbackUrl() == null || job.getCallbackUrl().isEmpty()) {
+            return;
+        }
+        if (!isAllowed(job.getCallbackUrl())) {
+            log.warn("Not delivering {} event of job {}: callback URL {} is not allowed",
+                    event.getType(), job.getJobId(), job.getCallbackUrl());
+            return;
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (job.getCallbackSecret() != null) {
+            headers.set(SECRET_HEADER, job.getCallbackSecret());
+        }
+
+        try {
+            restTemplate.postForEntity(job.getCallbackUrl(), new HttpEntity<>(event, headers), Void.class);
+            log.debug("Delivered {} event of job {} to {}", event.getType(), job.getJobId(), job.getCallbackUrl());
+        } catch (Exception e) {
+            log.warn("Failed to deliver {} event of job {} to {}: {}",
+                    event.getType(), job.getJobId(), job.getCallbackUrl(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,393 @@
+package com.koishman.telegram.translation.service;
+
+import com.koishman.telegram.translation.model.EncodingProgress;
+import com.koishman.telegram.translation.model.JobEvent;
+import com.koishman.telegram.translation.model.TranslationJob;
+import com.koishman.telegram.translation.pipeline.JobGraph;
+import com.koishman.telegram.translation.pipeline.PipelineStage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams structured job progress to HTTP clients as Server-Sent Events.
+ * Emitters use servlet async support, so an open stream holds no request
+ * thread. Each stream has its own bounded queue of events, drained in order
+ * by a small pool of sender threads, which keeps slow clients off the
+ * pipeline threads and away from each other. A queue keeps only the latest
+ * unsent progress event. A stream that falls
+ * {@code translation.events.max-queued-events} behind, or whose write takes
+ * longer than {@code translation.events.send-timeout-ms}, is dropped.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class JobProgressStreamService {
+
+    private final JobTrackingService jobTrackingService;
+
+    @Value("${translation.events.stream-timeout-minutes:120}")
+    private long streamTimeoutMinutes;
+
+    @Value("${translation.events.sender-threads:4}")
+    private int senderThreads;
+
+    @Value("${translation.events.max-queued-events:100}")
+    private int maxQueuedEvents;
+
+    @Value("${translation.events.send-timeout-ms:10000}")
+    private long sendTimeoutMs;
+
+    private final Map<String, List<Subscriber>> subscribersByJobId = new ConcurrentHashMap<>();
+    // Latest progress event per running job, replayed to new subscribers
+    private final Map<String, Map<String, Object>> lastProgress = new ConcurrentHashMap<>();
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private ExecutorService sender;
+
+    /**
+     * An event waiting to be written. A null name is a keep-alive comment.
+     */
+    private static class Outgoing {
+        final String name;
+        final boolean progress;
+        final boolean last; // Completes the stream once written
+        Object data;
+
+        Outgoing(String name, Object data, boolean progress, boolean last) {
+            this.name = name;
+            this.data = data;
+            this.progress = progress;
+            this.last = last;
+        }
+    }
+
+    /**
+     * One open stream and the events not yet written to it.
+     */
+    private static class Subscriber {
+        final String jobId;
+        final SseEmitter emitter;
+        // Guarded by this
+        final Deque<Outgoing> queue = new ArrayDeque<>();
+        Outgoing pendingProgress; // The queued progress event, updated in place by newer ones
+        boolean draining;
+        boolean closed;
+        Thread sendingThread; // Set while an event is being written
+        long sendingSinceNanos;
+
+        Subscriber(String jobId, SseEmitter emitter) {
+            this.jobId = jobId;
+            this.emitter = emitter;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        sender = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "sse-sender-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+    }
+
+    /**
+     * Opens a stream of the job's events. It starts with a {@code status}
+     * event and the latest {@code progress} event, and ends after
+     * {@code completed} or {@code failed}.
+     *
+     * @throws NoSuchElementException if the job doesn't exist
+     */
+    public SseEmitter subscribe(String jobId) {
+        TranslationJob job = jobTrackingService.getJob(jobId);
+        if (job == null) {
+            throw new NoSuchElementException("Job not found: " + jobId);
+        }
+
+        SseEmitter emitter = new SseEmitter(streamTimeoutMinutes * 60 * 1000);
+        Subscriber subscriber = new Subscriber(jobId, emitter);
+        subscribersByJobId.compute(jobId, (id, subscribers) -> {
+            List<Subscriber> list = subscribers != null ? subscribers : new CopyOnWriteArrayList<>();
+            list.add(subscriber);
+            return list;
+        });
+        emitter.onCompletion(() -> close(subscriber));
+        emitter.onTimeout(() -> close(subscriber));
+        emitter.onError(error -> close(subscriber));
+
+        // Registered first, so nothing published from here on is missed; a terminal event may arrive twice
+        enqueue(subscriber, new Outgoing("status", statusOf(job), false, false));
+        Map<String, Object> progress = lastProgress.get(jobId);
+        if (progress != null) {
+            enqueue(subscriber, new Outgoing("progress", progress, true, false));
+        }
+        if (job.getStatus() == TranslationJob.JobStatus.COMPLETED
+                || job.getStatus() == TranslationJob.JobStatus.FAILED) {
+            enqueue(subscriber, new Outgoing(job.getStatus() == TranslationJob.JobStatus.COMPLETED ? "completed" : "failed",
+                    statusOf(job), false, true));
+        }
+
+        return emitter;
+    }
+
+    /**
+     * Publishes a stage's state and progress, called by the pipeline whenever
+     * a stage starts, reports progress or ends.
+     */
+    public void stageProgress(TranslationJob job, JobGraph graph, PipelineStage stage) {
+        Map<String, Object> event = new HashMap<>();
+        event.put("job_id", job.getJobId());
+        event.put("stage", stage.getName());
+        event.put("label", stage.getLabel());
+        event.put("state", stage.getState().name());
+        event.put("stage_progress", stage.getProgress());
+        event.put("overall_progress", graph.getOverallProgress());
+
+        // Per-language stages are named "<step>:<lang>"
+        List<String> languages = job.getRequest() != null && job.getRequest().getTargetLanguages() != null
+                ? job.getRequest().getTargetLanguages() : Collections.emptyList();
+        int separator = stage.getName().indexOf(':');
+        if (separator >= 0) {
+            String language = stage.getName().substring(separator + 1);
+            event.put("language", language);
+            if (languages.contains(language)) {
+                event.put("language_index", languages.indexOf(language) + 1);
+                event.put("language_count", languages.size());
+            }
+        }
+
+        EncodingProgress encoding = stage.getEncodingProgress();
+        if (encoding != null && stage.getState() == PipelineStage.State.RUNNING) {
+            event.put("fps", encoding.getFps());
+            event.put("speed", encoding.getSpeed());
+            if (encoding.getEtaSeconds() != null) {
+                event.put("eta_seconds", encoding.getEtaSeconds());
+            }
+        }
+
+        // Stages skipped after a failure report in after the job has ended
+        if (job.getStatus() != TranslationJob.JobStatus.COMPLETED && job.getStatus() != TranslationJob.JobStatus.FAILED) {
+            lastProgress.put(job.getJobId(), event);
+        }
+        broadcast(job.getJobId(), "progress", event, true);
+    }
+
+    @EventListener
+    public void onJobEvent(JobEvent event) {
+        switch (event.getType()) {
+            case OUTPUT_ADDED: {
+                Map<String, Object> data = new HashMap<>();
+                data.put("job_id", event.getJobId());
+                data.put("key", event.getOutputKey());
+                data.put("filename", event.getFilename());
+                broadcast(event.getJobId(), "output", data, false);
+                break;
+            }
+            case COMPLETED:
+            case FAILED: {
+                lastProgress.remove(event.getJobId());
+                TranslationJob job = jobTrackingService.getJob(event.getJobId());
+                if (job == null) {
+                    break;
+                }
+                List<Subscriber> subscribers = subscribersOf(event.getJobId());
+                if (subscribers.isEmpty()) {
+                    break;
+                }
+                String name = event.getType() == JobEvent.Type.COMPLETED ? "completed" : "failed";
+                sender.execute(() -> {
+                    // Built here, not on the publishing pipeline thread, since it hashes the outputs
+                    Map<String, Object> data = statusOf(job);
+                    for (Subscriber subscriber : subscribers) {
+                        enqueue(subscriber, new Outgoing(name, data, false, true));
+                    }
+                });
+                break;
+            }
+            default:
+                // Stage changes arrive with more detail through stageProgress
+                break;
+        }
+    }
+
+    /**
+     * Comments keep idle streams open through proxies and reveal clients
+     * that went away. A client that stopped reading fills its queue with
+     * them and is dropped.
+     */
+    @Scheduled(fixedDelayString = "${translation.events.heartbeat-ms:15000}")
+    public void heartbeat() {
+        subscribersByJobId.values().forEach(subscribers -> subscribers.forEach(subscriber ->
+                enqueue(subscriber, new Outgoing(null, null, false, false))));
+    }
+
+    /**
+     * Drops streams whose current write has taken longer than
+     * {@code translation.events.send-timeout-ms}, and interrupts the write
+     * so the sender thread can serve other streams.
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void expireStalledSends() {
+        long now = System.nanoTime();
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        subscribersByJobId.values().forEach(subscribers -> subscribers.forEach(subscriber -> {
+            boolean stalled;
+            synchronized (subscriber) {
+                stalled = subscriber.sendingThread != null && now - subscriber.sendingSinceNanos > timeoutNanos;
+                if (stalled) {
+                    // Under the lock, so the interrupt can't reach the thread after it moved on
+                    subscriber.sendingThread.interrupt();
+                }
+            }
+            if (stalled) {
+                log.info("Dropping event stream of job {}: a write took longer than {}ms", subscriber.jobId, sendTimeoutMs);
+                close(subscriber);
+                completeQuietly(subscriber);
+            }
+        }));
+    }
+
+    private Map<String, Object> statusOf(TranslationJob job) {
+        Map<String, Object> status = jobTrackingService.describe(job);
+        status.put("job_id", job.getJobId());
+        return status;
+    }
+
+    private void broadcast(String jobId, String name, Map<String, Object> data, boolean progress) {
+        for (Subscriber subscriber : subscribersOf(jobId)) {
+            enqueue(subscriber, new Outgoing(name, data, progress, false));
+        }
+    }
+
+    /**
+     * Queues an event for a stream and makes sure a sender thread drains it.
+     * A progress event replaces one still queued.
+     */
+    private void enqueue(Subscriber subscriber, Outgoing event) {
+        boolean startDrain = false;
+        boolean overflow = false;
+        synchronized (subscriber) {
+            if (subscriber.closed) {
+                return;
+            }
+            if (event.progress && subscriber.pendingProgress != null) {
+                subscriber.pendingProgress.data = event.data;
+                return;
+            }
+            if (subscriber.queue.size() >= maxQueuedEvents) {
+                overflow = true;
+            } else {
+                subscriber.queue.add(event);
+                if (event.progress) {
+                    subscriber.pendingProgress = event;
+                }
+                if (!subscriber.draining) {
+                    subscriber.draining = true;
+                    startDrain = true;
+                }
+            }
+        }
+
+        if (overflow) {
+            log.info("Dropping event stream of job {}: client is {} events behind", subscriber.jobId, maxQueuedEvents);
+            close(subscriber);
+            completeQuietly(subscriber);
+        } else if (startDrain) {
+            sender.execute(() -> drain(subscriber));
+        }
+    }
+
+    /**
+     * Writes a stream's queued events in order until the queue is empty.
+     */
+    private void drain(Subscriber subscriber) {
+        while (true) {
+            Outgoing event;
+            synchronized (subscriber) {
+                event = subscriber.closed ? null : subscriber.queue.poll();
+                if (event == null) {
+                    subscriber.draining = false;
+                    return;
+                }
+                if (event == subscriber.pendingProgress) {
+                    subscriber.pendingProgress = null;
+                }
+                subscriber.sendingThread = Thread.currentThread();
+                subscriber.sendingSinceNanos = System.nanoTime();
+            }
+
+            boolean failed = false;
+            try {
+                if (event.name == null) {
+                    subscriber.emitter.send(SseEmitter.event().comment("keep-alive"));
+                } else {
+                    subscriber.emitter.send(SseEmitter.event().name(event.name).data(event.data, MediaType.APPLICATION_JSON));
+                }
+            } catch (Exception e) {
+                // Client gone, stream already completed, or the write was interrupted as stalled
+                log.debug("Dropping event stream of job {}: {}", subscriber.jobId, e.getMessage());
+                failed = true;
+            } finally {
+                synchronized (subscriber) {
+                    subscriber.sendingThread = null;
+                }
+                // Clears an interrupt aimed at this write, if it came too late to matter
+                Thread.interrupted();
+            }
+
+            if (failed || event.last) {
+                close(subscriber);
+                completeQuietly(subscriber);
+            }
+        }
+    }
+
+    private List<Subscriber> subscribersOf(String jobId) {
+        return subscribersByJobId.getOrDefault(jobId, Collections.emptyList());
+    }
+
+    private void close(Subscriber subscriber) {
+        synchronized (subscriber) {
+            subscriber.closed = true;
+            subscriber.queue.clear();
+            subscriber.pendingProgress = null;
+        }
+        subscribersByJobId.computeIfPresent(subscriber.jobId, (id, subscribers) -> {
+            subscribers.remove(subscriber);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    private static void completeQuietly(Subscriber subscriber) {
+        try {
+            subscriber.emitter.complete();
+        } catch (Exception e) {
+            // Already completed
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.koishman.telegram.translation.service;
+
+import com.koishman.telegram.translation.model.JobEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Wakes long-polling status requests when one of the jobs they watch
+ * changes. Waiters are futures so the caller decides how to wait: the status
+ * endpoint parks them in a {@code DeferredResult} without holding a thread.
+ * Job events are published on the pipeline thread, so waiters are completed
+ * on a notifier thread of their own and whatever they chain runs there.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class JobStatusWatcher {
+
+    private final JobTrackingService jobTrackingService;
+
+    @Value("${translation.status.max-wait-seconds:60}")
+    private long maxWaitSeconds;
+
+    // Job -> futures of the requests watching it
+    private final Map<String, Set<CompletableFuture<Void>>> waitersByJobId = new ConcurrentHashMap<>();
+
+    private ExecutorService notifier;
+
+    @PostConstruct
+    public void init() {
+        notifier = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "status-notifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        notifier.shutdownNow();
+    }
+
+    public long getMaxWaitSeconds() {
+        return maxWaitSeconds;
+    }
+
+    /**
+     * @return a future completed as soon as any of the jobs has a version above
+     * {@code since}, which may be at once. Cancel it to stop watching.
+     */
+    public CompletableFuture<Void> awaitChange(Collection<String> jobIds, long since) {
+        CompletableFuture<Void> change = new CompletableFuture<>();
+        for (String jobId : jobIds) {
+            waitersByJobId.compute(jobId, (id, waiters) -> {
+                Set<CompletableFuture<Void>> set = waiters != null ? waiters : ConcurrentHashMap.newKeySet();
+                set.add(change);
+                return set;
+            });
+        }
+        change.whenComplete((ignored, error) -> {
+            for (String jobId : jobIds) {
+                waitersByJobId.computeIfPresent(jobId, (id, waiters) -> {
+                    waiters.remove(change);
+                    return waiters.isEmpty() ? null : waiters;
+                });
+            }
+        });
+
+        // Checked after registering, so a change in between can't be missed
+        if (jobTrackingService.getVersion(jobIds) > since) {
+            change.complete(null);
+        }
+        return change;
+    }
+
+    @EventListener
+    public void onJobEvent(JobEvent event) {
+        Set<CompletableFuture<Void>> waiters = waitersByJobId.get(event.getJobId());
+        if (waiters == null) {
+            return;
+        }
+        try {
+            notifier.execute(() -> {
+                for (CompletableFuture<Void> waiter : waiters) {
+                    waiter.complete(null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("Shutting down, not waking status requests for job {}", event.getJobId());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.koishman.telegram.translation.service;
+
+import com.koishman.telegram.translation.model.StoredUpload;
+import com.koishman.telegram.translation.model.TranslationJob;
+import com.koishman.telegram.translation.model.TranslationJobRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+
+/**
+ * Turns a stored input file into a running job. Shared by the REST API and
+ * by the bot when it runs in the same application, so both submit jobs the
+ * same way.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class JobSubmissionService {
+
+    private final JobTrackingService jobTrackingService;
+    private final SubtitleProcessingService subtitleProcessingService;
+
+    /**
+     * Builds a job's options from submission parameters as either transport
+     * receives them. A null (or empty) parameter keeps the default of
+     * {@link TranslationJobRequest}.
+     *
+     * @param targetLanguages space-separated language codes
+     */
+    public TranslationJobRequest buildRequest(String targetLanguages, String whisperModel, String whisperModelType,
+                                              String whisperBackend, Boolean alignOutput, String translationModel,
+                                              String subtitleBurnType, Boolean useSubtitlesOnly,
+                                              String originalLanguage, Integer audioTrack, Integer subtitleTrack) {
+        TranslationJobRequest request = new TranslationJobRequest();
+        if (targetLanguages != null && !targetLanguages.trim().isEmpty()) {
+            request.setTargetLanguages(Arrays.asList(targetLanguages.trim().split("\\s+")));
+        }
+        if (whisperModel != null) {
+            request.setWhisperModel(whisperModel);
+        }
+        if (whisperModelType != null) {
+            request.setWhisperModelType(whisperModelType);
+        }
+        if (whisperBackend != null) {
+            request.setWhisperBackend(whisperBackend);
+        }
+        if (alignOutput != null) {
+            request.setAlignOutput(alignOutput);
+        }
+        if (translationModel != null) {
+            request.setTranslationModel(translationModel);
+        }
+        if (subtitleBurnType != null) {
+            request.setSubtitleBurnType(subtitleBurnType);
+        }
+        if (useSubtitlesOnly != null) {
+            request.setUseSubtitlesOnly(useSubtitlesOnly);
+        }
+        if (originalLanguage != null && !originalLanguage.isEmpty()) {
+            request.setOriginalLanguage(originalLanguage);
+        }
+        request.setAudioTrack(audioTrack);
+        request.setSubtitleTrack(subtitleTrack);
+        return request;
+    }
+
+    public TranslationJob submit(StoredUpload upload, String originalFilename, TranslationJobRequest request,
+                                 Long chatId) {
+        return submit(upload, originalFilename, request, chatId, null, null);
+    }
+
+    /**
+     * @param callbackUrl receives the job's terminal {@link com.koishman.telegram.translation.model.JobEvent}
+     *                    as a JSON POST, or null for none; must be allowed by {@link JobCallbackNotifier}
+     */
+    public TranslationJob submit(StoredUpload upload, String originalFilename, TranslationJobRequest request,
+                                 Long chatId, String callbackUrl, String callbackSecret) {
+        TranslationJob job = jobTrackingService.createJob(originalFilename, upload.getFile().getAbsolutePath());
+        job.setChatId(chatId);
+        // Set before processing or deduplication can emit the first event
+        job.setCallbackUrl(callbackUrl);
+        job.setCallbackSecret(callbackSecret);
+        job.setContentHash(upload.getContentHash());
+        job.setRequest(request);
+
+        // Identical media with identical options reuses the outputs of an earlier or running job
+        TranslationJob original = jobTrackingService.deduplicate(job);
+        if (original != null) {
+            log.info("Upload for job {} duplicates job {}, skipping processing", job.getJobId(), original.getJobId());
+            upload.getFile().delete();
+        } else {
+            // Start processing asynchronously
+            subtitleProcessingService.processJob(job.getJobId());
+        }
+
+        return job;
+    }
+}
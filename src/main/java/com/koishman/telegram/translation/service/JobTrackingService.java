@@ -1,25 +1,76 @@
 package com.koishman.telegram.translation.service;
 
+import com.koishman.telegram.translation.model.JobEvent;
 import com.koishman.telegram.translation.model.TranslationJob;
+import com.koishman.telegram.translation.model.TranslationJobRequest;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class JobTrackingService {
 
+    private final FileStorageService fileStorageService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${translation.dedup.enabled:true}")
+    private boolean dedupEnabled;
+
     private final Map<String, TranslationJob> jobs = new ConcurrentHashMap<>();
 
+    // Job versions come from one sequence, so the highest version of a set of jobs identifies the set's state
+    private final AtomicLong versionSequence = new AtomicLong();
+
+    // Deduplication key -> job that produces the outputs for it; guarded by this
+    private final Map<String, String> jobIdsByDedupKey = new HashMap<>();
+    // Job in flight -> identical jobs waiting for its outputs; guarded by this
+    private final Map<String, List<String>> followersByJobId = new HashMap<>();
+
+    // Hashes outputs of completed jobs one job at a time, in completion order
+    private ExecutorService outputHasher;
+
+    @PostConstruct
+    public void init() {
+        outputHasher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "output-hasher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        outputHasher.shutdownNow();
+    }
+
     public TranslationJob createJob(String fileName, String filePath) {
         TranslationJob job = new TranslationJob();
         job.setJobId(UUID.randomUUID().toString());
         job.setFileName(fileName);
         job.setFilePath(filePath);
         job.setStatus(TranslationJob.JobStatus.PENDING);
+        job.setVersion(versionSequence.incrementAndGet());
 
         jobs.put(job.getJobId(), job);
         log.info("Created job: {}", job.getJobId());
@@ -31,6 +82,139 @@ public class JobTrackingService {
         return jobs.get(jobId);
     }
 
+    /**
+     * @return the highest version among the given jobs; unknown jobs are ignored
+     */
+    public long getVersion(Collection<String> jobIds) {
+        long version = 0;
+        for (String jobId : jobIds) {
+            TranslationJob job = jobs.get(jobId);
+            if (job != null) {
+                version = Math.max(version, job.getVersion());
+            }
+        }
+        return version;
+    }
+
+    /**
+     * @return the job's status as reported by {@code /status/{jobId}}
+     */
+    public Map<String, Object> describe(TranslationJob job) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", statusName(job.getStatus()));
+        response.put("outputs", job.getOutputs());
+        response.put("output_hashes", outputHashes(job));
+        response.put("duration_seconds", String.valueOf(job.getDurationSeconds()));
+        if (job.getReusedFromJobId() != null) {
+            response.put("reused_from", job.getReusedFromJobId());
+        }
+
+        if (job.getStatus() == TranslationJob.JobStatus.FAILED) {
+            response.put("error", job.getErrorMessage());
+        }
+
+        return response;
+    }
+
+    /**
+     * Hashes of a finished job's outputs that are ready so far, which let
+     * clients recognize output content they have seen before, e.g. to reuse
+     * an upload. They are computed by {@link #hashOutputs} after the job
+     * completes; outputs of a deduplicated job come with the original's hashes.
+     */
+    private Map<String, String> outputHashes(TranslationJob job) {
+        if (job.getStatus() != TranslationJob.JobStatus.COMPLETED) {
+            return Collections.emptyMap();
+        }
+        return new HashMap<>(job.getOutputHashes());
+    }
+
+    /**
+     * Hashes every output of a completed job that has no hash yet. Jobs are
+     * hashed in completion order, so by the time a deduplicated job's turn
+     * comes, the hashes of the job it reused are there to be copied.
+     */
+    private void hashOutputs(TranslationJob job) {
+        TranslationJob original = job.getReusedFromJobId() != null ? jobs.get(job.getReusedFromJobId()) : null;
+        for (Map.Entry<String, String> output : job.getOutputs().entrySet()) {
+            if (job.getOutputHashes().containsKey(output.getKey())) {
+                continue;
+            }
+            String hash = original != null ? original.getOutputHashes().get(output.getKey()) : null;
+            if (hash == null) {
+                try {
+                    hash = fileStorageService.hashFile(fileStorageService.getOutputFile(job.getJobId(), output.getValue()));
+                } catch (IOException e) {
+                    log.warn("Failed to hash output {} of job {}", output.getValue(), job.getJobId(), e);
+                    continue;
+                }
+            }
+            job.getOutputHashes().put(output.getKey(), hash);
+        }
+    }
+
+    private String statusName(TranslationJob.JobStatus status) {
+        switch (status) {
+            case COMPLETED:
+                return "done";
+            case FAILED:
+                return "failed";
+            default:
+                return "processing";
+        }
+    }
+
+    /**
+     * Looks for a job with the same content hash and effective options. If it
+     * has finished, its outputs are linked into {@code job}, which completes
+     * at once. If it is still running, {@code job} attaches to it and
+     * completes (or fails) together with it. Otherwise {@code job} becomes
+     * the one others deduplicate against.
+     *
+     * @return the job whose outputs {@code job} reuses, or null if {@code job} must be processed
+     */
+    public TranslationJob deduplicate(TranslationJob job) {
+        if (!dedupEnabled || job.getContentHash() == null) {
+            return null;
+        }
+
+        String key = dedupKey(job);
+        TranslationJob original;
+        synchronized (this) {
+            original = jobs.get(jobIdsByDedupKey.getOrDefault(key, ""));
+            if (original == null || original.getStatus() == TranslationJob.JobStatus.FAILED) {
+                jobIdsByDedupKey.put(key, job.getJobId());
+                return null;
+            }
+            if (original.getStatus() != TranslationJob.JobStatus.COMPLETED) {
+                followersByJobId.computeIfAbsent(original.getJobId(), id -> new ArrayList<>()).add(job.getJobId());
+                job.setReusedFromJobId(original.getJobId());
+                updateJobStatus(job.getJobId(), TranslationJob.JobStatus.PROCESSING);
+                log.info("Job {} attached to in-flight job {}", job.getJobId(), original.getJobId());
+                return original;
+            }
+        }
+
+        // Outside the lock: linking falls back to copying, and completing publishes events
+        try {
+            updateJobStatus(job.getJobId(), TranslationJob.JobStatus.PROCESSING);
+            copyOutputs(original, job);
+            updateJobStatus(job.getJobId(), TranslationJob.JobStatus.COMPLETED);
+            log.info("Job {} reused outputs of completed job {}", job.getJobId(), original.getJobId());
+            return original;
+        } catch (IOException e) {
+            // The outputs are gone or unreadable; process this job and let it take over the key
+            log.warn("Could not reuse outputs of job {}, reprocessing", original.getJobId(), e);
+            job.getOutputs().clear();
+            job.getOutputHashes().clear();
+            job.setReusedFromJobId(null);
+            synchronized (this) {
+                jobIdsByDedupKey.replace(key, original.getJobId(), job.getJobId());
+            }
+            return null;
+        }
+    }
+
     public void updateJobStatus(String jobId, TranslationJob.JobStatus status) {
         TranslationJob job = jobs.get(jobId);
         if (job != null) {
@@ -41,6 +225,22 @@ public class JobTrackingService {
                 job.setCompletedAt(java.time.LocalDateTime.now());
             }
             log.info("Job {} status updated to: {}", jobId, status);
+
+            if (status == TranslationJob.JobStatus.COMPLETED) {
+                try {
+                    outputHasher.execute(() -> {
+                        // Skip jobs deleted while waiting their turn
+                        if (jobs.containsKey(jobId)) {
+                            hashOutputs(job);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    log.debug("Shutting down, not hashing outputs of job {}", jobId);
+                }
+                publish(new JobEvent(jobId, JobEvent.Type.COMPLETED, null, null, null, null, null,
+                        System.currentTimeMillis()));
+                completeFollowers(job);
+            }
         }
     }
 
@@ -48,7 +248,10 @@ public class JobTrackingService {
         TranslationJob job = jobs.get(jobId);
         if (job != null) {
             job.getOutputs().put(key, filename);
+            fileStorageService.registerOutput(jobId, filename);
             log.debug("Added output to job {}: {} -> {}", jobId, key, filename);
+            publish(new JobEvent(jobId, JobEvent.Type.OUTPUT_ADDED, null, null, key, filename, null,
+                    System.currentTimeMillis()));
         }
     }
 
@@ -59,11 +262,116 @@ public class JobTrackingService {
             job.setErrorMessage(errorMessage);
             job.setCompletedAt(java.time.LocalDateTime.now());
             log.error("Job {} failed: {}", jobId, errorMessage);
+            publish(new JobEvent(jobId, JobEvent.Type.FAILED, null, null, null, null, errorMessage,
+                    System.currentTimeMillis()));
+
+            for (String followerId : takeFollowers(jobId)) {
+                setJobError(followerId, errorMessage);
+            }
+        }
+    }
+
+    /**
+     * Reports that a pipeline stage of a job moved to another state.
+     */
+    public void stageChanged(String jobId, String stage, String state) {
+        if (jobs.containsKey(jobId)) {
+            publish(new JobEvent(jobId, JobEvent.Type.STAGE_CHANGED, stage, state, null, null, null,
+                    System.currentTimeMillis()));
         }
     }
 
     public void deleteJob(String jobId) {
         jobs.remove(jobId);
+        synchronized (this) {
+            jobIdsByDedupKey.values().remove(jobId);
+        }
         log.info("Deleted job: {}", jobId);
     }
+
+    private void publish(JobEvent event) {
+        TranslationJob job = jobs.get(event.getJobId());
+        if (job != null) {
+            // Before listeners run, so anyone woken by the event sees the new version
+            job.setVersion(versionSequence.incrementAndGet());
+        }
+        try {
+            eventPublisher.publishEvent(event);
+        } catch (RuntimeException e) {
+            // A misbehaving listener must not fail the job
+            log.warn("Job event listener failed for {} {}", event.getJobId(), event.getType(), e);
+        }
+    }
+
+    private void completeFollowers(TranslationJob original) {
+        for (String followerId : takeFollowers(original.getJobId())) {
+            TranslationJob follower = jobs.get(followerId);
+            if (follower == null) {
+                continue;
+            }
+            try {
+                copyOutputs(original, follower);
+                updateJobStatus(followerId, TranslationJob.JobStatus.COMPLETED);
+                log.info("Job {} completed with outputs of job {}", followerId, original.getJobId());
+            } catch (IOException e) {
+                log.error("Failed to reuse outputs of job {} for job {}", original.getJobId(), followerId, e);
+                setJobError(followerId, "Failed to reuse outputs: " + e.getMessage());
+            }
+        }
+    }
+
+    private synchronized List<String> takeFollowers(String jobId) {
+        List<String> followers = followersByJobId.remove(jobId);
+        return followers != null ? followers : Collections.emptyList();
+    }
+
+    /**
+     * Links every output of {@code original} into {@code job}'s output directory,
+     * renamed after {@code job}'s own file name.
+     */
+    private void copyOutputs(TranslationJob original, TranslationJob job) throws IOException {
+        String originalBase = baseName(original.getFileName());
+        String base = baseName(job.getFileName());
+
+        for (Map.Entry<String, String> output : original.getOutputs().entrySet()) {
+            String sourceName = output.getValue();
+            String targetName = sourceName.startsWith(originalBase)
+                    ? base + sourceName.substring(originalBase.length())
+                    : sourceName;
+            fileStorageService.linkOutputFile(original.getJobId(), sourceName, job.getJobId(), targetName);
+            job.getOutputs().put(output.getKey(), targetName);
+            fileStorageService.registerOutput(job.getJobId(), targetName);
+            String hash = original.getOutputHashes().get(output.getKey());
+            if (hash != null) {
+                job.getOutputHashes().put(output.getKey(), hash);
+            }
+        }
+        job.setReusedFromJobId(original.getJobId());
+    }
+
+    private String baseName(String fileName) {
+        return fileName.replaceAll("\\.[^.]+$", "");
+    }
+
+    /**
+     * Content hash plus every request option that changes the outputs.
+     */
+    private String dedupKey(TranslationJob job) {
+        TranslationJobRequest request = job.getRequest();
+        return String.join("|",
+                job.getContentHash(),
+                // Sorted, since the order languages were asked in doesn't change the outputs
+                String.valueOf(request.getTargetLanguages() != null
+                        ? request.getTargetLanguages().stream().sorted().collect(Collectors.toList())
+                        : Collections.emptyList()),
+                request.getWhisperModel(),
+                request.getWhisperBackend(),
+                String.valueOf(request.isAlignOutput()),
+                request.getTranslationModel(),
+                request.getSubtitleBurnType(),
+                String.valueOf(request.getUseSubtitlesOnly()),
+                String.valueOf(request.getOriginalLanguage()),
+                String.valueOf(request.getAudioTrack()),
+                String.valueOf(request.getSubtitleTrack()));
+    }
 }
@@ -0,0 +1,83 @@
+package com.koishman.telegram.translation.service;
+
+import com.koishman.telegram.translation.model.StagedUpload;
+import com.koishman.telegram.translation.model.StoredUpload;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps files stored by {@code /analyze} so that {@code /upload} can claim
+ * them by token instead of receiving the same bytes again. Tokens expire
+ * after {@code translation.staging.ttl-seconds}; unclaimed files are deleted
+ * by a periodic sweep.
+ */
+@Slf4j
+@Service
+public class StagedUploadService {
+
+    @Value("${translation.staging.ttl-seconds:1800}")
+    private long ttlSeconds;
+
+    private final Map<String, StagedUpload> stagedUploads = new ConcurrentHashMap<>();
+
+    /**
+     * @return the staged upload, whose token claims it
+     */
+    public StagedUpload stage(StoredUpload upload, String originalFilename) {
+        StagedUpload staged = new StagedUpload(UUID.randomUUID().toString(), originalFilename, upload,
+                System.currentTimeMillis() + ttlSeconds * 1000);
+        stagedUploads.put(staged.getToken(), staged);
+        log.info("Staged upload {} for {} (expires in {}s)", staged.getToken(), originalFilename, ttlSeconds);
+        return staged;
+    }
+
+    /**
+     * Hands the staged file over to the caller, who becomes responsible for it.
+     * A token can be claimed once.
+     *
+     * @return the staged upload, or null if the token is unknown, claimed or expired
+     */
+    public StagedUpload claim(String token) {
+        StagedUpload staged = stagedUploads.remove(token);
+        if (staged == null) {
+            return null;
+        }
+        if (isExpired(staged, System.currentTimeMillis()) || !staged.getUpload().getFile().exists()) {
+            discard(staged);
+            return null;
+        }
+        log.info("Claimed staged upload {}", token);
+        return staged;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    @Scheduled(fixedDelayString = "${translation.staging.gc-interval-ms:60000}")
+    public void collectExpired() {
+        long now = System.currentTimeMillis();
+        for (StagedUpload staged : stagedUploads.values()) {
+            // Conditional remove, so a file claimed in the meantime is left alone
+            if (isExpired(staged, now) && stagedUploads.remove(staged.getToken(), staged)) {
+                discard(staged);
+            }
+        }
+    }
+
+    private boolean isExpired(StagedUpload staged, long now) {
+        return now >= staged.getExpiresAtMillis();
+    }
+
+    private void discard(StagedUpload staged) {
+        if (staged.getUpload().getFile().delete()) {
+            log.info("Deleted unclaimed staged upload {} ({})", staged.getToken(), staged.getOriginalFilename());
+        }
+    }
+}
@@ -1,30 +1,95 @@
 package com.koishman.telegram.translation.service;
 
+import com.koishman.telegram.translation.model.MediaTrackInfo;
 import com.koishman.telegram.translation.model.SubtitleSegment;
 import com.koishman.telegram.translation.model.TranslationJob;
 import com.koishman.telegram.translation.model.TranslationJobRequest;
+import com.koishman.telegram.translation.pipeline.JobGraph;
+import com.koishman.telegram.translation.pipeline.JobGraphExecutor;
+import com.koishman.telegram.translation.pipeline.PipelineStage;
+import com.koishman.telegram.translation.pipeline.SegmentFeed;
+import com.koishman.telegram.translation.pipeline.StageType;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class SubtitleProcessingService {
 
+    private static final String STAGE_EXTRACT_AUDIO = "extract_audio";
+    private static final String STAGE_TRANSCRIBE = "transcribe";
+    private static final String STAGE_EXTRACT_SUBTITLES = "extract_subtitles";
+
+    // Subtitle codecs ffmpeg can convert to SRT; bitmap formats (PGS, VobSub) would need OCR
+    private static final Set<String> TEXT_SUBTITLE_CODECS = new HashSet<>(Arrays.asList(
+            "subrip", "srt", "ass", "ssa", "mov_text", "webvtt", "text"));
+
+    // ISO 639-2 codes as found in container tags, mapped to the 639-1 codes the translation models use
+    private static final Map<String, String> ISO_639_1_CODES = new HashMap<>();
+    static {
+        for (String code : Locale.getISOLanguages()) {
+            ISO_639_1_CODES.put(new Locale(code).getISO3Language(), code);
+        }
+        // Bibliographic variants, which Locale doesn't know
+        String[][] bibliographic = {
+                {"alb", "sq"}, {"arm", "hy"}, {"baq", "eu"}, {"bur", "my"}, {"chi", "zh"}, {"cze", "cs"},
+                {"dut", "nl"}, {"fre", "fr"}, {"geo", "ka"}, {"ger", "de"}, {"gre", "el"}, {"ice", "is"},
+                {"mac", "mk"}, {"may", "ms"}, {"per", "fa"}, {"rum", "ro"}, {"slo", "sk"}, {"wel", "cy"}};
+        for (String[] pair : bibliographic) {
+            ISO_639_1_CODES.put(pair[0], pair[1]);
+        }
+        // Older JDKs report the pre-1989 codes for these
+        ISO_639_1_CODES.put("heb", "he");
+        ISO_639_1_CODES.put("ind", "id");
+        ISO_639_1_CODES.put("yid", "yi");
+    }
+
     private final WhisperService whisperService;
     private final TranslationService translationService;
     private final FFmpegService ffmpegService;
     private final FileStorageService fileStorageService;
     private final JobTrackingService jobTrackingService;
+    private final JobGraphExecutor jobGraphExecutor;
+    private final ArtifactCacheService artifactCache;
+    private final JobProgressStreamService jobProgressStream;
     private final com.koishman.telegram.service.TelegramApiClient telegramApiClient;
+    private final com.koishman.telegram.service.TelegramProgressPublisher progressPublisher;
+
+    @Value("${translation.ffmpeg.single-decode-burn:true}")
+    private boolean singleDecodeBurn;
+
+    @Value("${translation.whisper.streaming:true}")
+    private boolean streamingTranscription;
+
+    @Value("${translation.whisper.piped-audio:true}")
+    private boolean pipedAudio;
+
+    @Value("${translation.whisper.stream-buffer-segments:64}")
+    private int streamBufferSegments;
+
+    @Value("${translation.batch.size:32}")
+    private int translationBatchSize;
 
     @Async
     public void processJob(String jobId) {
@@ -41,155 +106,393 @@ public class SubtitleProcessingService {
 
             jobTrackingService.updateJobStatus(jobId, TranslationJob.JobStatus.PROCESSING);
 
-            File inputFile = new File(job.getFilePath());
-            File outputDir = fileStorageService.createOutputDirectory(jobId);
-            TranslationJobRequest request = job.getRequest();
+            JobGraph graph = buildJobGraph(job, fileStorageService.createOutputDirectory(jobId));
 
             // Send initial progress message
             if (job.getChatId() != null) {
-                String initialProgress = buildProgressMessage(job, 0, 0, 0, 0);
-                progressMessageId = telegramApiClient.sendProgressMessage(job.getChatId(), initialProgress);
+                progressMessageId = telegramApiClient.sendProgressMessage(job.getChatId(),
+                        buildProgressMessage(job, graph));
             }
 
-            // Step 1: Extract audio
-            log.info("Step 1: Extracting audio");
-            if (job.getChatId() != null && progressMessageId != null) {
-                telegramApiClient.updateProgressMessage(job.getChatId(), progressMessageId,
-                        buildProgressMessage(job, 1, 0, 0, 0));
-            }
-            File audioFile = new File(outputDir, "audio.wav");
-            ffmpegService.extractAudio(inputFile, audioFile, request.getAudioTrack());
+            final Integer messageId = progressMessageId;
+            // The callback also fires on progress ticks; only state transitions become job events
+            Map<String, PipelineStage.State> reportedStates = new ConcurrentHashMap<>();
+            jobGraphExecutor.execute(jobId, graph, stage -> {
+                if (reportedStates.put(stage.getName(), stage.getState()) != stage.getState()) {
+                    jobTrackingService.stageChanged(jobId, stage.getName(), stage.getState().name());
+                }
+                jobProgressStream.stageProgress(job, graph, stage);
+                publishProgress(job, graph, messageId);
+            });
+
+            // Mark job as completed
+            jobTrackingService.updateJobStatus(jobId, TranslationJob.JobStatus.COMPLETED);
+            log.info("Job completed successfully: {}", jobId);
 
-            // Step 2: Transcribe
-            log.info("Step 2: Transcribing audio with {} backend, align={}",
-                    request.getWhisperBackend(), request.isAlignOutput());
+            // Send final completion message
             if (job.getChatId() != null && progressMessageId != null) {
-                telegramApiClient.updateProgressMessage(job.getChatId(), progressMessageId,
-                        buildProgressMessage(job, 2, 0, 0, 0));
-            }
-            List<SubtitleSegment> originalSegments = whisperService.transcribe(
-                    audioFile,
-                    request.getWhisperModel(),
-                    request.getOriginalLanguage(),
-                    request.getWhisperBackend() != null ? request.getWhisperBackend() : "faster-whisper",
-                    request.isAlignOutput()
-            );
-
-            // Save original SRT
-            String baseName = job.getFileName().replaceAll("\\.[^.]+$", "");
-            File originalSrtFile = new File(outputDir, baseName + "_orig.srt");
-            writeSRT(originalSegments, originalSrtFile);
-            jobTrackingService.addJobOutput(jobId, "orig_srt", originalSrtFile.getName());
-
-            // Step 3: Create original video with original subtitles (if requested)
-            if ("hard".equals(request.getSubtitleBurnType()) || "both".equals(request.getSubtitleBurnType())) {
-                log.info("Step 3: Burning original subtitles");
-                if (job.getChatId() != null && progressMessageId != null) {
-                    telegramApiClient.updateProgressMessage(job.getChatId(), progressMessageId,
-                            buildProgressMessage(job, 3, 0, 0, 0));
-                }
-                File origVideoFile = new File(outputDir, baseName + "_orig.mp4");
-                ffmpegService.burnSubtitles(inputFile, originalSrtFile, origVideoFile);
-                jobTrackingService.addJobOutput(jobId, "orig", origVideoFile.getName());
+                progressPublisher.publish(job.getChatId(), progressMessageId, buildCompletionMessage(job, graph));
             }
 
-            // Step 4: Translate to each target language
-            List<File> translatedSrtFiles = new ArrayList<>();
-            List<String> languages = new ArrayList<>();
+        } catch (Exception e) {
+            log.error("Job processing failed: {}", jobId, e);
+            jobTrackingService.setJobError(jobId, e.getMessage());
+        }
+    }
+
+    /**
+     * Expresses the job as a dependency graph:
+     * extract audio → transcribe → {burn original, translate lang_i → burn lang_i, mux soft}.
+     * With single-decode burning, the burn stages collapse into one stage that
+     * waits for every translation and burns all outputs from a single decode.
+     * With streaming transcription, translation starts right after audio
+     * extraction and consumes segments while they are being transcribed.
+     * With piped audio, extraction runs inside the transcription stage and
+     * ffmpeg's PCM output goes straight to the Whisper worker.
+     * Stages whose inputs match an earlier job reuse that job's artifacts from
+     * the artifact cache; a cached transcript drops audio extraction entirely.
+     * With {@code useSubtitlesOnly}, an embedded text subtitle track replaces
+     * audio extraction and transcription.
+     */
+    private JobGraph buildJobGraph(TranslationJob job, File outputDir) throws IOException {
+        String jobId = job.getJobId();
+        File inputFile = new File(job.getFilePath());
+        TranslationJobRequest request = job.getRequest();
+
+        String baseName = job.getFileName().replaceAll("\\.[^.]+$", "");
+        MediaTrackInfo subtitleTrack = Boolean.TRUE.equals(request.getUseSubtitlesOnly())
+                ? resolveSubtitleTrack(inputFile, request.getSubtitleTrack())
+                : null;
+        String sourceLanguage = request.getOriginalLanguage() != null ? request.getOriginalLanguage()
+                : subtitleTrack != null && ISO_639_1_CODES.containsKey(subtitleTrack.getLang())
+                ? ISO_639_1_CODES.get(subtitleTrack.getLang())
+                : "en";
+        String segmentsStage = subtitleTrack != null ? STAGE_EXTRACT_SUBTITLES : STAGE_TRANSCRIBE;
+        String translationModel = request.getTranslationModel() != null ? request.getTranslationModel() : "m2m100";
+        boolean hardBurn = "hard".equals(request.getSubtitleBurnType()) || "both".equals(request.getSubtitleBurnType());
+        boolean softMux = "soft".equals(request.getSubtitleBurnType()) || "both".equals(request.getSubtitleBurnType());
+
+        File audioFile = new File(outputDir, "audio.wav");
+        File originalSrtFile = new File(outputDir, baseName + "_orig.srt");
+        AtomicReference<List<SubtitleSegment>> originalSegments = new AtomicReference<>();
+        Map<String, File> translatedSrtFiles = new ConcurrentHashMap<>();
+        SegmentFeed segmentFeed = streamingTranscription && subtitleTrack == null
+                ? new SegmentFeed(streamBufferSegments)
+                : null;
+        AtomicReference<Double> audioDuration = new AtomicReference<>(0.0);
+
+        boolean piped = pipedAudio && whisperService.supportsAudioStream();
+        List<String> audioDependencies = piped
+                ? Collections.emptyList()
+                : Collections.singletonList(STAGE_EXTRACT_AUDIO);
+        String whisperBackend = request.getWhisperBackend() != null ? request.getWhisperBackend() : "faster-whisper";
+
+        // Audio is a function of the input and track, so transcripts are keyed by those rather
+        // than by an audio hash, which piped mode never has
+        String inputHash = artifactCache.isEnabled() && subtitleTrack == null ? inputHash(job, inputFile) : null;
+        String audioKey = artifactCache.key(inputHash, request.getAudioTrack());
+        String transcriptKey = artifactCache.key(inputHash, request.getAudioTrack(), whisperBackend,
+                request.getWhisperModel(), request.getOriginalLanguage(), request.isAlignOutput());
+        List<SubtitleSegment> cachedTranscript = subtitleTrack == null
+                ? artifactCache.getSegments(ArtifactCacheService.TRANSCRIPT, transcriptKey)
+                : null;
+        AtomicReference<String> transcriptHash = new AtomicReference<>(
+                cachedTranscript != null ? artifactCache.hashSegments(cachedTranscript) : null);
+        if (cachedTranscript != null) {
+            audioDependencies = Collections.emptyList();
+        }
+
+        JobGraph graph = new JobGraph();
+
+        if (subtitleTrack != null) {
+            graph.addStage(STAGE_EXTRACT_SUBTITLES, StageType.EXTRACT_SUBTITLES, "\uD83D\uDCDD Extracting Subtitles", stage -> {
+                ffmpegService.extractSubtitles(inputFile, subtitleTrack.getIndex(), originalSrtFile);
+                List<SubtitleSegment> segments = parseSRT(originalSrtFile);
+                log.info("Using {} segments from subtitle track #{} ({}, {}) for job {}", segments.size(),
+                        subtitleTrack.getIndex(), subtitleTrack.getCodec(), subtitleTrack.getLang(), jobId);
 
-            int totalLanguages = request.getTargetLanguages().size();
-            int currentLangIndex = 0;
+                transcriptHash.set(artifactCache.hashSegments(segments));
+                originalSegments.set(segments);
+
+                // Rewrite so the original SRT has the same cleaned text the translations are made from
+                writeSRT(segments, originalSrtFile);
+                jobTrackingService.addJobOutput(jobId, "orig_srt", originalSrtFile.getName());
+            });
+        }
 
-            for (String targetLang : request.getTargetLanguages()) {
-                currentLangIndex++;
-                log.info("Step 4: Translating to {}", targetLang);
-                if (job.getChatId() != null && progressMessageId != null) {
-                    telegramApiClient.updateProgressMessage(job.getChatId(), progressMessageId,
-                            buildProgressMessage(job, 4, currentLangIndex, totalLanguages, 0));
+        if (subtitleTrack == null && !piped && cachedTranscript == null) {
+            graph.addStage(STAGE_EXTRACT_AUDIO, StageType.EXTRACT_AUDIO, "\uD83C\uDFA7 Extracting Audio", stage -> {
+                if (!artifactCache.restore(ArtifactCacheService.AUDIO, audioKey, audioFile)) {
+                    ffmpegService.extractAudio(inputFile, audioFile, request.getAudioTrack());
+                    artifactCache.put(ArtifactCacheService.AUDIO, audioKey, audioFile);
                 }
+                audioDuration.set(wavDurationSeconds(audioFile));
+            });
+        }
+
+        if (subtitleTrack == null) {
+            graph.addStage(STAGE_TRANSCRIBE, StageType.TRANSCRIBE, "\uD83C\uDF99\uFE0F Transcribing Speech", stage -> {
+                log.info("Transcribing audio with {} backend, align={}, streaming={}, piped={}",
+                        whisperBackend, request.isAlignOutput(), segmentFeed != null, piped);
+                WhisperService.SegmentConsumer onSegment = segment -> {
+                    if (segmentFeed != null) {
+                        segmentFeed.publish(segment);
+                    }
+                    stage.setProgress(audioProgress(segment, audioDuration.get()));
+                };
 
-                List<SubtitleSegment> translatedSegments = new ArrayList<>();
-                int index = 1;
-                int totalSegments = originalSegments.size();
+                List<SubtitleSegment> segments;
+                try {
+                    if (piped && cachedTranscript == null) {
+                        audioDuration.set(ffmpegService.probeDurationSeconds(inputFile));
+                    }
 
-                for (SubtitleSegment segment : originalSegments) {
-                    // Update progress for every 10 segments
-                    if (job.getChatId() != null && progressMessageId != null && index % 10 == 0) {
-                        telegramApiClient.updateProgressMessage(job.getChatId(), progressMessageId,
-                                buildProgressMessage(job, 4, currentLangIndex, totalLanguages,
-                                        (int)((double)index / totalSegments * 100)));
+                    if (cachedTranscript != null) {
+                        log.info("Reusing cached transcript for job {}", jobId);
+                        segments = cachedTranscript;
+                        for (SubtitleSegment segment : segments) {
+                            onSegment.accept(segment);
+                        }
+                    } else if (whisperService.supportsChunking()) {
+                        // Chunks are decoded straight from the source when piping, from the WAV otherwise
+                        segments = whisperService.transcribeChunked(piped ? inputFile : audioFile,
+                                piped ? request.getAudioTrack() : null, audioDuration.get(), request.getWhisperModel(),
+                                request.getOriginalLanguage(), whisperBackend, request.isAlignOutput(), onSegment);
+                    } else if (piped) {
+                        segments = ffmpegService.streamAudio(inputFile, request.getAudioTrack(), pcm ->
+                                whisperService.transcribeStream(pcm, request.getWhisperModel(),
+                                        request.getOriginalLanguage(), whisperBackend, request.isAlignOutput(), onSegment));
+                    } else {
+                        segments = whisperService.transcribe(audioFile, request.getWhisperModel(),
+                                request.getOriginalLanguage(), whisperBackend, request.isAlignOutput(), onSegment);
                     }
+                } catch (RuntimeException e) {
+                    if (segmentFeed != null) {
+                        segmentFeed.fail(e);
+                    }
+                    throw e;
+                }
+                if (cachedTranscript == null) {
+                    artifactCache.putSegments(ArtifactCacheService.TRANSCRIPT, transcriptKey, segments);
+                    transcriptHash.set(artifactCache.hashSegments(segments));
+                }
+                originalSegments.set(segments);
+                if (segmentFeed != null) {
+                    segmentFeed.complete();
+                }
+
+                // Audio is only needed for transcription
+                audioFile.delete();
+
+                writeSRT(segments, originalSrtFile);
+                jobTrackingService.addJobOutput(jobId, "orig_srt", originalSrtFile.getName());
+            }, audioDependencies);
+        }
 
-                    String translatedText = translationService.translate(
-                            segment.getText(),
-                            request.getOriginalLanguage() != null ? request.getOriginalLanguage() : "en",
-                            targetLang,
-                            request.getTranslationModel() != null ? request.getTranslationModel() : "m2m100"
-                    );
-
-                    SubtitleSegment translatedSegment = new SubtitleSegment(
-                            index++,
-                            segment.getStartTime(),
-                            segment.getEndTime(),
-                            translatedText
-                    );
-                    translatedSegments.add(translatedSegment);
+        boolean burnPerOutput = hardBurn && !(singleDecodeBurn && !request.getTargetLanguages().isEmpty());
+
+        if (burnPerOutput) {
+            graph.addStage("burn:orig", StageType.BURN, "\uD83C\uDFA5 Burning Original Subtitles", stage -> {
+                File origVideoFile = new File(outputDir, baseName + "_orig.mp4");
+                ffmpegService.burnSubtitles(inputFile, originalSrtFile, origVideoFile, stage::setEncodingProgress);
+                jobTrackingService.addJobOutput(jobId, "orig", origVideoFile.getName());
+            }, segmentsStage);
+        }
+
+        List<String> translateStages = new ArrayList<>();
+        for (String targetLang : request.getTargetLanguages()) {
+            String langName = getLanguageName(targetLang);
+            String translateStage = "translate:" + targetLang;
+            translateStages.add(translateStage);
+
+            graph.addStage(translateStage, StageType.TRANSLATE, "\uD83C\uDF0D Translating to " + langName, stage -> {
+                // Known up front only when the transcript came from the cache
+                List<SubtitleSegment> translatedSegments = transcriptHash.get() == null ? null
+                        : artifactCache.getSegments(ArtifactCacheService.TRANSLATION, translationKey(
+                                transcriptHash.get(), sourceLanguage, targetLang, translationModel));
+                if (translatedSegments != null) {
+                    log.info("Reusing cached {} translation for job {}", targetLang, jobId);
+                } else {
+                    if (segmentFeed != null) {
+                        translatedSegments = translateStream(segmentFeed, stage, sourceLanguage, targetLang,
+                                translationModel, audioDuration.get());
+                    } else {
+                        List<SubtitleSegment> segments = originalSegments.get();
+                        int totalSegments = segments.size();
+
+                        translatedSegments = translationService.translateBatch(
+                                segments, sourceLanguage, targetLang, translationModel,
+                                translated -> stage.setProgress((int)((double)translated / totalSegments * 100))
+                        );
+                    }
+                    // The transcript is complete by now, so its hash is set
+                    artifactCache.putSegments(ArtifactCacheService.TRANSLATION, translationKey(
+                            transcriptHash.get(), sourceLanguage, targetLang, translationModel), translatedSegments);
                 }
 
-                // Save translated SRT
                 File translatedSrtFile = new File(outputDir, baseName + "_" + targetLang + ".srt");
                 writeSRT(translatedSegments, translatedSrtFile);
                 jobTrackingService.addJobOutput(jobId, targetLang + "_srt", translatedSrtFile.getName());
+                translatedSrtFiles.put(targetLang, translatedSrtFile);
+            }, segmentFeed != null ? audioDependencies : Collections.singletonList(segmentsStage));
+            if (segmentFeed != null) {
+                // Mostly waits for transcription, so it takes a TRANSLATE permit per batch only
+                graph.getStage(translateStage).setPermitPerBatch(true);
+            }
 
-                translatedSrtFiles.add(translatedSrtFile);
-                languages.add(targetLang);
-
-                // Burn translated subtitles if requested
-                if ("hard".equals(request.getSubtitleBurnType()) || "both".equals(request.getSubtitleBurnType())) {
-                    log.info("Step 5: Burning {} subtitles", targetLang);
-                    if (job.getChatId() != null && progressMessageId != null) {
-                        telegramApiClient.updateProgressMessage(job.getChatId(), progressMessageId,
-                                buildProgressMessage(job, 5, currentLangIndex, totalLanguages, 0));
-                    }
+            if (burnPerOutput) {
+                graph.addStage("burn:" + targetLang, StageType.BURN, "\uD83D\uDD25 Burning " + langName + " Subtitles", stage -> {
                     File translatedVideoFile = new File(outputDir, baseName + "_" + targetLang + ".mp4");
-                    ffmpegService.burnSubtitles(inputFile, translatedSrtFile, translatedVideoFile);
+                    ffmpegService.burnSubtitles(inputFile, translatedSrtFiles.get(targetLang), translatedVideoFile,
+                            stage::setEncodingProgress);
                     jobTrackingService.addJobOutput(jobId, targetLang, translatedVideoFile.getName());
-                }
+                }, translateStage);
             }
+        }
 
-            // Step 6: Create soft subtitle version if requested
-            if ("soft".equals(request.getSubtitleBurnType()) || "both".equals(request.getSubtitleBurnType())) {
-                log.info("Step 6: Creating soft subtitle version");
-                if (job.getChatId() != null && progressMessageId != null) {
-                    telegramApiClient.updateProgressMessage(job.getChatId(), progressMessageId,
-                            buildProgressMessage(job, 6, 0, 0, 0));
+        if (hardBurn && !burnPerOutput) {
+            List<String> burnDependencies = new ArrayList<>();
+            burnDependencies.add(segmentsStage);
+            burnDependencies.addAll(translateStages);
+
+            graph.addStage("burn", StageType.BURN, "\uD83D\uDD25 Burning Subtitles (" +
+                    (request.getTargetLanguages().size() + 1) + " videos)", stage -> {
+                List<String> keys = new ArrayList<>();
+                List<File> subtitleFiles = new ArrayList<>();
+                List<File> videoFiles = new ArrayList<>();
+
+                keys.add("orig");
+                subtitleFiles.add(originalSrtFile);
+                videoFiles.add(new File(outputDir, baseName + "_orig.mp4"));
+                for (String targetLang : request.getTargetLanguages()) {
+                    keys.add(targetLang);
+                    subtitleFiles.add(translatedSrtFiles.get(targetLang));
+                    videoFiles.add(new File(outputDir, baseName + "_" + targetLang + ".mp4"));
                 }
 
-                // Add original subtitle to the list
-                translatedSrtFiles.add(0, originalSrtFile);
-                languages.add(0, request.getOriginalLanguage() != null ? request.getOriginalLanguage() : "en");
+                ffmpegService.burnSubtitlesMulti(inputFile, subtitleFiles, videoFiles, stage::setEncodingProgress);
+                for (int i = 0; i < keys.size(); i++) {
+                    jobTrackingService.addJobOutput(jobId, keys.get(i), videoFiles.get(i).getName());
+                }
+            }, burnDependencies);
+        }
+
+        if (softMux) {
+            List<String> muxDependencies = new ArrayList<>();
+            muxDependencies.add(segmentsStage);
+            muxDependencies.addAll(translateStages);
+
+            graph.addStage("mux_soft", StageType.MUX, "\uD83C\uDFAC Creating Multi-Language Video", stage -> {
+                // Original subtitles first, then translations in request order
+                List<File> subtitleFiles = new ArrayList<>();
+                List<String> languages = new ArrayList<>();
+                subtitleFiles.add(originalSrtFile);
+                languages.add(sourceLanguage);
+                for (String targetLang : request.getTargetLanguages()) {
+                    subtitleFiles.add(translatedSrtFiles.get(targetLang));
+                    languages.add(targetLang);
+                }
 
                 File softSubFile = new File(outputDir, baseName + "_multi_soft.mkv");
-                ffmpegService.muxSoftSubtitles(inputFile, translatedSrtFiles, languages, softSubFile);
+                ffmpegService.muxSoftSubtitles(inputFile, subtitleFiles, languages, softSubFile,
+                        stage::setEncodingProgress);
                 jobTrackingService.addJobOutput(jobId, "multi_soft", softSubFile.getName());
-            }
+            }, muxDependencies);
+        }
 
-            // Cleanup
-            audioFile.delete();
+        return graph;
+    }
 
-            // Mark job as completed
-            jobTrackingService.updateJobStatus(jobId, TranslationJob.JobStatus.COMPLETED);
-            log.info("Job completed successfully: {}", jobId);
+    /**
+     * Translates segments as the transcription stage publishes them, one
+     * worker batch at a time. Progress follows the audio time covered by the
+     * translated segments. If this stage fails, the feed fails too so the
+     * transcription and the other translations stop early.
+     */
+    private List<SubtitleSegment> translateStream(SegmentFeed segmentFeed, PipelineStage stage, String sourceLanguage,
+                                                  String targetLang, String translationModel,
+                                                  double audioSeconds) throws Exception {
+        List<SubtitleSegment> translatedSegments = new ArrayList<>();
+        try (SegmentFeed.Reader reader = segmentFeed.open()) {
+            List<SubtitleSegment> batch;
+            while (!(batch = reader.next(translationBatchSize)).isEmpty()) {
+                List<SubtitleSegment> segments = batch;
+                translatedSegments.addAll(stage.withPermit(() -> translationService.translateBatch(
+                        segments, sourceLanguage, targetLang, translationModel)));
+                stage.setProgress(audioProgress(batch.get(batch.size() - 1), audioSeconds));
+            }
+        } catch (Exception e) {
+            segmentFeed.fail(e);
+            throw e;
+        }
+        return translatedSegments;
+    }
 
-            // Send final completion message
-            if (job.getChatId() != null && progressMessageId != null) {
-                telegramApiClient.updateProgressMessage(job.getChatId(), progressMessageId,
-                        buildCompletionMessage(job));
+    /**
+     * Picks the subtitle track to translate: the requested stream if given,
+     * otherwise the default text subtitle track, otherwise the first one.
+     */
+    private MediaTrackInfo resolveSubtitleTrack(File inputFile, Integer requestedIndex) {
+        List<MediaTrackInfo> textTracks = new ArrayList<>();
+        for (MediaTrackInfo track : ffmpegService.analyzeMedia(inputFile)) {
+            if (!"subtitle".equals(track.getType())) {
+                continue;
+            }
+            if (requestedIndex != null && requestedIndex.equals(track.getIndex())) {
+                if (!TEXT_SUBTITLE_CODECS.contains(track.getCodec())) {
+                    throw new RuntimeException("Subtitle track #" + requestedIndex + " is " + track.getCodec() +
+                            ", only text subtitles can be translated");
+                }
+                return track;
+            }
+            if (TEXT_SUBTITLE_CODECS.contains(track.getCodec())) {
+                textTracks.add(track);
             }
+        }
 
-        } catch (Exception e) {
-            log.error("Job processing failed: {}", jobId, e);
-            jobTrackingService.setJobError(jobId, e.getMessage());
+        if (requestedIndex != null) {
+            throw new RuntimeException("No subtitle track #" + requestedIndex + " in " + inputFile.getName());
+        }
+        if (textTracks.isEmpty()) {
+            throw new RuntimeException("No text subtitle track in " + inputFile.getName());
+        }
+        return textTracks.stream()
+                .filter(track -> track.getDefaultTrack() != null && track.getDefaultTrack() == 1)
+                .findFirst()
+                .orElse(textTracks.get(0));
+    }
+
+    private String translationKey(String transcriptHash, String sourceLanguage, String targetLang,
+                                  String translationModel) {
+        return artifactCache.key(transcriptHash, sourceLanguage, targetLang, translationModel);
+    }
+
+    private String inputHash(TranslationJob job, File inputFile) throws IOException {
+        // Uploads are hashed on the way to disk; other inputs are hashed here once
+        return job.getContentHash() != null ? job.getContentHash() : fileStorageService.hashFile(inputFile);
+    }
+
+    private int audioProgress(SubtitleSegment segment, double audioSeconds) {
+        if (audioSeconds <= 0) {
+            return 0;
+        }
+        // The stage reports 100% itself when it finishes
+        return (int) Math.min(99, segment.getEndTime() / audioSeconds * 100);
+    }
+
+    private double wavDurationSeconds(File audioFile) {
+        // 16 kHz mono 16-bit PCM after the 44-byte WAV header, as written by extractAudio
+        return Math.max(0, audioFile.length() - 44) / 32000.0;
+    }
+
+    private void publishProgress(TranslationJob job, JobGraph graph, Integer progressMessageId) {
+        if (job.getChatId() == null || progressMessageId == null) {
+            return;
+        }
+        // Stages finish on different threads; serialize renders so an older one never replaces a newer one.
+        // Publishing only queues the edit, so Telegram's latency never reaches the pipeline.
+        synchronized (graph) {
+            progressPublisher.publish(job.getChatId(), progressMessageId, buildProgressMessage(job, graph));
         }
     }
 
@@ -203,79 +506,92 @@ public class SubtitleProcessingService {
         log.info("SRT file written: {}", outputFile.getAbsolutePath());
     }
 
-    private String buildProgressMessage(TranslationJob job, int currentStep, int currentLang, int totalLangs, int segmentProgress) {
-        String[] stepNames = {
-            "Initializing",
-            "Extracting Audio",
-            "Transcribing Speech",
-            "Burning Original Subtitles",
-            "Translating Subtitles",
-            "Burning Translated Subtitles",
-            "Creating Multi-Language Video"
-        };
-
-        String[] stepEmojis = {
-            "\uD83D\uDD04", // 🔄 Initializing
-            "\uD83C\uDFA7", // 🎧 Extracting Audio
-            "\uD83C\uDF99\uFE0F", // 🎙️ Transcribing
-            "\uD83C\uDFA5", // 🎥 Burning Original
-            "\uD83C\uDF0D", // 🌍 Translating
-            "\uD83D\uDD25", // 🔥 Burning Translated
-            "\uD83C\uDFAC"  // 🎬 Creating Multi-Language
-        };
+    /**
+     * Reads an SRT file as written by ffmpeg. Formatting tags are dropped and
+     * multi-line cues are joined, since the translation models work on plain sentences.
+     */
+    private List<SubtitleSegment> parseSRT(File srtFile) throws IOException {
+        String content = new String(Files.readAllBytes(srtFile.toPath()), StandardCharsets.UTF_8)
+                .replace("\uFEFF", "");
+
+        List<SubtitleSegment> segments = new ArrayList<>();
+        for (String block : content.split("\\r?\\n\\s*\\r?\\n")) {
+            String[] lines = block.trim().split("\\r?\\n");
+            int timingLine = 0;
+            while (timingLine < lines.length && !lines[timingLine].contains("-->")) {
+                timingLine++;
+            }
+            if (timingLine == lines.length) {
+                continue;
+            }
 
+            String[] times = lines[timingLine].split("-->");
+            StringBuilder text = new StringBuilder();
+            for (int i = timingLine + 1; i < lines.length; i++) {
+                String line = lines[i].replaceAll("<[^>]*>", "").replaceAll("\\{[^}]*}", "").trim();
+                if (!line.isEmpty()) {
+                    text.append(text.length() > 0 ? " " : "").append(line);
+                }
+            }
+            if (text.length() == 0) {
+                continue;
+            }
+
+            segments.add(new SubtitleSegment(segments.size() + 1, parseSrtTime(times[0]), parseSrtTime(times[1]),
+                    text.toString()));
+        }
+        return segments;
+    }
+
+    private double parseSrtTime(String time) {
+        // HH:MM:SS,mmm, possibly followed by position hints
+        String[] parts = time.trim().split("\\s+")[0].replace(',', '.').split(":");
+        return Integer.parseInt(parts[0]) * 3600 + Integer.parseInt(parts[1]) * 60 + Double.parseDouble(parts[2]);
+    }
+
+    private String buildProgressMessage(TranslationJob job, JobGraph graph) {
         StringBuilder message = new StringBuilder();
         message.append("\uD83C\uDFA5 <b>Video Processing Progress</b>\n\n");
         message.append("\uD83D\uDCC1 File: ").append(job.getFileName()).append("\n\n");
 
         // Build checklist
-        for (int i = 0; i <= 6; i++) {
-            if (i < currentStep) {
-                message.append("✅ ").append(stepEmojis[i]).append(" ").append(stepNames[i]).append("\n");
-            } else if (i == currentStep) {
-                message.append("▶️ ").append(stepEmojis[i]).append(" <b>").append(stepNames[i]).append("</b>\n");
-
-                // Add sub-progress for translation
-                if (i == 4 && totalLangs > 0) {
-                    String langName = getLanguageName(job.getRequest().getTargetLanguages().get(currentLang - 1));
-                    message.append("   \uD83D\uDD39 Language ").append(currentLang).append("/").append(totalLangs)
-                           .append(": ").append(langName).append("\n");
-
-                    if (segmentProgress > 0) {
-                        message.append("   ").append(buildProgressBar(segmentProgress)).append(" ")
-                               .append(segmentProgress).append("%\n");
+        for (PipelineStage stage : graph.getStages()) {
+            switch (stage.getState()) {
+                case DONE:
+                    message.append("✅ ").append(stage.getLabel()).append("\n");
+                    break;
+                case RUNNING:
+                    message.append("▶️ <b>").append(stage.getLabel()).append("</b>\n");
+                    if ((stage.getType() == StageType.TRANSLATE || stage.getType() == StageType.TRANSCRIBE)
+                            && stage.getProgress() > 0) {
+                        message.append("   ").append(buildProgressBar(stage.getProgress())).append(" ")
+                               .append(stage.getProgress()).append("%\n");
                     }
-                } else if (i == 5 && totalLangs > 0) {
-                    String langName = getLanguageName(job.getRequest().getTargetLanguages().get(currentLang - 1));
-                    message.append("   \uD83D\uDD39 Language ").append(currentLang).append("/").append(totalLangs)
-                           .append(": ").append(langName).append("\n");
-                }
-            } else {
-                message.append("⏳ ").append(stepEmojis[i]).append(" ").append(stepNames[i]).append("\n");
+                    break;
+                case FAILED:
+                    message.append("❌ ").append(stage.getLabel()).append("\n");
+                    break;
+                default:
+                    message.append("⏳ ").append(stage.getLabel()).append("\n");
+                    break;
             }
         }
 
         // Overall progress bar
-        int overallProgress = calculateOverallProgress(currentStep, currentLang, totalLangs, segmentProgress);
+        int overallProgress = graph.getOverallProgress();
         message.append("\n").append(buildProgressBar(overallProgress)).append(" <b>")
                .append(overallProgress).append("%</b>");
 
         return message.toString();
     }
 
-    private String buildCompletionMessage(TranslationJob job) {
+    private String buildCompletionMessage(TranslationJob job, JobGraph graph) {
         StringBuilder message = new StringBuilder();
         message.append("✅ <b>Processing Complete!</b>\n\n");
         message.append("\uD83C\uDFC6 <b>").append(job.getFileName()).append("</b>\n\n");
 
-        message.append("✅ \uD83C\uDFA7 Audio Extracted\n");
-        message.append("✅ \uD83C\uDF99\uFE0F Speech Transcribed\n");
-        message.append("✅ \uD83C\uDFA5 Original Subtitles Burned\n");
-
-        for (String lang : job.getRequest().getTargetLanguages()) {
-            String langName = getLanguageName(lang);
-            message.append("✅ \uD83C\uDF0D Translated to ").append(langName).append("\n");
-            message.append("✅ \uD83D\uDD25 ").append(langName).append(" Subtitles Burned\n");
+        for (PipelineStage stage : graph.getStages()) {
+            message.append("✅ ").append(stage.getLabel()).append("\n");
         }
 
         message.append("\n\uD83C\uDF89 Your videos are being sent now!");
@@ -298,50 +614,6 @@ public class SubtitleProcessingService {
         return bar.toString();
     }
 
-    private int calculateOverallProgress(int currentStep, int currentLang, int totalLangs, int segmentProgress) {
-        if (totalLangs == 0) totalLangs = 1;
-
-        // Weight each major step
-        // Steps: 0=Init(5%), 1=Audio(10%), 2=Transcribe(20%), 3=BurnOrig(10%),
-        //        4=Translate(30%), 5=BurnTranslated(20%), 6=CreateMulti(5%)
-
-        int progress = 0;
-
-        if (currentStep >= 1) progress += 5;  // Init done
-        if (currentStep >= 2) progress += 10; // Audio extraction done
-        if (currentStep >= 3) progress += 20; // Transcription done
-        if (currentStep >= 4) progress += 10; // Original subtitles done
-
-        if (currentStep == 4) {
-            // Translation in progress
-            int translationBaseProgress = 40;
-            int translationStepWeight = 30 / totalLangs;
-            int completedLangs = currentLang - 1;
-            progress += translationStepWeight * completedLangs;
-
-            // Add current segment progress
-            if (segmentProgress > 0) {
-                progress += (translationStepWeight * segmentProgress) / 100;
-            }
-        } else if (currentStep >= 5) {
-            progress += 30; // All translations done
-        }
-
-        if (currentStep == 5) {
-            // Burning subtitles
-            int burnBaseProgress = 70;
-            int burnStepWeight = 20 / totalLangs;
-            int completedBurns = currentLang - 1;
-            progress += burnStepWeight * completedBurns;
-        } else if (currentStep >= 6) {
-            progress += 20; // All burning done
-        }
-
-        if (currentStep >= 6) progress += 5; // Multi-language video creation
-
-        return Math.min(100, progress);
-    }
-
     private String getLanguageName(String langCode) {
         switch (langCode.toLowerCase()) {
             case "en": return "English";
@@ -0,0 +1,351 @@
+package com.koishman.telegram.translation.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Translation memory in front of the translation workers. Entries are keyed by
+ * normalized source text, language pair and model, and live in two tiers: a
+ * bounded in-memory LRU map and an on-disk store that survives restarts.
+ *
+ * <p>The disk tier is one append-only file of records (key, length, UTF-8
+ * text) with an in-memory index of record offsets. The index keeps at most
+ * {@code translation.memory.disk-max-entries}, least recently used first out.
+ * Once evicted records make up half the file, it is rewritten with only the
+ * live ones.
+ */
+@Slf4j
+@Service
+public class TranslationMemoryService {
+
+    private static final String STORE_FILE = "translation-memory.bin";
+    private static final int KEY_BYTES = 32; // SHA-256
+    private static final int MAX_TEXT_BYTES = 1024 * 1024; // Larger lengths mean a corrupt record
+
+    @Value("${translation.memory.enabled:true}")
+    private boolean enabled;
+
+    @Value("${translation.memory.max-entries:50000}")
+    private int maxEntries;
+
+    @Value("${translation.memory.disk-max-entries:200000}")
+    private int diskMaxEntries;
+
+    @Value("${translation.memory.dir:./cache/translation-memory}")
+    private String memoryDir;
+
+    private Map<String, String> memoryTier;
+
+    // Disk tier; all guarded by diskLock
+    private final Object diskLock = new Object();
+    private Path storePath;
+    private FileChannel store;
+    private Map<String, Long> diskIndex; // Key -> record offset, least recently used first
+    private long deadRecords; // Evicted or unreadable records still in the file
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        memoryTier = Collections.synchronizedMap(new LinkedHashMap<String, String>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxEntries;
+            }
+        });
+        diskIndex = new LinkedHashMap<String, Long>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                if (size() > diskMaxEntries) {
+                    deadRecords++;
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        if (enabled) {
+            try {
+                Files.createDirectories(Paths.get(memoryDir));
+                storePath = Paths.get(memoryDir, STORE_FILE);
+                synchronized (diskLock) {
+                    openStore();
+                }
+                log.info("Translation memory initialized: file={}, maxEntries={}, diskEntries={}, diskMaxEntries={}",
+                        storePath, maxEntries, diskIndex.size(), diskMaxEntries);
+            } catch (IOException e) {
+                log.error("Failed to open translation memory store, disk tier disabled", e);
+                store = null;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        synchronized (diskLock) {
+            closeStore();
+        }
+    }
+
+    /**
+     * Normalizes subtitle text so trivially different lines share an entry:
+     * Unicode NFC, trimmed, with runs of whitespace collapsed to one space.
+     */
+    public String normalize(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFC).trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * @return the remembered translation, or null on a miss
+     */
+    public String lookup(String text, String sourceLang, String targetLang, String model) {
+        if (!enabled) {
+            return null;
+        }
+
+        String key = key(text, sourceLang, targetLang, model);
+
+        String translated = memoryTier.get(key);
+        if (translated != null) {
+            memoryHits.incrementAndGet();
+            return translated;
+        }
+
+        translated = readFromDisk(key);
+        if (translated != null) {
+            memoryTier.put(key, translated);
+            diskHits.incrementAndGet();
+            return translated;
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void store(String text, String sourceLang, String targetLang, String model, String translated) {
+        if (!enabled || translated == null) {
+            return;
+        }
+
+        String key = key(text, sourceLang, targetLang, model);
+        memoryTier.put(key, translated);
+        writeToDisk(key, translated);
+    }
+
+    public Map<String, Object> getStats() {
+        long memory = memoryHits.get();
+        long disk = diskHits.get();
+        long miss = misses.get();
+        long total = memory + disk + miss;
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("memory_entries", memoryTier.size());
+        synchronized (diskLock) {
+            stats.put("disk_entries", diskIndex.size());
+            stats.put("disk_bytes", storeSize());
+        }
+        stats.put("memory_hits", memory);
+        stats.put("disk_hits", disk);
+        stats.put("misses", miss);
+        stats.put("hit_ratio", total == 0 ? 0.0 : (double) (memory + disk) / total);
+        return stats;
+    }
+
+    private String readFromDisk(String key) {
+        synchronized (diskLock) {
+            Long offset = diskIndex.get(key);
+            if (store == null || offset == null) {
+                return null;
+            }
+            try {
+                ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+                readFully(length, offset + KEY_BYTES);
+                ByteBuffer text = ByteBuffer.allocate(length.flip().getInt());
+                readFully(text, offset + KEY_BYTES + Integer.BYTES);
+                return new String(text.array(), StandardCharsets.UTF_8);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to read translation memory entry at offset {}", offset, e);
+                diskIndex.remove(key);
+                deadRecords++;
+                return null;
+            }
+        }
+    }
+
+    private void writeToDisk(String key, String translated) {
+        byte[] text = translated.getBytes(StandardCharsets.UTF_8);
+        if (text.length > MAX_TEXT_BYTES) {
+            return;
+        }
+        ByteBuffer record = ByteBuffer.allocate(KEY_BYTES + Integer.BYTES + text.length);
+        record.put(hexToBytes(key)).putInt(text.length).put(text).flip();
+
+        synchronized (diskLock) {
+            if (store == null || diskIndex.containsKey(key)) {
+                return;
+            }
+            try {
+                long offset = store.size();
+                while (record.hasRemaining()) {
+                    store.write(record, offset + record.position());
+                }
+                diskIndex.put(key, offset);
+                if (deadRecords > diskIndex.size()) {
+                    compact();
+                }
+            } catch (IOException e) {
+                log.warn("Failed to persist translation memory entry", e);
+            }
+        }
+    }
+
+    /**
+     * Opens the store file and indexes its records, dropping a torn record at
+     * the end left by a crash. Called with diskLock held.
+     */
+    private void openStore() throws IOException {
+        store = FileChannel.open(storePath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        diskIndex.clear();
+        deadRecords = 0;
+
+        long offset = 0;
+        long size = store.size();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(store.position(0))))) {
+            byte[] key = new byte[KEY_BYTES];
+            while (offset + KEY_BYTES + Integer.BYTES <= size) {
+                in.readFully(key);
+                int length = in.readInt();
+                if (length < 0 || length > MAX_TEXT_BYTES || offset + KEY_BYTES + Integer.BYTES + length > size) {
+                    break;
+                }
+                if (in.skipBytes(length) < length) {
+                    break;
+                }
+                if (diskIndex.put(bytesToHex(key), offset) != null) {
+                    deadRecords++;
+                }
+                offset += KEY_BYTES + Integer.BYTES + length;
+            }
+        }
+
+        // Closing the stream closed the channel
+        store = FileChannel.open(storePath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (offset < size) {
+            log.warn("Dropping {} bytes of incomplete records at the end of {}", size - offset, storePath);
+            store.truncate(offset);
+        }
+    }
+
+    /**
+     * Rewrites the store with only the indexed records, in LRU order. Called with diskLock held.
+     */
+    private void compact() throws IOException {
+        Path temp = Files.createTempFile(storePath.getParent(), STORE_FILE, ".tmp");
+        Map<String, Long> offsets = new LinkedHashMap<>();
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            long position = 0;
+            for (Map.Entry<String, Long> entry : diskIndex.entrySet()) {
+                ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+                readFully(length, entry.getValue() + KEY_BYTES);
+                long recordLength = KEY_BYTES + Integer.BYTES + length.flip().getInt();
+                long copied = 0;
+                while (copied < recordLength) {
+                    copied += store.transferTo(entry.getValue() + copied, recordLength - copied, out);
+                }
+                offsets.put(entry.getKey(), position);
+                position += recordLength;
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        closeStore();
+        Files.move(temp, storePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        store = FileChannel.open(storePath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Same order, so the LRU order survives
+        diskIndex.clear();
+        diskIndex.putAll(offsets);
+        log.info("Compacted translation memory: {} entries, dropped {} dead records", offsets.size(), deadRecords);
+        deadRecords = 0;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (store.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Translation memory record ends early");
+            }
+        }
+    }
+
+    private long storeSize() {
+        try {
+            return store != null ? store.size() : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void closeStore() {
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                log.debug("Failed to close translation memory store", e);
+            }
+        }
+    }
+
+    private String key(String text, String sourceLang, String targetLang, String model) {
+        String raw = normalize(text) + '\u0000' + sourceLang + '\u0000' + targetLang + '\u0000' + model;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return bytesToHex(digest.digest(raw.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String bytesToHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] hexToBytes(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -2,16 +2,19 @@ package com.koishman.telegram.translation.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.koishman.telegram.translation.model.SubtitleSegment;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
 
 @Slf4j
 @Service
@@ -19,9 +22,11 @@ import java.util.List;
 public class TranslationService {
 
     private final ObjectMapper objectMapper;
+    private final TranslationWorkerPool workerPool;
+    private final TranslationMemoryService translationMemory;
 
-    @Value("${translation.python.executable:python3}")
-    private String pythonExecutable;
+    @Value("${translation.batch.size:32}")
+    private int batchSize;
 
     public String translate(String text, String sourceLang, String targetLang) {
         return translate(text, sourceLang, targetLang, "m2m100");
@@ -29,109 +34,30 @@ public class TranslationService {
 
     public String translate(String text, String sourceLang, String targetLang, String model) {
         try {
-            // Select script based on model
-            String scriptName;
-            switch (model.toLowerCase()) {
-                case "nllb":
-                    scriptName = "nllb_translate.py";
-                    break;
-                case "m2m100":
-                default:
-                    scriptName = "translate_text.py";
-                    break;
-            }
-
-            String scriptPath = getScriptPath(scriptName);
-
-            List<String> command = new ArrayList<>();
-            command.add(pythonExecutable);
-            command.add(scriptPath);
-
-            // NLLB script uses different argument format
-            if (model.equalsIgnoreCase("nllb")) {
-                command.add("--text");
-                command.add(text);
-                command.add("--src-lang");
-                command.add(sourceLang);
-                command.add("--tgt-lang");
-                command.add(targetLang);
-            } else {
-                command.add(text);
-                command.add("--source");
-                command.add(sourceLang);
-                command.add("--target");
-                command.add(targetLang);
-            }
-
-            log.debug("Translating with {}: {} -> {}", model, sourceLang, targetLang);
-
-            ProcessBuilder pb = new ProcessBuilder(command);
-            pb.redirectErrorStream(true);
-
-            Process process = pb.start();
-            List<String> allOutput = new ArrayList<>();
-
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    allOutput.add(line);
-                    log.debug("Translation output: {}", line);
-                }
-            }
+            String workerModel = normalizeModel(model);
 
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                throw new RuntimeException("Translation failed with exit code: " + exitCode +
-                    "\nOutput: " + String.join("\n", allOutput));
+            String remembered = translationMemory.lookup(text, sourceLang, targetLang, workerModel);
+            if (remembered != null) {
+                return remembered;
             }
 
-            // Find JSON output - look for a line that starts with { (could be single-line or multi-line)
-            String jsonResult = null;
-            int jsonStartIndex = -1;
-
-            for (int i = allOutput.size() - 1; i >= 0; i--) {
-                String line = allOutput.get(i).trim();
-                if (line.startsWith("{")) {
-                    // Check if it's single-line JSON (starts and ends with {})
-                    if (line.endsWith("}")) {
-                        jsonResult = line;
-                        break;
-                    } else {
-                        // Multi-line JSON - collect from this line to the end
-                        jsonStartIndex = i;
-                        StringBuilder jsonBuilder = new StringBuilder();
-                        for (int j = jsonStartIndex; j < allOutput.size(); j++) {
-                            jsonBuilder.append(allOutput.get(j)).append("\n");
-                        }
-                        jsonResult = jsonBuilder.toString().trim();
-                        break;
-                    }
-                }
-            }
+            ObjectNode request = objectMapper.createObjectNode();
+            request.put("text", text);
+            request.put("src", sourceLang);
+            request.put("tgt", targetLang);
 
-            if (jsonResult == null) {
-                throw new RuntimeException("No JSON output found in translation output. Full output:\n" +
-                    String.join("\n", allOutput));
-            }
+            log.debug("Translating with {}: {} -> {}", workerModel, sourceLang, targetLang);
 
-            // Parse JSON output
-            JsonNode result;
-            try {
-                result = objectMapper.readTree(jsonResult);
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to parse JSON output. JSON:\n" + jsonResult +
-                    "\nFull output:\n" + String.join("\n", allOutput), e);
-            }
+            JsonNode result = workerPool.execute(workerModel, request);
 
             if (result.has("error")) {
                 throw new RuntimeException("Translation error: " + result.get("error").asText());
             }
 
-            // Different models return different field names
             if (result.has("translated")) {
-                return result.get("translated").asText();
-            } else if (result.has("translated_text")) {
-                return result.get("translated_text").asText();
+                String translated = result.get("translated").asText();
+                translationMemory.store(text, sourceLang, targetLang, workerModel, translated);
+                return translated;
             } else {
                 throw new RuntimeException("Unexpected translation response format");
             }
@@ -142,14 +68,105 @@ public class TranslationService {
         }
     }
 
-    private String getScriptPath(String scriptName) {
-        String resourcePath = "src/main/resources/python/" + scriptName;
-        File scriptFile = new File(resourcePath);
+    public List<SubtitleSegment> translateBatch(List<SubtitleSegment> segments, String sourceLang,
+                                                String targetLang, String model) {
+        return translateBatch(segments, sourceLang, targetLang, model, translated -> { });
+    }
+
+    /**
+     * Translates a whole subtitle track. Lines already in the translation memory
+     * are answered from it, repeated lines are translated once, and the rest go
+     * to the workers {@code translation.batch.size} at a time. The worker further
+     * splits each request into padded generate() batches bounded by
+     * {@code translation.batch.max-tokens}.
+     *
+     * @param onProgress called with the number of segments translated so far
+     * @return translated segments with the original indices and timings, in input order
+     */
+    public List<SubtitleSegment> translateBatch(List<SubtitleSegment> segments, String sourceLang,
+                                                String targetLang, String model, IntConsumer onProgress) {
+        String workerModel = normalizeModel(model);
+        String[] results = new String[segments.size()];
+        int done = 0;
+
+        // Normalized text -> positions still waiting for a translation
+        Map<String, List<Integer>> pending = new LinkedHashMap<>();
+        for (int i = 0; i < segments.size(); i++) {
+            String text = segments.get(i).getText();
+            String remembered = translationMemory.lookup(text, sourceLang, targetLang, workerModel);
+            if (remembered != null) {
+                results[i] = remembered;
+                done++;
+            } else {
+                pending.computeIfAbsent(translationMemory.normalize(text), k -> new ArrayList<>()).add(i);
+            }
+        }
 
-        if (scriptFile.exists()) {
-            return scriptFile.getAbsolutePath();
+        log.debug("Translation memory answered {}/{} segments ({} -> {}, {})",
+                done, segments.size(), sourceLang, targetLang, workerModel);
+        if (done > 0) {
+            onProgress.accept(done);
         }
 
-        return "python/" + scriptName;
+        try {
+            List<List<Integer>> uniqueLines = new ArrayList<>(pending.values());
+            for (int start = 0; start < uniqueLines.size(); start += batchSize) {
+                List<List<Integer>> batch = uniqueLines.subList(start, Math.min(start + batchSize, uniqueLines.size()));
+
+                ObjectNode request = objectMapper.createObjectNode();
+                ArrayNode texts = request.putArray("texts");
+                batch.forEach(positions -> texts.add(segments.get(positions.get(0)).getText()));
+                request.put("src", sourceLang);
+                request.put("tgt", targetLang);
+
+                log.debug("Translating batch of {} segments with {}: {} -> {}",
+                        batch.size(), workerModel, sourceLang, targetLang);
+
+                JsonNode result = workerPool.execute(workerModel, request);
+
+                if (result.has("error")) {
+                    throw new RuntimeException("Translation error: " + result.get("error").asText());
+                }
+
+                JsonNode translations = result.get("translations");
+                if (translations == null || translations.size() != batch.size()) {
+                    throw new RuntimeException("Unexpected translation response format");
+                }
+
+                for (int i = 0; i < batch.size(); i++) {
+                    List<Integer> positions = batch.get(i);
+                    String translated = translations.get(i).asText();
+                    translationMemory.store(segments.get(positions.get(0)).getText(),
+                            sourceLang, targetLang, workerModel, translated);
+                    for (int position : positions) {
+                        results[position] = translated;
+                    }
+                    done += positions.size();
+                }
+
+                onProgress.accept(done);
+            }
+
+        } catch (Exception e) {
+            log.error("Batch translation failed: {} -> {}", sourceLang, targetLang, e);
+            throw new RuntimeException("Translation failed", e);
+        }
+
+        List<SubtitleSegment> translatedSegments = new ArrayList<>(segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            SubtitleSegment segment = segments.get(i);
+            translatedSegments.add(new SubtitleSegment(
+                    segment.getIndex(),
+                    segment.getStartTime(),
+                    segment.getEndTime(),
+                    results[i]
+            ));
+        }
+        return translatedSegments;
+    }
+
+    private String normalizeModel(String model) {
+        // Anything other than NLLB runs on M2M100, as before
+        return model != null && model.equalsIgnoreCase("nllb") ? "nllb" : "m2m100";
     }
 }
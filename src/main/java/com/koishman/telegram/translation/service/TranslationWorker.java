@@ -0,0 +1,154 @@
+package com.koishman.telegram.translation.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A long-lived translation_worker.py process that keeps one model loaded
+ * and answers line-delimited JSON requests on stdin/stdout. A worker that
+ * doesn't load within its startup timeout, or doesn't answer a request within
+ * its request timeout, is killed, and the request fails with an IOException.
+ * Instances are not thread-safe; {@link TranslationWorkerPool} hands each
+ * worker to a single caller at a time.
+ */
+@Slf4j
+class TranslationWorker {
+
+    private final String model;
+    private final Process process;
+    private final BufferedWriter stdin;
+    private final BufferedReader stdout;
+    private final ObjectMapper objectMapper;
+    private final long startupTimeoutMs;
+    private final long requestTimeoutMs;
+    private final AtomicLong requestIds = new AtomicLong();
+    private boolean ready;
+
+    TranslationWorker(String model, List<String> command, ObjectMapper objectMapper,
+                      long startupTimeoutMs, long requestTimeoutMs) throws IOException {
+        this.model = model;
+        this.objectMapper = objectMapper;
+        this.startupTimeoutMs = startupTimeoutMs;
+        this.requestTimeoutMs = requestTimeoutMs;
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        this.process = pb.start();
+        this.stdin = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+        this.stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+
+        Thread stderrDrain = new Thread(this::drainStderr, "translation-worker-" + model + "-stderr");
+        stderrDrain.setDaemon(true);
+        stderrDrain.start();
+
+        log.info("Started {} translation worker (pid: {})", model, process.pid());
+    }
+
+    String getModel() {
+        return model;
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /**
+     * Sends one request and blocks until the matching response line arrives.
+     * Waits for the model to finish loading on first use.
+     *
+     * @throws IOException if the worker process died, timed out or broke the protocol
+     */
+    JsonNode send(ObjectNode request) throws IOException {
+        if (!ready) {
+            awaitReady();
+        }
+
+        long requestId = requestIds.incrementAndGet();
+        request.put("id", requestId);
+
+        JsonNode response;
+        try (WorkerDeadline deadline = new WorkerDeadline(process, requestTimeoutMs)) {
+            try {
+                stdin.write(objectMapper.writeValueAsString(request));
+                stdin.newLine();
+                stdin.flush();
+
+                response = readResponse();
+            } catch (IOException e) {
+                throw deadline.isExpired() ? timedOut("answer", deadline, e) : e;
+            }
+        }
+        if (response.path("id").asLong(-1) != requestId) {
+            throw new IOException("Translation worker answered out of order: expected id " + requestId +
+                    ", got " + response);
+        }
+        return response;
+    }
+
+    void destroy() {
+        try {
+            stdin.close();
+        } catch (IOException e) {
+            log.debug("Failed to close translation worker stdin", e);
+        }
+        process.destroy();
+        log.info("Stopped {} translation worker (pid: {})", model, process.pid());
+    }
+
+    private void awaitReady() throws IOException {
+        JsonNode response;
+        try (WorkerDeadline deadline = new WorkerDeadline(process, startupTimeoutMs)) {
+            try {
+                response = readResponse();
+            } catch (IOException e) {
+                throw deadline.isExpired() ? timedOut("load " + model, deadline, e) : e;
+            }
+        }
+        if (!response.path("ready").asBoolean(false)) {
+            throw new IOException("Translation worker failed to load " + model + ": " +
+                    response.path("error").asText("unknown error"));
+        }
+        ready = true;
+        log.info("{} translation worker ready (pid: {})", model, process.pid());
+    }
+
+    private JsonNode readResponse() throws IOException {
+        String line;
+        while ((line = stdout.readLine()) != null) {
+            String trimmed = line.trim();
+            // Libraries occasionally print to stdout; only JSON lines belong to the protocol
+            if (trimmed.startsWith("{")) {
+                return objectMapper.readTree(trimmed);
+            }
+            log.debug("Translation worker output: {}", line);
+        }
+        throw new IOException("Translation worker exited (pid: " + process.pid() + ")");
+    }
+
+    private IOException timedOut(String what, WorkerDeadline deadline, IOException cause) {
+        return new IOException("Translation worker (pid: " + process.pid() + ") did not " + what +
+                " within " + deadline.getTimeoutMs() + "ms", cause);
+    }
+
+    private void drainStderr() {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                log.debug("Translation worker [{}]: {}", model, line);
+            }
+        } catch (IOException e) {
+            log.debug("Translation worker stderr closed", e);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.koishman.telegram.translation.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Pool of warm translation workers. Each worker keeps its model loaded, so a
+ * request only pays for inference. Requests are routed to an idle worker that
+ * already holds the requested model; when none is available a new worker is
+ * started while the pool has room, otherwise the least recently used idle
+ * worker is replaced.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TranslationWorkerPool {
+
+    private static final String WORKER_SCRIPT = "translation_worker.py";
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${translation.python.executable:python3}")
+    private String pythonExecutable;
+
+    @Value("${translation.workers.pool-size:2}")
+    private int poolSize;
+
+    @Value("${translation.workers.max-restarts:2}")
+    private int maxRestarts;
+
+    @Value("${translation.workers.startup-timeout-seconds:600}")
+    private long startupTimeoutSeconds;
+
+    @Value("${translation.workers.request-timeout-seconds:300}")
+    private long requestTimeoutSeconds;
+
+    @Value("${translation.batch.max-tokens:2048}")
+    private int maxBatchTokens;
+
+    // Most recently used first; guarded by this
+    private final Deque<TranslationWorker> idleWorkers = new ArrayDeque<>();
+    // Workers handed out or being started; guarded by this
+    private int busyWorkers;
+    private boolean shutdown;
+
+    /**
+     * Executes a request on a worker holding the given model. A worker that
+     * crashes mid-request, or doesn't answer within
+     * {@code translation.workers.request-timeout-seconds}, is discarded and the
+     * request is retried on a fresh one, up to
+     * {@code translation.workers.max-restarts} times.
+     */
+    public JsonNode execute(String model, ObjectNode request) {
+        for (int attempt = 0; ; attempt++) {
+            TranslationWorker worker = acquire(model);
+            JsonNode response;
+            try {
+                response = worker.send(request);
+            } catch (IOException e) {
+                discard(worker);
+                if (attempt >= maxRestarts) {
+                    throw new RuntimeException("Translation worker failed after " + (attempt + 1) + " attempts", e);
+                }
+                log.warn("Translation worker for {} failed, restarting (attempt {}/{}): {}",
+                        model, attempt + 1, maxRestarts, e.getMessage());
+                continue;
+            }
+            release(worker);
+            return response;
+        }
+    }
+
+    private TranslationWorker acquire(String model) {
+        TranslationWorker evicted = null;
+
+        synchronized (this) {
+            while (true) {
+                if (shutdown) {
+                    throw new IllegalStateException("Translation worker pool is shut down");
+                }
+
+                Iterator<TranslationWorker> it = idleWorkers.iterator();
+                while (it.hasNext()) {
+                    TranslationWorker worker = it.next();
+                    if (!worker.isAlive()) {
+                        log.warn("Dropping dead {} translation worker", worker.getModel());
+                        it.remove();
+                    } else if (worker.getModel().equals(model)) {
+                        it.remove();
+                        busyWorkers++;
+                        return worker;
+                    }
+                }
+
+                if (idleWorkers.size() + busyWorkers < poolSize) {
+                    busyWorkers++;
+                    break;
+                }
+
+                if (!idleWorkers.isEmpty()) {
+                    // Pool is full of other models: replace the least recently used one
+                    evicted = idleWorkers.pollLast();
+                    busyWorkers++;
+                    break;
+                }
+
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for a translation worker", e);
+                }
+            }
+        }
+
+        if (evicted != null) {
+            log.info("Evicting idle {} translation worker to load {}", evicted.getModel(), model);
+            evicted.destroy();
+        }
+
+        try {
+            return startWorker(model);
+        } catch (IOException e) {
+            synchronized (this) {
+                busyWorkers--;
+                notifyAll();
+            }
+            throw new RuntimeException("Failed to start translation worker for " + model, e);
+        }
+    }
+
+    private void release(TranslationWorker worker) {
+        synchronized (this) {
+            busyWorkers--;
+            if (!shutdown && worker.isAlive()) {
+                idleWorkers.addFirst(worker);
+                notifyAll();
+                return;
+            }
+            notifyAll();
+        }
+        worker.destroy();
+    }
+
+    private void discard(TranslationWorker worker) {
+        worker.destroy();
+        synchronized (this) {
+            busyWorkers--;
+            notifyAll();
+        }
+    }
+
+    private TranslationWorker startWorker(String model) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(pythonExecutable);
+        command.add(getScriptPath(WORKER_SCRIPT));
+        command.add("--model");
+        command.add(model);
+        command.add("--max-batch-tokens");
+        command.add(String.valueOf(maxBatchTokens));
+
+        return new TranslationWorker(model, command, objectMapper,
+                startupTimeoutSeconds * 1000, requestTimeoutSeconds * 1000);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List<TranslationWorker> workers;
+        synchronized (this) {
+            shutdown = true;
+            workers = new ArrayList<>(idleWorkers);
+            idleWorkers.clear();
+            notifyAll();
+        }
+        workers.forEach(TranslationWorker::destroy);
+    }
+
+    private String getScriptPath(String scriptName) {
+        String resourcePath = "src/main/resources/python/" + scriptName;
+        File scriptFile = new File(resourcePath);
+
+        if (scriptFile.exists()) {
+            return scriptFile.getAbsolutePath();
+        }
+
+        return "python/" + scriptName;
+    }
+}
@@ -2,6 +2,7 @@ package com.koishman.telegram.translation.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.koishman.telegram.translation.model.SubtitleSegment;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -10,9 +11,15 @@ import org.springframework.stereotype.Service;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Service
@@ -20,6 +27,28 @@ import java.util.List;
 public class WhisperService {
 
     private final ObjectMapper objectMapper;
+    private final WhisperWorkerPool workerPool;
+    private final FFmpegService ffmpegService;
+
+    @Value("${translation.whisper.workers.enabled:true}")
+    private boolean workersEnabled;
+
+    @Value("${translation.whisper.chunking.enabled:true}")
+    private boolean chunkingEnabled;
+
+    @Value("${translation.whisper.chunking.threads-per-worker:4}")
+    private int threadsPerWorker;
+
+    @Value("${translation.whisper.chunking.min-chunk-seconds:300}")
+    private double minChunkSeconds;
+
+    @Value("${translation.whisper.chunking.silence-noise-db:-35}")
+    private double silenceNoiseDb;
+
+    @Value("${translation.whisper.chunking.silence-min-seconds:0.5}")
+    private double silenceMinSeconds;
+
+    private final AtomicInteger chunkThreadCounter = new AtomicInteger();
 
     @Value("${translation.python.executable:python3}")
     private String pythonExecutable;
@@ -33,104 +62,379 @@ public class WhisperService {
 
     public List<SubtitleSegment> transcribe(File audioFile, String modelSize, String language,
                                            String backend, boolean alignOutput) {
+        return transcribe(audioFile, modelSize, language, backend, alignOutput, segment -> { });
+    }
+
+    /**
+     * Transcribes in streaming mode: each segment is handed to {@code onSegment}
+     * as soon as it arrives. The callback runs on the calling thread, so a slow
+     * consumer holds back Whisper through the pipe instead of buffering
+     * segments in memory. Runs on a warm worker from {@link WhisperWorkerPool}
+     * unless {@code translation.whisper.workers.enabled} is off, in which case
+     * a one-shot script loads the model for this call only.
+     *
+     * @return all segments, once transcription has finished
+     */
+    public List<SubtitleSegment> transcribe(File audioFile, String modelSize, String language,
+                                           String backend, boolean alignOutput,
+                                           SegmentConsumer onSegment) {
         try {
-            // Select script based on backend
-            String scriptName = backend.equals("openai-whisper")
-                ? "openai_whisper_transcribe.py"
-                : "whisper_transcribe.py";
-            String scriptPath = getScriptPath(scriptName);
-
-            List<String> command = new ArrayList<>();
-            command.add(pythonExecutable);
-            command.add(scriptPath);
-            command.add(audioFile.getAbsolutePath());
-            command.add("--model");
-            command.add(modelSize);
-
-            if (language != null && !language.isEmpty()) {
-                command.add("--language");
-                command.add(language);
-            }
+            log.info("Starting Whisper transcription: backend={}, model={}, language={}, align={}, warm={}",
+                    backend, modelSize, language, alignOutput, workersEnabled);
 
-            if (alignOutput) {
-                command.add("--align");
-            }
+            List<SubtitleSegment> segments = workersEnabled
+                    ? transcribeWithWorker(audioFile, null, modelSize, language, backend, alignOutput, onSegment)
+                    : transcribeWithScript(audioFile, modelSize, language, backend, alignOutput, onSegment);
 
-            log.info("Starting Whisper transcription: backend={}, model={}, language={}, align={}",
+            log.info("Transcription completed: {} segments", segments.size());
+            return segments;
+
+        } catch (Exception e) {
+            log.error("Whisper transcription failed", e);
+            throw new RuntimeException("Transcription failed", e);
+        }
+    }
+
+    /**
+     * @return whether {@link #transcribeStream} is available, which needs the warm workers
+     */
+    public boolean supportsAudioStream() {
+        return workersEnabled;
+    }
+
+    /**
+     * Like {@link #transcribe(File, String, String, String, boolean, SegmentConsumer)}, but reads
+     * 16 kHz mono s16le PCM from {@code pcmAudio} and pipes it to the worker, without an audio file.
+     */
+    public List<SubtitleSegment> transcribeStream(InputStream pcmAudio, String modelSize, String language,
+                                                 String backend, boolean alignOutput,
+                                                 SegmentConsumer onSegment) {
+        if (!workersEnabled) {
+            throw new IllegalStateException("Piped audio requires translation.whisper.workers.enabled");
+        }
+
+        try {
+            log.info("Starting Whisper transcription of piped audio: backend={}, model={}, language={}, align={}",
                     backend, modelSize, language, alignOutput);
 
-            ProcessBuilder pb = new ProcessBuilder(command);
-            pb.redirectErrorStream(true);
+            List<SubtitleSegment> segments =
+                    transcribeWithWorker(null, pcmAudio, modelSize, language, backend, alignOutput, onSegment);
 
-            Process process = pb.start();
-            List<String> allOutput = new ArrayList<>();
-            int jsonStartIndex = -1;
+            log.info("Transcription completed: {} segments", segments.size());
+            return segments;
 
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    allOutput.add(line);
-                    log.debug("Whisper output: {}", line);
+        } catch (Exception e) {
+            log.error("Whisper transcription failed", e);
+            throw new RuntimeException("Transcription failed", e);
+        }
+    }
 
-                    // Mark the start of JSON output (look for any line starting with {)
-                    if (jsonStartIndex == -1 && line.trim().startsWith("{")) {
-                        jsonStartIndex = allOutput.size() - 1;
-                    }
-                }
-            }
+    /**
+     * @return whether {@link #transcribeChunked} is available, which needs the warm workers
+     */
+    public boolean supportsChunking() {
+        return workersEnabled && chunkingEnabled;
+    }
 
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                throw new RuntimeException("Whisper transcription failed with exit code: " + exitCode +
-                    "\nOutput: " + String.join("\n", allOutput));
-            }
+    /**
+     * Transcribes long media in parallel. The audio is cut into chunks at
+     * silences near evenly spaced points, each chunk is decoded by its own
+     * ffmpeg process and transcribed on its own worker limited to
+     * {@code translation.whisper.chunking.threads-per-worker} CPU threads, and
+     * the segments are merged back with shifted timestamps and renumbered
+     * indices. The chunk count scales with the available cores, the workers
+     * that fit in the RAM budget, and the duration; short media runs as one chunk.
+     * Segments reach {@code onSegment} in order, on the calling thread.
+     *
+     * @param durationSeconds duration of the media, used to plan the chunks
+     */
+    public List<SubtitleSegment> transcribeChunked(File mediaFile, Integer audioTrackIndex, double durationSeconds,
+                                                  String modelSize, String language, String backend,
+                                                  boolean alignOutput, SegmentConsumer onSegment) {
+        if (!supportsChunking()) {
+            throw new IllegalStateException("Chunked transcription requires translation.whisper.workers.enabled");
+        }
+
+        int parallelism = Math.max(1, Math.min(
+                Runtime.getRuntime().availableProcessors() / Math.max(1, threadsPerWorker),
+                workerPool.maxConcurrentWorkers(modelSize)));
+        List<double[]> chunks = planChunks(mediaFile, audioTrackIndex, durationSeconds, parallelism);
 
-            // Extract JSON from the output (everything from the opening { to the end)
-            if (jsonStartIndex == -1) {
-                throw new RuntimeException("No JSON output found in Whisper output. Full output:\n" +
-                    String.join("\n", allOutput));
+        if (chunks.size() == 1) {
+            // Nothing to split: stream segments as they come, with the worker's default threads
+            return ffmpegService.streamAudio(mediaFile, audioTrackIndex, pcm ->
+                    transcribeStream(pcm, modelSize, language, backend, alignOutput, onSegment));
+        }
+
+        log.info("Starting chunked Whisper transcription: backend={}, model={}, language={}, align={}, " +
+                        "chunks={}, parallelism={}, threadsPerWorker={}",
+                backend, modelSize, language, alignOutput, chunks.size(), parallelism, threadsPerWorker);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, chunks.size()), runnable -> {
+            Thread thread = new Thread(runnable, "whisper-chunk-" + chunkThreadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<List<SubtitleSegment>>> futures = new ArrayList<>();
+
+        try {
+            String chunkLanguage = language != null && !language.isEmpty() ? language : null;
+            if (chunkLanguage == null && chunks.size() > 1) {
+                // Chunks detecting their language independently could disagree
+                chunkLanguage = detectLanguage(mediaFile, audioTrackIndex, modelSize, backend);
+                log.info("Detected language {} for chunked transcription", chunkLanguage);
             }
 
-            // Collect all lines from the JSON start to the end
-            StringBuilder jsonBuilder = new StringBuilder();
-            for (int i = jsonStartIndex; i < allOutput.size(); i++) {
-                jsonBuilder.append(allOutput.get(i)).append("\n");
+            for (double[] chunk : chunks) {
+                String lang = chunkLanguage;
+                futures.add(executor.submit(() ->
+                        transcribeChunk(mediaFile, audioTrackIndex, chunk, modelSize, lang, backend, alignOutput)));
             }
-            String jsonResult = jsonBuilder.toString().trim();
-
-            // Parse JSON output
-            JsonNode result;
-            try {
-                result = objectMapper.readTree(jsonResult);
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to parse JSON output. JSON:\n" + jsonResult +
-                    "\nFull output:\n" + String.join("\n", allOutput), e);
+
+            // Merge in chunk order, so segments come out in order however the chunks finish
+            List<SubtitleSegment> segments = new ArrayList<>();
+            for (int i = 0; i < chunks.size(); i++) {
+                double offset = chunks.get(i)[0];
+                for (SubtitleSegment chunkSegment : futures.get(i).get()) {
+                    SubtitleSegment segment = new SubtitleSegment(
+                            segments.size() + 1,
+                            chunkSegment.getStartTime() + offset,
+                            chunkSegment.getEndTime() + offset,
+                            chunkSegment.getText()
+                    );
+                    segments.add(segment);
+                    onSegment.accept(segment);
+                }
             }
 
-            if (result.has("error")) {
-                throw new RuntimeException("Whisper error: " + result.get("error").asText());
+            log.info("Transcription completed: {} segments from {} chunks", segments.size(), chunks.size());
+            return segments;
+
+        } catch (Exception e) {
+            futures.forEach(future -> future.cancel(true));
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            log.error("Whisper transcription failed", cause);
+            throw new RuntimeException("Transcription failed", cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return [start, end) of each chunk in seconds; the last chunk's end is
+     * {@link Double#NaN}, meaning up to the end of the media
+     */
+    private List<double[]> planChunks(File mediaFile, Integer audioTrackIndex, double durationSeconds,
+                                      int parallelism) {
+        List<double[]> chunks = new ArrayList<>();
+
+        // Twice as many chunks as workers evens out chunks that transcribe slower than others
+        int count = (int) Math.min(parallelism * 2L, (long) Math.floor(durationSeconds / minChunkSeconds));
+        if (count <= 1) {
+            chunks.add(new double[]{0, Double.NaN});
+            return chunks;
+        }
+
+        List<Double> silences = ffmpegService.detectSilences(mediaFile, audioTrackIndex,
+                silenceNoiseDb, silenceMinSeconds);
+        double chunkLength = durationSeconds / count;
+        double start = 0;
+
+        for (int i = 1; i < count; i++) {
+            double target = i * chunkLength;
+            double cut = target;
+            // Only move a cut to a silence close enough to keep chunks roughly even
+            double bestDistance = chunkLength / 4;
+            for (double silence : silences) {
+                double distance = Math.abs(silence - target);
+                if (silence > start && distance < bestDistance) {
+                    bestDistance = distance;
+                    cut = silence;
+                }
             }
+            chunks.add(new double[]{start, cut});
+            start = cut;
+        }
+        chunks.add(new double[]{start, Double.NaN});
 
+        return chunks;
+    }
+
+    private List<SubtitleSegment> transcribeChunk(File mediaFile, Integer audioTrackIndex, double[] chunk,
+                                                  String modelSize, String language, String backend,
+                                                  boolean alignOutput) {
+        Double duration = Double.isNaN(chunk[1]) ? null : chunk[1] - chunk[0];
+        return ffmpegService.streamAudio(mediaFile, audioTrackIndex, chunk[0], duration, pcm -> {
             List<SubtitleSegment> segments = new ArrayList<>();
-            JsonNode segmentsNode = result.get("segments");
-            int index = 1;
-
-            for (JsonNode segmentNode : segmentsNode) {
-                SubtitleSegment segment = new SubtitleSegment(
-                        index++,
-                        segmentNode.get("start").asDouble(),
-                        segmentNode.get("end").asDouble(),
-                        segmentNode.get("text").asText()
-                );
-                segments.add(segment);
+            runOnWorker(null, pcm, threadsPerWorker, modelSize, language, backend, alignOutput, segments::add);
+            return segments;
+        });
+    }
+
+    private String detectLanguage(File mediaFile, Integer audioTrackIndex, String modelSize, String backend) {
+        // Whisper detects the language from the first 30 seconds
+        return ffmpegService.streamAudio(mediaFile, audioTrackIndex, 0.0, 30.0, pcm -> {
+            ObjectNode request = objectMapper.createObjectNode();
+            request.put("detect_language", true);
+            JsonNode result = workerPool.transcribe(backend, modelSize, threadsPerWorker, request, pcm, event -> { });
+
+            if ("error".equals(result.path("type").asText())) {
+                throw new RuntimeException("Whisper error: " + result.path("error").asText());
             }
+            return result.path("language").asText(null);
+        });
+    }
 
-            log.info("Transcription completed: {} segments", segments.size());
-            return segments;
+    private List<SubtitleSegment> transcribeWithWorker(File audioFile, InputStream pcmAudio, String modelSize,
+                                                       String language, String backend, boolean alignOutput,
+                                                       SegmentConsumer onSegment) throws InterruptedException {
+        List<SubtitleSegment> segments = new ArrayList<>();
+        runOnWorker(audioFile, pcmAudio, 0, modelSize, language, backend, alignOutput, segment -> {
+            segments.add(segment);
+            onSegment.accept(segment);
+        });
+        return segments;
+    }
+
+    /**
+     * @return the language Whisper detected or was given
+     */
+    private String runOnWorker(File audioFile, InputStream pcmAudio, int threads, String modelSize,
+                               String language, String backend, boolean alignOutput,
+                               SegmentConsumer onSegment) throws InterruptedException {
+        ObjectNode request = objectMapper.createObjectNode();
+        if (audioFile != null) {
+            request.put("audio_file", audioFile.getAbsolutePath());
+        }
+        request.put("language", language != null && !language.isEmpty() ? language : null);
+        request.put("align", alignOutput);
+
+        AtomicInteger index = new AtomicInteger();
+        JsonNode result = workerPool.transcribe(backend, modelSize, threads, request, pcmAudio, event ->
+                onSegment.accept(toSegment(event, index.incrementAndGet())));
+
+        if ("error".equals(result.path("type").asText())) {
+            throw new RuntimeException("Whisper error: " + result.path("error").asText());
+        }
+        String detected = result.path("language").asText(null);
+        log.debug("Whisper detected language: {}", detected);
+        return detected;
+    }
+
+    private List<SubtitleSegment> transcribeWithScript(File audioFile, String modelSize, String language,
+                                                       String backend, boolean alignOutput,
+                                                       SegmentConsumer onSegment) throws Exception {
+        // Select script based on backend
+        String scriptName = backend.equals("openai-whisper")
+            ? "openai_whisper_transcribe.py"
+            : "whisper_transcribe.py";
+        String scriptPath = getScriptPath(scriptName);
+
+        List<String> command = new ArrayList<>();
+        command.add(pythonExecutable);
+        command.add(scriptPath);
+        command.add(audioFile.getAbsolutePath());
+        command.add("--model");
+        command.add(modelSize);
+        command.add("--stream");
+
+        if (language != null && !language.isEmpty()) {
+            command.add("--language");
+            command.add(language);
+        }
 
+        if (alignOutput) {
+            command.add("--align");
+        }
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        pb.redirectErrorStream(true);
+
+        Process process = pb.start();
+        List<String> diagnostics = new ArrayList<>();
+        List<SubtitleSegment> segments = new ArrayList<>();
+        String error = null;
+        boolean done = false;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonNode event = parseEvent(line);
+                if (event == null) {
+                    diagnostics.add(line);
+                    log.debug("Whisper output: {}", line);
+                    continue;
+                }
+
+                switch (event.get("type").asText()) {
+                    case "segment":
+                        SubtitleSegment segment = toSegment(event, segments.size() + 1);
+                        segments.add(segment);
+                        onSegment.accept(segment);
+                        break;
+                    case "done":
+                        done = true;
+                        log.debug("Whisper detected language: {}", event.path("language").asText());
+                        break;
+                    case "error":
+                        error = event.path("error").asText();
+                        break;
+                    default:
+                        log.debug("Unknown Whisper event: {}", line);
+                }
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            // The consumer gave up, don't leave the script running
+            process.destroy();
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw e;
+        }
+
+        int exitCode = process.waitFor();
+        if (error != null) {
+            throw new RuntimeException("Whisper error: " + error);
+        }
+        if (exitCode != 0) {
+            throw new RuntimeException("Whisper transcription failed with exit code: " + exitCode +
+                "\nOutput: " + String.join("\n", diagnostics));
+        }
+        if (!done) {
+            throw new RuntimeException("Whisper transcription ended without a result. Full output:\n" +
+                String.join("\n", diagnostics));
+        }
+
+        return segments;
+    }
+
+    private SubtitleSegment toSegment(JsonNode event, int index) {
+        return new SubtitleSegment(
+                index,
+                event.get("start").asDouble(),
+                event.get("end").asDouble(),
+                event.get("text").asText()
+        );
+    }
+
+    /**
+     * Receives transcribed segments as they are produced. May block to apply backpressure.
+     */
+    @FunctionalInterface
+    public interface SegmentConsumer {
+        void accept(SubtitleSegment segment) throws InterruptedException;
+    }
+
+    private JsonNode parseEvent(String line) {
+        String trimmed = line.trim();
+        if (!trimmed.startsWith("{")) {
+            return null;
+        }
+        try {
+            JsonNode node = objectMapper.readTree(trimmed);
+            return node.has("type") ? node : null;
         } catch (Exception e) {
-            log.error("Whisper transcription failed", e);
-            throw new RuntimeException("Transcription failed", e);
+            return null;
         }
     }
 
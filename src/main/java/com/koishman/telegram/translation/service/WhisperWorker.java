@@ -0,0 +1,205 @@
+package com.koishman.telegram.translation.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A long-lived whisper_worker.py process that keeps one Whisper model (and
+ * the alignment models it has used) loaded and answers transcription requests
+ * with a stream of segment lines followed by a done or error line. A worker
+ * that doesn't load within its startup timeout, or goes longer than its idle
+ * timeout without reading audio or producing a line, is killed, and the
+ * request fails with an IOException.
+ * Instances are not thread-safe; {@link WhisperWorkerPool} hands each worker
+ * to a single caller at a time.
+ */
+@Slf4j
+class WhisperWorker {
+
+    private static final int AUDIO_FRAME_BYTES = 64 * 1024;
+
+    private final String key;
+    private final int estimatedMemoryMb;
+    private final Process process;
+    private final DataOutputStream rawStdin;
+    private final BufferedWriter stdin;
+    private final BufferedReader stdout;
+    private final ObjectMapper objectMapper;
+    private final long startupTimeoutMs;
+    private final long idleTimeoutMs;
+    private final AtomicLong requestIds = new AtomicLong();
+    private boolean ready;
+
+    WhisperWorker(String key, int estimatedMemoryMb, List<String> command, ObjectMapper objectMapper,
+                  long startupTimeoutMs, long idleTimeoutMs) throws IOException {
+        this.key = key;
+        this.estimatedMemoryMb = estimatedMemoryMb;
+        this.objectMapper = objectMapper;
+        this.startupTimeoutMs = startupTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+
+        ProcessBuilder pb = new ProcessBuilder(command);
+        this.process = pb.start();
+        this.rawStdin = new DataOutputStream(new BufferedOutputStream(process.getOutputStream(), AUDIO_FRAME_BYTES + 4));
+        this.stdin = new BufferedWriter(new OutputStreamWriter(rawStdin, StandardCharsets.UTF_8));
+        this.stdout = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+
+        Thread stderrDrain = new Thread(this::drainStderr, "whisper-worker-" + key + "-stderr");
+        stderrDrain.setDaemon(true);
+        stderrDrain.start();
+
+        log.info("Started {} whisper worker (pid: {})", key, process.pid());
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    int getEstimatedMemoryMb() {
+        return estimatedMemoryMb;
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /**
+     * Sends one request and passes every segment line to {@code onSegment}
+     * until the request finishes. Waits for the model to load on first use.
+     *
+     * @param audio 16 kHz mono s16le PCM to transcribe instead of a file, or null
+     * @return the final done or error line
+     * @throws IOException if the worker process died, timed out or broke the protocol
+     */
+    JsonNode transcribe(ObjectNode request, InputStream audio, WhisperWorkerPool.EventHandler onSegment)
+            throws IOException, InterruptedException {
+        if (!ready) {
+            awaitReady();
+        }
+
+        long requestId = requestIds.incrementAndGet();
+        request.put("id", requestId);
+        if (audio != null) {
+            request.put("audio_stream", true);
+        }
+
+        try (WorkerDeadline deadline = new WorkerDeadline(process, idleTimeoutMs)) {
+            try {
+                stdin.write(objectMapper.writeValueAsString(request));
+                stdin.newLine();
+                stdin.flush();
+
+                if (audio != null) {
+                    writeAudio(audio, deadline);
+                }
+
+                while (true) {
+                    JsonNode event = readLine();
+                    deadline.progress();
+                    if (event.path("id").asLong(-1) != requestId) {
+                        throw new IOException("Whisper worker answered out of order: expected id " + requestId +
+                                ", got " + event);
+                    }
+                    if (!"segment".equals(event.path("type").asText())) {
+                        return event;
+                    }
+                    // Time a backpressured handler blocks is not the worker's
+                    deadline.pause();
+                    try {
+                        onSegment.accept(event);
+                    } finally {
+                        deadline.resume();
+                    }
+                }
+            } catch (IOException e) {
+                throw deadline.isExpired() ? timedOut("make progress", deadline, e) : e;
+            }
+        }
+    }
+
+    private void writeAudio(InputStream audio, WorkerDeadline deadline) throws IOException {
+        // Length-prefixed frames, ended by an empty frame, keep the line protocol in sync
+        byte[] buffer = new byte[AUDIO_FRAME_BYTES];
+        int read;
+        while ((read = audio.read(buffer)) != -1) {
+            if (read > 0) {
+                rawStdin.writeInt(read);
+                rawStdin.write(buffer, 0, read);
+                deadline.progress();
+            }
+        }
+        rawStdin.writeInt(0);
+        rawStdin.flush();
+    }
+
+    void destroy() {
+        try {
+            stdin.close();
+        } catch (IOException e) {
+            log.debug("Failed to close whisper worker stdin", e);
+        }
+        process.destroy();
+        log.info("Stopped {} whisper worker (pid: {})", key, process.pid());
+    }
+
+    private void awaitReady() throws IOException {
+        JsonNode response;
+        try (WorkerDeadline deadline = new WorkerDeadline(process, startupTimeoutMs)) {
+            try {
+                response = readLine();
+            } catch (IOException e) {
+                throw deadline.isExpired() ? timedOut("load " + key, deadline, e) : e;
+            }
+        }
+        if (!response.path("ready").asBoolean(false)) {
+            throw new IOException("Whisper worker failed to load " + key + ": " +
+                    response.path("error").asText("unknown error"));
+        }
+        ready = true;
+        log.info("{} whisper worker ready (pid: {})", key, process.pid());
+    }
+
+    private JsonNode readLine() throws IOException {
+        String line;
+        while ((line = stdout.readLine()) != null) {
+            String trimmed = line.trim();
+            // Libraries occasionally print to stdout; only JSON lines belong to the protocol
+            if (trimmed.startsWith("{")) {
+                return objectMapper.readTree(trimmed);
+            }
+            log.debug("Whisper worker output: {}", line);
+        }
+        throw new IOException("Whisper worker exited (pid: " + process.pid() + ")");
+    }
+
+    private IOException timedOut(String what, WorkerDeadline deadline, IOException cause) {
+        return new IOException("Whisper worker (pid: " + process.pid() + ") did not " + what +
+                " within " + deadline.getTimeoutMs() + "ms", cause);
+    }
+
+    private void drainStderr() {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                log.debug("Whisper worker [{}]: {}", key, line);
+            }
+        } catch (IOException e) {
+            log.debug("Whisper worker stderr closed", e);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.koishman.telegram.translation.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pool of warm Whisper workers keyed by (backend, model size, CPU threads). A worker keeps
+ * its ASR model and the alignment models it has used loaded between jobs, so
+ * a transcription only pays for inference. Idle workers stay resident until
+ * the estimated memory of all workers would exceed
+ * {@code translation.whisper.workers.ram-budget-mb}; then the least recently
+ * used idle workers are stopped to make room.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WhisperWorkerPool {
+
+    private static final String WORKER_SCRIPT = "whisper_worker.py";
+
+    // Approximate memory per model size, from OpenAI Whisper's published requirements.
+    // faster-whisper's int8 models need less, so this errs on the side of evicting early.
+    private static final Map<String, Integer> MODEL_MEMORY_MB = new LinkedHashMap<>();
+    static {
+        MODEL_MEMORY_MB.put("large", 10240);
+        MODEL_MEMORY_MB.put("turbo", 6144);
+        MODEL_MEMORY_MB.put("medium", 5120);
+        MODEL_MEMORY_MB.put("small", 2048);
+        MODEL_MEMORY_MB.put("base", 1024);
+        MODEL_MEMORY_MB.put("tiny", 1024);
+    }
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${translation.python.executable:python3}")
+    private String pythonExecutable;
+
+    @Value("${translation.whisper.workers.ram-budget-mb:12288}")
+    private int ramBudgetMb;
+
+    @Value("${translation.whisper.workers.max-restarts:1}")
+    private int maxRestarts;
+
+    @Value("${translation.whisper.workers.startup-timeout-seconds:900}")
+    private long startupTimeoutSeconds;
+
+    @Value("${translation.whisper.workers.idle-timeout-seconds:1800}")
+    private long idleTimeoutSeconds;
+
+    // Most recently used first; guarded by this
+    private final Deque<WhisperWorker> idleWorkers = new ArrayDeque<>();
+    // Estimated memory of workers handed out or being started; guarded by this
+    private int busyMemoryMb;
+    private boolean shutdown;
+
+    /**
+     * Receives segment lines while a request is running. May block to apply backpressure.
+     */
+    @FunctionalInterface
+    public interface EventHandler {
+        void accept(JsonNode event) throws InterruptedException;
+    }
+
+    /**
+     * Runs a transcription request on a worker for the given backend and model,
+     * passing each segment line to {@code onSegment} as it arrives. A worker
+     * that crashes, or goes {@code translation.whisper.workers.idle-timeout-seconds}
+     * without progress, before producing any segment is replaced and the request
+     * retried, up to {@code translation.whisper.workers.max-restarts} times.
+     * Requests with piped audio are not retried, since the stream can't be replayed.
+     *
+     * @param threads CPU threads the worker may use for inference, or 0 for the library default
+     * @param audio 16 kHz mono s16le PCM to transcribe instead of a file, or null
+     * @return the final done or error line
+     */
+    public JsonNode transcribe(String backend, String model, int threads, ObjectNode request, InputStream audio,
+                               EventHandler onSegment) throws InterruptedException {
+        String key = threads > 0 ? backend + ":" + model + ":" + threads + "t" : backend + ":" + model;
+
+        for (int attempt = 0; ; attempt++) {
+            WhisperWorker worker = acquire(backend, model, threads, key);
+            boolean[] delivered = {false};
+            JsonNode result;
+            try {
+                result = worker.transcribe(request.deepCopy(), audio, event -> {
+                    delivered[0] = true;
+                    onSegment.accept(event);
+                });
+            } catch (IOException e) {
+                discard(worker);
+                if (delivered[0] || audio != null || attempt >= maxRestarts) {
+                    throw new RuntimeException("Whisper worker failed after " + (attempt + 1) + " attempts", e);
+                }
+                log.warn("Whisper worker for {} failed, restarting (attempt {}/{}): {}",
+                        key, attempt + 1, maxRestarts, e.getMessage());
+                continue;
+            } catch (InterruptedException | RuntimeException e) {
+                // The rest of the response is still in the pipe, so the worker can't be reused
+                discard(worker);
+                throw e;
+            }
+            release(worker);
+            return result;
+        }
+    }
+
+    /**
+     * @return how many workers for this model fit in the RAM budget at once
+     */
+    public int maxConcurrentWorkers(String model) {
+        return Math.max(1, ramBudgetMb / estimateMemoryMb(model));
+    }
+
+    private WhisperWorker acquire(String backend, String model, int threads, String key) {
+        int memoryMb = estimateMemoryMb(model);
+        List<WhisperWorker> evicted = new ArrayList<>();
+
+        synchronized (this) {
+            while (true) {
+                if (shutdown) {
+                    throw new IllegalStateException("Whisper worker pool is shut down");
+                }
+
+                Iterator<WhisperWorker> it = idleWorkers.iterator();
+                while (it.hasNext()) {
+                    WhisperWorker worker = it.next();
+                    if (!worker.isAlive()) {
+                        log.warn("Dropping dead {} whisper worker", worker.getKey());
+                        it.remove();
+                    } else if (worker.getKey().equals(key)) {
+                        it.remove();
+                        busyMemoryMb += worker.getEstimatedMemoryMb();
+                        return worker;
+                    }
+                }
+
+                // Busy workers can't be evicted; wait for them unless nothing else is running
+                if (busyMemoryMb + memoryMb <= ramBudgetMb || busyMemoryMb == 0) {
+                    int usedMb = busyMemoryMb + idleMemoryMb();
+                    while (usedMb + memoryMb > ramBudgetMb && !idleWorkers.isEmpty()) {
+                        WhisperWorker lru = idleWorkers.pollLast();
+                        usedMb -= lru.getEstimatedMemoryMb();
+                        evicted.add(lru);
+                    }
+                    if (memoryMb > ramBudgetMb) {
+                        log.warn("Whisper model {} (~{} MB) exceeds the worker RAM budget of {} MB",
+                                key, memoryMb, ramBudgetMb);
+                    }
+                    busyMemoryMb += memoryMb;
+                    break;
+                }
+
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for a whisper worker", e);
+                }
+            }
+        }
+
+        for (WhisperWorker worker : evicted) {
+            log.info("Evicting idle {} whisper worker to load {}", worker.getKey(), key);
+            worker.destroy();
+        }
+
+        try {
+            return startWorker(backend, model, threads, key, memoryMb);
+        } catch (IOException e) {
+            synchronized (this) {
+                busyMemoryMb -= memoryMb;
+                notifyAll();
+            }
+            throw new RuntimeException("Failed to start whisper worker for " + key, e);
+        }
+    }
+
+    private void release(WhisperWorker worker) {
+        synchronized (this) {
+            busyMemoryMb -= worker.getEstimatedMemoryMb();
+            if (!shutdown && worker.isAlive()) {
+                idleWorkers.addFirst(worker);
+                notifyAll();
+                return;
+            }
+            notifyAll();
+        }
+        worker.destroy();
+    }
+
+    private void discard(WhisperWorker worker) {
+        worker.destroy();
+        synchronized (this) {
+            busyMemoryMb -= worker.getEstimatedMemoryMb();
+            notifyAll();
+        }
+    }
+
+    private int idleMemoryMb() {
+        return idleWorkers.stream().mapToInt(WhisperWorker::getEstimatedMemoryMb).sum();
+    }
+
+    private int estimateMemoryMb(String model) {
+        String name = model.toLowerCase();
+        for (Map.Entry<String, Integer> entry : MODEL_MEMORY_MB.entrySet()) {
+            if (name.contains(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return MODEL_MEMORY_MB.get("large");
+    }
+
+    private WhisperWorker startWorker(String backend, String model, int threads, String key, int memoryMb)
+            throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(pythonExecutable);
+        command.add(getScriptPath(WORKER_SCRIPT));
+        command.add("--backend");
+        command.add(backend);
+        command.add("--model");
+        command.add(model);
+        if (threads > 0) {
+            command.add("--threads");
+            command.add(String.valueOf(threads));
+        }
+
+        return new WhisperWorker(key, memoryMb, command, objectMapper,
+                startupTimeoutSeconds * 1000, idleTimeoutSeconds * 1000);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        List<WhisperWorker> workers;
+        synchronized (this) {
+            shutdown = true;
+            workers = new ArrayList<>(idleWorkers);
+            idleWorkers.clear();
+            notifyAll();
+        }
+        workers.forEach(WhisperWorker::destroy);
+    }
+
+    private String getScriptPath(String scriptName) {
+        String resourcePath = "src/main/resources/python/" + scriptName;
+        File scriptFile = new File(resourcePath);
+
+        if (scriptFile.exists()) {
+            return scriptFile.getAbsolutePath();
+        }
+
+        return "python/" + scriptName;
+    }
+}
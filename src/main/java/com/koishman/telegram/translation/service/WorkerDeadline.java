@@ -0,0 +1,100 @@
+package com.koishman.telegram.translation.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kills a worker process that makes no progress on a request for longer than
+ * its timeout, so a caller blocked reading the worker's stdout gets
+ * end-of-stream instead of waiting forever, and the pool restarts the worker.
+ * The timeout starts over on every {@link #progress()} and doesn't run while
+ * {@link #pause() paused}, i.e. while the caller rather than the worker is busy.
+ */
+@Slf4j
+class WorkerDeadline implements AutoCloseable {
+
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "worker-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Process process;
+    private final long timeoutMs;
+    private volatile long lastProgressNanos = System.nanoTime();
+    private volatile boolean paused;
+    private volatile boolean expired;
+    // Guarded by this
+    private boolean closed;
+    private ScheduledFuture<?> check;
+
+    /**
+     * @param timeoutMs how long the worker may go without progress, or 0 for no limit
+     */
+    WorkerDeadline(Process process, long timeoutMs) {
+        this.process = process;
+        this.timeoutMs = timeoutMs;
+        if (timeoutMs > 0) {
+            schedule(TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+        }
+    }
+
+    void progress() {
+        lastProgressNanos = System.nanoTime();
+    }
+
+    void pause() {
+        paused = true;
+    }
+
+    void resume() {
+        lastProgressNanos = System.nanoTime();
+        paused = false;
+    }
+
+    /**
+     * @return whether the worker was killed for missing the deadline
+     */
+    boolean isExpired() {
+        return expired;
+    }
+
+    long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (check != null) {
+            check.cancel(false);
+        }
+    }
+
+    private synchronized void schedule(long delayNanos) {
+        if (!closed) {
+            check = WATCHDOG.schedule(this::check, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void check() {
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        long idleNanos = System.nanoTime() - lastProgressNanos;
+        if (paused || idleNanos < timeoutNanos) {
+            schedule(paused ? timeoutNanos : timeoutNanos - idleNanos);
+            return;
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            expired = true;
+        }
+        log.warn("Worker (pid: {}) made no progress for {}ms, killing it", process.pid(), timeoutMs);
+        process.destroyForcibly();
+    }
+}
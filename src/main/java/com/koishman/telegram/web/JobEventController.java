@@ -0,0 +1,40 @@
+package com.koishman.telegram.web;
+
+import com.koishman.telegram.config.TelegramBotConfig;
+import com.koishman.telegram.service.EnhancedTelegramBotService;
+import com.koishman.telegram.translation.model.JobEvent;
+import com.koishman.telegram.translation.service.JobCallbackNotifier;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Callback endpoint for a remote translation service, which POSTs the
+ * lifecycle events of jobs the bot submitted with
+ * {@code telegram.job-callback-url} pointing here.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/telegram")
+@RequiredArgsConstructor
+public class JobEventController {
+
+    private final EnhancedTelegramBotService botService;
+    private final TelegramBotConfig config;
+
+    @PostMapping("/job-events")
+    public ResponseEntity<Void> onJobEvent(@RequestBody JobEvent event,
+                                           @RequestHeader(value = JobCallbackNotifier.SECRET_HEADER, required = false) String secret) {
+        if (config.getWebhookSecret() != null && !config.getWebhookSecret().equals(secret)) {
+            log.warn("Rejected job event for {} with a wrong callback secret", event.getJobId());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        log.debug("Job event received: {} {}", event.getJobId(), event.getType());
+        // Handled asynchronously, so the translation service isn't held up by file delivery
+        botService.onJobEvent(event);
+        return ResponseEntity.ok().build();
+    }
+}
@@ -0,0 +1,35 @@
+package com.koishman.telegram.web;
+
+import com.koishman.telegram.config.HttpClientFactory;
+import com.koishman.telegram.service.TelegramFileIdCache;
+import com.koishman.telegram.service.TelegramOutboundScheduler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/telegram")
+@RequiredArgsConstructor
+public class TelegramStatsController {
+
+    private final TelegramOutboundScheduler outboundScheduler;
+    private final HttpClientFactory httpClients;
+    private final TelegramFileIdCache fileIdCache;
+
+    @GetMapping("/outbound/stats")
+    public ResponseEntity<?> getOutboundStats() {
+        return ResponseEntity.ok(outboundScheduler.getStats());
+    }
+
+    @GetMapping("/http/stats")
+    public ResponseEntity<?> getHttpClientStats() {
+        return ResponseEntity.ok(httpClients.getStats());
+    }
+
+    @GetMapping("/file-cache/stats")
+    public ResponseEntity<?> getFileCacheStats() {
+        return ResponseEntity.ok(fileIdCache.getStats());
+    }
+}
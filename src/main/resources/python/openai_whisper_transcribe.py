@@ -1,24 +1,28 @@
 #!/usr/bin/env python3
 """
 OpenAI Whisper transcription with optional WhisperX alignment
+
+With --stream, prints one JSON line per segment followed by a
+{"type": "done"} line, matching whisper_transcribe.py. OpenAI Whisper
+transcribes the whole file before returning, so lines arrive together.
 """
 import argparse
 import json
 import sys
 import os
 
-def transcribe(audio_path, model_size="large", language=None, align_output=True):
+def load_model(model_size, threads=0):
     """
-    Transcribe audio using OpenAI Whisper with optional alignment
+    Load an OpenAI Whisper model on the best available device
+
+    Returns:
+        (model, device)
     """
-    try:
-        import whisper
-        import whisperx
-        import torch
-    except ImportError as e:
-        print(f"Error: Required library not found: {e}", file=sys.stderr)
-        print("Install with: pip install openai-whisper whisperx", file=sys.stderr)
-        sys.exit(1)
+    import whisper
+    import torch
+
+    if threads > 0:
+        torch.set_num_threads(threads)
 
     # Determine device
     device = "cuda" if torch.cuda.is_available() else "cpu"
@@ -26,10 +30,35 @@ def transcribe(audio_path, model_size="large", language=None, align_output=True)
 
     # Load OpenAI Whisper model
     print(f"Loading OpenAI Whisper model: {model_size}", file=sys.stderr)
-    model = whisper.load_model(model_size, device=device)
+    return whisper.load_model(model_size, device=device), device
+
+
+def detect_language(model, audio):
+    """Detect the spoken language from the first 30 seconds of a file or float32 sample array"""
+    import whisper
+
+    if isinstance(audio, str):
+        audio = whisper.load_audio(audio)
+    audio = whisper.pad_or_trim(audio)
+    n_mels = getattr(model.dims, "n_mels", 80)
+    mel = whisper.log_mel_spectrogram(audio, n_mels).to(model.device)
+    _, probs = model.detect_language(mel)
+    return max(probs, key=probs.get)
+
+
+def transcribe_with_model(model, device, audio_path, language=None, align_output=True, align_models=None):
+    """
+    Transcribe audio with an already loaded model
+
+    Args:
+        audio_path: path to an audio file, or a float32 numpy array of 16 kHz mono samples
+        align_models: optional dict that keeps alignment models by language
+            between calls, used by the resident worker
+    """
+    import whisperx
 
     # Transcribe
-    print(f"Transcribing: {audio_path}", file=sys.stderr)
+    print(f"Transcribing: {audio_path if isinstance(audio_path, str) else 'piped audio'}", file=sys.stderr)
     result = model.transcribe(audio_path, language=language)
     detected_lang = result.get("language", language)
     print(f"Detected language: {detected_lang}", file=sys.stderr)
@@ -40,10 +69,16 @@ def transcribe(audio_path, model_size="large", language=None, align_output=True)
     if align_output:
         try:
             print("Applying WhisperX alignment...", file=sys.stderr)
-            model_a, metadata = whisperx.load_align_model(
-                language_code=detected_lang or "und",
-                device=device
-            )
+            align_lang = detected_lang or "und"
+            if align_models is not None and align_lang in align_models:
+                model_a, metadata = align_models[align_lang]
+            else:
+                model_a, metadata = whisperx.load_align_model(
+                    language_code=align_lang,
+                    device=device
+                )
+                if align_models is not None:
+                    align_models[align_lang] = (model_a, metadata)
             aligned_result = whisperx.align(
                 segments,
                 model_a,
@@ -72,12 +107,28 @@ def transcribe(audio_path, model_size="large", language=None, align_output=True)
     }
 
 
+def transcribe(audio_path, model_size="large", language=None, align_output=True):
+    """
+    Transcribe audio using OpenAI Whisper with optional alignment
+    """
+    try:
+        import whisperx  # noqa: F401
+        model, device = load_model(model_size)
+    except ImportError as e:
+        print(f"Error: Required library not found: {e}", file=sys.stderr)
+        print("Install with: pip install openai-whisper whisperx", file=sys.stderr)
+        sys.exit(1)
+
+    return transcribe_with_model(model, device, audio_path, language, align_output)
+
+
 def main():
     parser = argparse.ArgumentParser(description="Transcribe audio using OpenAI Whisper")
     parser.add_argument("audio_file", help="Path to audio file")
     parser.add_argument("--model", default="large", help="Model size (tiny, base, small, medium, large)")
     parser.add_argument("--language", default=None, help="Language code (optional, for auto-detect leave empty)")
     parser.add_argument("--align", action="store_true", help="Enable WhisperX alignment")
+    parser.add_argument("--stream", action="store_true", help="Print one JSON line per segment")
 
     args = parser.parse_args()
 
@@ -92,6 +143,12 @@ def main():
         align_output=args.align
     )
 
+    if args.stream:
+        for segment in result["segments"]:
+            print(json.dumps(dict(segment, type="segment"), ensure_ascii=False), flush=True)
+        print(json.dumps({"type": "done", "language": result["language"]}, ensure_ascii=False), flush=True)
+        return
+
     # Output JSON result
     print(json.dumps(result, indent=2, ensure_ascii=False))
 
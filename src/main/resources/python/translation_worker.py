@@ -0,0 +1,156 @@
+#!/usr/bin/env python3
+"""
+Persistent translation worker
+Loads an M2M100 or NLLB model once and serves translation requests
+over a line-delimited JSON protocol on stdin/stdout.
+
+Request:  {"id": 1, "text": "Hello", "src": "en", "tgt": "es"}
+Response: {"id": 1, "translated": "Hola"}
+
+Batch:    {"id": 2, "texts": ["Hello", "Thank you."], "src": "en", "tgt": "es"}
+Response: {"id": 2, "translations": ["Hola", "Gracias."]}
+
+Error:    {"id": 1, "error": "..."}
+
+Diagnostics go to stderr so stdout only ever carries protocol lines.
+"""
+import sys
+import json
+import argparse
+
+M2M100_MODEL = "facebook/m2m100_418M"
+NLLB_MODEL = "facebook/nllb-200-distilled-600M"
+
+# NLLB language code mapping
+NLLB_LANG_CODES = {
+    "en": "eng_Latn",
+    "fr": "fra_Latn",
+    "es": "spa_Latn",
+    "de": "deu_Latn",
+    "it": "ita_Latn",
+    "ru": "rus_Cyrl",
+    "he": "heb_Hebr",
+    "ar": "arb_Arab",
+    "iw": "heb_Hebr"
+}
+
+
+class Translator:
+    """Holds a loaded model and tokenizer for the lifetime of the worker"""
+
+    def __init__(self, model_type, model_cache_dir, max_batch_tokens):
+        self.model_type = model_type
+        self.max_batch_tokens = max_batch_tokens
+
+        if model_type == "nllb":
+            from transformers import AutoModelForSeq2SeqLM, AutoTokenizer
+            self.tokenizer = AutoTokenizer.from_pretrained(NLLB_MODEL, cache_dir=model_cache_dir)
+            self.model = AutoModelForSeq2SeqLM.from_pretrained(NLLB_MODEL, cache_dir=model_cache_dir)
+        else:
+            from transformers import M2M100ForConditionalGeneration, M2M100Tokenizer
+            self.tokenizer = M2M100Tokenizer.from_pretrained(M2M100_MODEL)
+            self.model = M2M100ForConditionalGeneration.from_pretrained(M2M100_MODEL)
+
+        self.model.eval()
+
+    def _lang_codes(self, src, tgt):
+        if self.model_type != "nllb":
+            return src, tgt, self.tokenizer.get_lang_id(tgt)
+
+        src_key = src.lower()
+        tgt_key = tgt.lower()
+        if src_key not in NLLB_LANG_CODES:
+            raise ValueError(f"Unsupported source language: {src}. Supported: {list(NLLB_LANG_CODES.keys())}")
+        if tgt_key not in NLLB_LANG_CODES:
+            raise ValueError(f"Unsupported target language: {tgt}. Supported: {list(NLLB_LANG_CODES.keys())}")
+
+        tgt_code = NLLB_LANG_CODES[tgt_key]
+        return NLLB_LANG_CODES[src_key], tgt_code, self.tokenizer.convert_tokens_to_ids(tgt_code)
+
+    def translate(self, texts, src, tgt):
+        """
+        Translate a list of texts, returning results in input order.
+        Texts are sorted by token length and grouped so that each padded
+        batch stays within max_batch_tokens, which keeps padding waste low.
+        """
+        src_code, _, forced_bos_token_id = self._lang_codes(src, tgt)
+        self.tokenizer.src_lang = src_code
+
+        lengths = [min(len(ids), 512) for ids in self.tokenizer(texts, truncation=True, max_length=512)["input_ids"]]
+        order = sorted(range(len(texts)), key=lambda i: lengths[i])
+
+        results = [None] * len(texts)
+        batch = []
+        for i in order:
+            # Padded cost of a batch is its size times its longest sequence
+            if batch and (len(batch) + 1) * lengths[i] > self.max_batch_tokens:
+                self._translate_batch(texts, batch, results, forced_bos_token_id)
+                batch = []
+            batch.append(i)
+        if batch:
+            self._translate_batch(texts, batch, results, forced_bos_token_id)
+
+        return results
+
+    def _translate_batch(self, texts, indices, results, forced_bos_token_id):
+        import torch
+
+        encoded = self.tokenizer([texts[i] for i in indices], return_tensors="pt", padding=True,
+                                 max_length=512, truncation=True)
+        with torch.no_grad():
+            generated_tokens = self.model.generate(
+                **encoded,
+                forced_bos_token_id=forced_bos_token_id,
+                max_length=512
+            )
+
+        decoded = self.tokenizer.batch_decode(generated_tokens, skip_special_tokens=True)
+        for i, translated in zip(indices, decoded):
+            results[i] = translated
+
+
+def respond(payload):
+    sys.stdout.write(json.dumps(payload, ensure_ascii=False) + "\n")
+    sys.stdout.flush()
+
+
+def main():
+    parser = argparse.ArgumentParser(description="Persistent translation worker")
+    parser.add_argument("--model", default="m2m100", choices=["m2m100", "nllb"], help="Translation model")
+    parser.add_argument("--model-cache-dir", default="./models", help="Model cache directory")
+    parser.add_argument("--max-batch-tokens", type=int, default=2048,
+                        help="Token budget per padded generate() batch")
+
+    args = parser.parse_args()
+
+    print(f"Loading {args.model} model...", file=sys.stderr)
+    try:
+        translator = Translator(args.model, args.model_cache_dir, args.max_batch_tokens)
+    except Exception as e:
+        respond({"ready": False, "error": str(e)})
+        sys.exit(1)
+
+    respond({"ready": True, "model": args.model})
+    print(f"{args.model} worker ready", file=sys.stderr)
+
+    for line in sys.stdin:
+        line = line.strip()
+        if not line:
+            continue
+
+        request_id = None
+        try:
+            request = json.loads(line)
+            request_id = request.get("id")
+            if "texts" in request:
+                translations = translator.translate(request["texts"], request["src"], request["tgt"])
+                respond({"id": request_id, "translations": translations})
+            else:
+                translated = translator.translate([request["text"]], request["src"], request["tgt"])[0]
+                respond({"id": request_id, "translated": translated})
+        except Exception as e:
+            respond({"id": request_id, "error": str(e)})
+
+
+if __name__ == "__main__":
+    main()
@@ -2,12 +2,117 @@
 """
 Whisper transcription script
 Called from Java to transcribe audio files
+
+With --stream, prints one JSON line per segment as soon as it is decoded:
+  {"type": "segment", "start": 0.0, "end": 2.5, "text": "..."}
+followed by {"type": "done", "language": "en"} or {"type": "error", "error": "..."}
 """
 import sys
 import json
 import argparse
 from faster_whisper import WhisperModel
 
+
+def load_model(model_size, cpu_threads=0):
+    # cpu_threads=0 keeps CTranslate2's default
+    return WhisperModel(model_size, device="cpu", compute_type="int8", cpu_threads=cpu_threads)
+
+
+def detect_language(model, audio):
+    """Detect the spoken language without decoding any segments"""
+    # Language detection happens eagerly, segments are only decoded when iterated
+    _, info = model.transcribe(audio, beam_size=1)
+    return info.language
+
+
+def load_aligner(audio_file, language, align_models=None):
+    """
+    Load the WhisperX alignment model for a language.
+
+    Args:
+        align_models: optional dict that keeps alignment models by language
+            between calls, used by the resident worker
+
+    Returns:
+        (align_model, metadata, audio) or None when WhisperX is unavailable
+    """
+    try:
+        import whisperx
+
+        if align_models is not None and language in align_models:
+            model_a, metadata = align_models[language]
+        else:
+            model_a, metadata = whisperx.load_align_model(
+                language_code=language,
+                device="cpu"
+            )
+            if align_models is not None:
+                align_models[language] = (model_a, metadata)
+
+        # Piped audio arrives as samples already, files are decoded here
+        audio = whisperx.load_audio(audio_file) if isinstance(audio_file, str) else audio_file
+        return model_a, metadata, audio
+
+    except ImportError:
+        # WhisperX not available, use regular timestamps
+        return None
+    except Exception as align_error:
+        print(f"Warning: Alignment failed: {align_error}", file=sys.stderr)
+        return None
+
+
+def align_segment(segment, aligner):
+    """Align one segment, falling back to its regular timestamps on failure"""
+    import whisperx
+
+    model_a, metadata, audio = aligner
+    try:
+        aligned_result = whisperx.align([segment], model_a, metadata, audio, "cpu")
+        return [{
+            "start": aligned.get("start", 0),
+            "end": aligned.get("end", 0),
+            "text": aligned.get("text", "").strip()
+        } for aligned in aligned_result.get("segments", [])] or [segment]
+    except Exception as align_error:
+        print(f"Warning: Alignment failed: {align_error}", file=sys.stderr)
+        return [segment]
+
+
+def transcribe_segments(model, audio_file, language=None, align=False, align_models=None):
+    """
+    Start a transcription and return its segments lazily.
+    faster-whisper decodes segments as they are consumed, so callers can
+    emit each one as soon as it is ready. audio_file may also be a float32
+    numpy array of 16 kHz mono samples.
+
+    Returns:
+        (detected_language, generator of segment dicts)
+    """
+    segments, info = model.transcribe(
+        audio_file,
+        language=language,
+        beam_size=5,
+        word_timestamps=True
+    )
+
+    # Alignment works per segment, so it does not hold back streaming
+    aligner = load_aligner(audio_file, info.language, align_models) if align else None
+
+    def generate():
+        for segment in segments:
+            result = {
+                "start": segment.start,
+                "end": segment.end,
+                "text": segment.text.strip()
+            }
+            if aligner:
+                yield from align_segment(result, aligner)
+            else:
+                yield result
+
+    return info.language, generate()
+
+
 def transcribe(audio_file, model_size="large", language=None, align=False):
     """
     Transcribe audio file using Whisper
@@ -22,76 +127,12 @@ def transcribe(audio_file, model_size="large", language=None, align=False):
         List of segments with text and timestamps
     """
     try:
-        # Load model
-        model = WhisperModel(model_size, device="cpu", compute_type="int8")
-
-        # Transcribe
-        segments, info = model.transcribe(
-            audio_file,
-            language=language,
-            beam_size=5,
-            word_timestamps=True
-        )
-
-        # Convert to list
-        results = []
-        for segment in segments:
-            results.append({
-                "start": segment.start,
-                "end": segment.end,
-                "text": segment.text.strip()
-            })
-
-        # If alignment is requested and whisperx is available, use it
-        if align:
-            try:
-                import whisperx
-                import torch
-
-                # Load audio
-                audio = whisperx.load_audio(audio_file)
-
-                # Align whisper output
-                model_a, metadata = whisperx.load_align_model(
-                    language_code=info.language,
-                    device="cpu"
-                )
-
-                # Convert results to whisperx format
-                whisper_result = {
-                    "segments": results,
-                    "language": info.language
-                }
-
-                # Perform alignment
-                aligned_result = whisperx.align(
-                    whisper_result["segments"],
-                    model_a,
-                    metadata,
-                    audio,
-                    "cpu"
-                )
-
-                # Update results with aligned timestamps
-                if "segments" in aligned_result:
-                    results = []
-                    for segment in aligned_result["segments"]:
-                        results.append({
-                            "start": segment.get("start", 0),
-                            "end": segment.get("end", 0),
-                            "text": segment.get("text", "").strip()
-                        })
-
-            except ImportError:
-                # WhisperX not available, use regular timestamps
-                pass
-            except Exception as align_error:
-                # Alignment failed, use regular timestamps
-                print(f"Warning: Alignment failed: {align_error}", file=sys.stderr)
+        model = load_model(model_size)
+        detected_language, segments = transcribe_segments(model, audio_file, language, align)
 
         return {
-            "language": info.language,
-            "segments": results
+            "language": detected_language,
+            "segments": list(segments)
         }
 
     except Exception as e:
@@ -99,14 +140,38 @@ def transcribe(audio_file, model_size="large", language=None, align=False):
             "error": str(e)
         }
 
+
+def emit(payload):
+    print(json.dumps(payload, ensure_ascii=False), flush=True)
+
+
+def stream(audio_file, model_size="large", language=None, align=False):
+    """Print segments one JSON line at a time as they are transcribed"""
+    try:
+        model = load_model(model_size)
+        detected_language, segments = transcribe_segments(model, audio_file, language, align)
+
+        for segment in segments:
+            emit(dict(segment, type="segment"))
+
+        emit({"type": "done", "language": detected_language})
+
+    except Exception as e:
+        emit({"type": "error", "error": str(e)})
+
+
 if __name__ == "__main__":
     parser = argparse.ArgumentParser()
     parser.add_argument("audio_file", help="Path to audio file")
     parser.add_argument("--model", default="large", help="Whisper model size")
     parser.add_argument("--language", default=None, help="Language code (optional)")
     parser.add_argument("--align", action="store_true", help="Use WhisperX alignment for better timing")
+    parser.add_argument("--stream", action="store_true", help="Print one JSON line per segment")
 
     args = parser.parse_args()
 
-    result = transcribe(args.audio_file, args.model, args.language, args.align)
-    print(json.dumps(result, ensure_ascii=False))
+    if args.stream:
+        stream(args.audio_file, args.model, args.language, args.align)
+    else:
+        result = transcribe(args.audio_file, args.model, args.language, args.align)
+        print(json.dumps(result, ensure_ascii=False))
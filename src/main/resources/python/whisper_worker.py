@@ -0,0 +1,153 @@
+#!/usr/bin/env python3
+"""
+Persistent Whisper transcription worker
+Loads one Whisper model (faster-whisper or OpenAI Whisper) once and serves
+transcription requests over a line-delimited JSON protocol on stdin/stdout.
+WhisperX alignment models are kept per language after first use.
+
+Request:  {"id": 1, "audio_file": "/path/audio.wav", "language": null, "align": true}
+Response: {"id": 1, "type": "segment", "start": 0.0, "end": 2.5, "text": "..."}
+          ... one line per segment ...
+          {"id": 1, "type": "done", "language": "en"}
+Error:    {"id": 1, "type": "error", "error": "..."}
+
+Piped audio: {"id": 2, "audio_stream": true, "language": null, "align": false}
+followed on stdin by 16 kHz mono s16le PCM in frames of a 4-byte big-endian
+length and that many bytes, terminated by a zero-length frame.
+
+Language detection: {"id": 3, "detect_language": true, ...} with audio as
+above; answered with a single done line.
+
+Diagnostics go to stderr so stdout only ever carries protocol lines.
+"""
+import sys
+import json
+import argparse
+
+
+def respond(payload):
+    print(json.dumps(payload, ensure_ascii=False), flush=True)
+
+
+def read_pcm(stream):
+    """Read framed s16le PCM from stdin into float32 samples, as whisper expects"""
+    import numpy as np
+
+    # Frames are read straight into one growing buffer, so the PCM is held once
+    # rather than as a list of chunks plus their joined copy
+    pcm = bytearray()
+    while True:
+        header = stream.read(4)
+        if len(header) < 4:
+            raise EOFError("Audio stream ended without a terminating frame")
+        size = int.from_bytes(header, "big")
+        if size == 0:
+            break
+        start = len(pcm)
+        pcm.extend(bytes(size))
+        view = memoryview(pcm)[start:]
+        filled = 0
+        while filled < size:
+            read = stream.readinto(view[filled:])
+            if not read:
+                view.release()
+                raise EOFError("Audio stream ended mid-frame")
+            filled += read
+        view.release()
+
+    samples = np.frombuffer(pcm, dtype=np.int16).astype(np.float32)
+    samples /= 32768.0  # In place, so no second float32 copy
+    return samples
+
+
+class FasterWhisperBackend:
+
+    def __init__(self, model_size, threads):
+        import whisper_transcribe
+        self.impl = whisper_transcribe
+        self.model = whisper_transcribe.load_model(model_size, threads)
+        self.align_models = {}
+
+    def detect_language(self, audio):
+        return self.impl.detect_language(self.model, audio)
+
+    def transcribe(self, audio_file, language, align):
+        # Segments are decoded lazily, so they reach Java as soon as they are ready
+        return self.impl.transcribe_segments(self.model, audio_file, language, align, self.align_models)
+
+
+class OpenAIWhisperBackend:
+
+    def __init__(self, model_size, threads):
+        import openai_whisper_transcribe
+        self.impl = openai_whisper_transcribe
+        self.model, self.device = openai_whisper_transcribe.load_model(model_size, threads)
+        self.align_models = {}
+
+    def detect_language(self, audio):
+        return self.impl.detect_language(self.model, audio)
+
+    def transcribe(self, audio_file, language, align):
+        result = self.impl.transcribe_with_model(
+            self.model, self.device, audio_file, language, align, self.align_models)
+        return result["language"], result["segments"]
+
+
+def main():
+    parser = argparse.ArgumentParser(description="Persistent Whisper transcription worker")
+    parser.add_argument("--backend", default="faster-whisper", choices=["faster-whisper", "openai-whisper"],
+                        help="Whisper implementation")
+    parser.add_argument("--model", default="large", help="Whisper model size")
+    parser.add_argument("--threads", type=int, default=0, help="CPU threads for inference (0 = library default)")
+
+    args = parser.parse_args()
+
+    print(f"Loading {args.backend} {args.model} model...", file=sys.stderr)
+    try:
+        if args.backend == "openai-whisper":
+            backend = OpenAIWhisperBackend(args.model, args.threads)
+        else:
+            backend = FasterWhisperBackend(args.model, args.threads)
+    except Exception as e:
+        respond({"ready": False, "error": str(e)})
+        sys.exit(1)
+
+    respond({"ready": True, "backend": args.backend, "model": args.model})
+    print(f"{args.backend} {args.model} worker ready", file=sys.stderr)
+
+    # Binary stdin, since piped audio follows its request line
+    stdin = sys.stdin.buffer
+    while True:
+        line = stdin.readline()
+        if not line:
+            break
+        line = line.strip()
+        if not line:
+            continue
+
+        request_id = None
+        try:
+            request = json.loads(line)
+            request_id = request.get("id")
+            if request.get("audio_stream"):
+                audio = read_pcm(stdin)
+            else:
+                audio = request["audio_file"]
+
+            if request.get("detect_language"):
+                respond({"id": request_id, "type": "done", "language": backend.detect_language(audio)})
+                continue
+
+            detected_language, segments = backend.transcribe(
+                audio, request.get("language"), request.get("align", False))
+
+            for segment in segments:
+                respond(dict(segment, id=request_id, type="segment"))
+
+            respond({"id": request_id, "type": "done", "language": detected_language})
+        except Exception as e:
+            respond({"id": request_id, "type": "error", "error": str(e)})
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,239 @@
+package com.koishman.telegram.service;
+
+import com.koishman.telegram.config.TelegramBotConfig;
+import com.koishman.telegram.model.TelegramResponse;
+import com.koishman.telegram.service.TelegramOutboundScheduler.Priority;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TelegramOutboundSchedulerTest {
+
+    private final TelegramBotConfig config = new TelegramBotConfig();
+    private final List<String> sent = new ArrayList<>();
+    private long now = TimeUnit.HOURS.toNanos(1);
+    private TelegramOutboundScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        config.setGlobalMessagesPerSecond(30);
+        config.setChatMessagesPerSecond(1);
+    }
+
+    private void start() {
+        scheduler = new TelegramOutboundScheduler(config);
+        scheduler.setClock(() -> now);
+        scheduler.initQueues();
+    }
+
+    private void advanceMillis(long millis) {
+        now += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private Supplier<CompletableFuture<TelegramResponse>> ok(String name) {
+        return () -> {
+            sent.add(name);
+            return CompletableFuture.completedFuture(okResponse(name));
+        };
+    }
+
+    private static TelegramResponse okResponse(String description) {
+        TelegramResponse response = new TelegramResponse();
+        response.setOk(true);
+        response.setDescription(description);
+        return response;
+    }
+
+    private static TelegramResponse tooManyRequests(int retryAfterSeconds) {
+        TelegramResponse response = TelegramResponse.error(429, "Too Many Requests");
+        TelegramResponse.Parameters parameters = new TelegramResponse.Parameters();
+        parameters.setRetryAfter(retryAfterSeconds);
+        response.setParameters(parameters);
+        return response;
+    }
+
+    private int dispatchAll() {
+        int count = 0;
+        while (scheduler.dispatchNext()) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    void chatBucketAllowsOneMessagePerSecond() {
+        start();
+        scheduler.submit(Priority.USER_MESSAGE, 1L, null, ok("a"));
+        scheduler.submit(Priority.USER_MESSAGE, 1L, null, ok("b"));
+        scheduler.submit(Priority.USER_MESSAGE, 1L, null, ok("c"));
+
+        assertEquals(1, dispatchAll());
+        advanceMillis(999);
+        assertEquals(0, dispatchAll());
+        advanceMillis(1);
+        assertEquals(1, dispatchAll());
+        advanceMillis(1000);
+        assertEquals(1, dispatchAll());
+        assertEquals(List.of("a", "b", "c"), sent);
+    }
+
+    @Test
+    void globalBucketLimitsAllChats() {
+        config.setGlobalMessagesPerSecond(2);
+        start();
+        for (long chat = 1; chat <= 5; chat++) {
+            scheduler.submit(Priority.USER_MESSAGE, chat, null, ok("chat" + chat));
+        }
+
+        assertEquals(2, dispatchAll());
+        advanceMillis(500);
+        assertEquals(1, dispatchAll());
+        advanceMillis(1000);
+        assertEquals(2, dispatchAll());
+        assertEquals(List.of("chat1", "chat2", "chat3", "chat4", "chat5"), sent);
+    }
+
+    @Test
+    void sendsHigherPrioritiesFirst() {
+        start();
+        scheduler.submit(Priority.PROGRESS_EDIT, 1L, null, ok("progress"));
+        scheduler.submit(Priority.DELIVERY, 2L, null, ok("delivery"));
+        scheduler.submit(Priority.USER_MESSAGE, 3L, null, ok("message"));
+        scheduler.submit(Priority.CALLBACK_ANSWER, null, null, ok("callback"));
+
+        assertEquals(4, dispatchAll());
+        assertEquals(List.of("callback", "message", "delivery", "progress"), sent);
+    }
+
+    @Test
+    void chatWaitingForItsBucketDoesNotHoldUpOtherChats() {
+        start();
+        scheduler.submit(Priority.USER_MESSAGE, 1L, null, ok("a1"));
+        scheduler.submit(Priority.USER_MESSAGE, 1L, null, ok("a2"));
+        scheduler.submit(Priority.PROGRESS_EDIT, 2L, null, ok("b1"));
+
+        assertEquals(2, dispatchAll());
+        assertEquals(List.of("a1", "b1"), sent);
+    }
+
+    @Test
+    void newerRequestWithSameKeyReplacesQueuedOne() {
+        start();
+        CompletableFuture<TelegramResponse> first = scheduler.submit(Priority.PROGRESS_EDIT, 1L, "edit:1:7", ok("10%"));
+        CompletableFuture<TelegramResponse> second = scheduler.submit(Priority.PROGRESS_EDIT, 1L, "edit:1:7", ok("20%"));
+
+        assertSame(first, second);
+        assertEquals(1, dispatchAll());
+        assertEquals(List.of("20%"), sent);
+        assertEquals("20%", first.join().getDescription());
+        assertEquals(1L, scheduler.getStats().get("superseded"));
+    }
+
+    @Test
+    void rateLimitBlocksTheChatForRetryAfterAndResends() {
+        start();
+        int[] attempts = {0};
+        CompletableFuture<TelegramResponse> result = scheduler.submit(Priority.USER_MESSAGE, 1L, null, () -> {
+            sent.add("a");
+            return CompletableFuture.completedFuture(attempts[0]++ == 0 ? tooManyRequests(3) : okResponse("a"));
+        });
+        scheduler.submit(Priority.USER_MESSAGE, 2L, null, ok("b"));
+
+        assertEquals(2, dispatchAll());
+        assertFalse(result.isDone());
+
+        // The chat's bucket has refilled, but the block lasts the whole retry_after
+        advanceMillis(2999);
+        assertEquals(0, dispatchAll());
+        scheduler.submit(Priority.USER_MESSAGE, 2L, null, ok("b2"));
+        assertEquals(1, dispatchAll());
+
+        advanceMillis(1);
+        assertEquals(1, dispatchAll());
+        assertTrue(result.isDone());
+        assertEquals("a", result.join().getDescription());
+        assertEquals(List.of("a", "b", "b2", "a"), sent);
+        assertEquals(1L, scheduler.getStats().get("rate_limited"));
+    }
+
+    @Test
+    void rateLimitWithoutChatBlocksEverything() {
+        start();
+        scheduler.submit(Priority.CALLBACK_ANSWER, null, null, () -> {
+            sent.add("global");
+            return CompletableFuture.completedFuture(tooManyRequests(1));
+        });
+        assertEquals(1, dispatchAll());
+
+        scheduler.submit(Priority.USER_MESSAGE, 5L, null, ok("other"));
+        advanceMillis(999);
+        assertEquals(0, dispatchAll());
+        advanceMillis(1);
+        // The retried call comes first by priority, and is limited again
+        assertEquals(1, dispatchAll());
+        assertEquals(List.of("global", "global"), sent);
+    }
+
+    @Test
+    void rateLimitedRequestIsSupersededByNewerOneQueuedMeanwhile() {
+        start();
+        CompletableFuture<TelegramResponse> pending = new CompletableFuture<>();
+        CompletableFuture<TelegramResponse> first = scheduler.submit(Priority.PROGRESS_EDIT, 1L, "edit:1:7", () -> {
+            sent.add("10%");
+            return pending;
+        });
+        assertEquals(1, dispatchAll());
+
+        // Queued while the first edit is in flight, so it doesn't replace it
+        CompletableFuture<TelegramResponse> second = scheduler.submit(Priority.PROGRESS_EDIT, 1L, "edit:1:7", ok("20%"));
+        pending.complete(tooManyRequests(2));
+        assertFalse(first.isDone());
+
+        advanceMillis(2000);
+        assertEquals(1, dispatchAll());
+        advanceMillis(5000);
+        assertEquals(0, dispatchAll());
+
+        assertEquals(List.of("10%", "20%"), sent);
+        assertEquals("20%", first.join().getDescription());
+        assertEquals("20%", second.join().getDescription());
+    }
+
+    @Test
+    void failedCallFailsItsFuture() {
+        start();
+        CompletableFuture<TelegramResponse> result = scheduler.submit(Priority.DELIVERY, 1L, null,
+                () -> CompletableFuture.failedFuture(new IllegalStateException("connection reset")));
+
+        assertEquals(1, dispatchAll());
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(1L, scheduler.getStats().get("failed"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void statsRecordWaitTimes() {
+        start();
+        scheduler.submit(Priority.USER_MESSAGE, 1L, null, ok("a"));
+        scheduler.submit(Priority.USER_MESSAGE, 1L, null, ok("b"));
+        dispatchAll();
+        advanceMillis(1000);
+        dispatchAll();
+
+        Map<String, Object> userMessages = (Map<String, Object>) scheduler.getStats().get("user_message");
+        assertEquals(2L, userMessages.get("sent"));
+        assertEquals(500L, userMessages.get("avg_wait_ms"));
+        assertEquals(1000L, userMessages.get("max_wait_ms"));
+    }
+}
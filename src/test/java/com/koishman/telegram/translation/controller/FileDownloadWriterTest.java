@@ -0,0 +1,246 @@
+package com.koishman.telegram.translation.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class FileDownloadWriterTest {
+
+    private static final String CONTENT = "0123456789";
+
+    @TempDir
+    Path dir;
+
+    private File file;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        file = dir.resolve("video.mp4").toFile();
+        Files.write(file.toPath(), CONTENT.getBytes(StandardCharsets.US_ASCII));
+        request = new MockHttpServletRequest("GET", "/api/translation/download/video.mp4");
+        response = new MockHttpServletResponse();
+    }
+
+    @Test
+    void sendsWholeFileWithoutRange() throws IOException {
+        write();
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, body());
+        assertEquals(10, response.getContentLengthLong());
+        assertEquals("bytes", response.getHeader(HttpHeaders.ACCEPT_RANGES));
+        assertEquals("attachment; filename=\"video.mp4\"", response.getHeader(HttpHeaders.CONTENT_DISPOSITION));
+    }
+
+    @Test
+    void sendsClosedRange() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+        write();
+
+        assertEquals(206, response.getStatus());
+        assertEquals("2345", body());
+        assertEquals("bytes 2-5/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(4, response.getContentLengthLong());
+    }
+
+    @Test
+    void sendsOpenRangeToTheEnd() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=7-");
+        write();
+
+        assertEquals(206, response.getStatus());
+        assertEquals("789", body());
+        assertEquals("bytes 7-9/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void capsRangeEndAtFileLength() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=8-100");
+        write();
+
+        assertEquals(206, response.getStatus());
+        assertEquals("89", body());
+        assertEquals("bytes 8-9/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void sendsSuffixRange() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=-3");
+        write();
+
+        assertEquals(206, response.getStatus());
+        assertEquals("789", body());
+        assertEquals("bytes 7-9/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void sendsWholeFileForSuffixLongerThanFile() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=-50");
+        write();
+
+        assertEquals(206, response.getStatus());
+        assertEquals(CONTENT, body());
+        assertEquals("bytes 0-9/10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void rejectsRangeStartingPastTheEnd() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=10-");
+        write();
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals("", body());
+    }
+
+    @Test
+    void rejectsBackwardsRange() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=5-2");
+        write();
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void ignoresRangeBeyondLong() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=99999999999999999999-");
+        write();
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, body());
+        assertNull(response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void ignoresSuffixBeyondLong() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=-99999999999999999999");
+        write();
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, body());
+    }
+
+    @Test
+    void ignoresMultipleRanges() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1,4-5");
+        write();
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, body());
+    }
+
+    @Test
+    void honoursRangeWhenIfRangeMatches() throws IOException {
+        String etag = fetchEtag();
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1");
+        request.addHeader(HttpHeaders.IF_RANGE, etag);
+        write();
+
+        assertEquals(206, response.getStatus());
+        assertEquals("01", body());
+    }
+
+    @Test
+    void sendsWholeFileWhenIfRangeIsStale() throws IOException {
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"stale\"");
+        write();
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, body());
+    }
+
+    @Test
+    void answersNotModifiedForMatchingEtag() throws IOException {
+        String etag = fetchEtag();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\", " + etag);
+        write();
+
+        assertEquals(304, response.getStatus());
+        assertEquals("", body());
+        assertEquals(etag, response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void sendsFileForOtherEtagEvenIfNotModifiedSince() throws IOException {
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\"");
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, file.lastModified() + 60_000);
+        write();
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, body());
+    }
+
+    @Test
+    void answersNotModifiedSinceLastModified() throws IOException {
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, file.lastModified());
+        write();
+
+        assertEquals(304, response.getStatus());
+    }
+
+    @Test
+    void sendsFileModifiedSinceDate() throws IOException {
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, file.lastModified() - 60_000);
+        write();
+
+        assertEquals(200, response.getStatus());
+        assertEquals(CONTENT, body());
+    }
+
+    @Test
+    void headSendsHeadersOnly() throws IOException {
+        request.setMethod("HEAD");
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+        write();
+
+        assertEquals(206, response.getStatus());
+        assertEquals(4, response.getContentLengthLong());
+        assertEquals("", body());
+    }
+
+    @Test
+    void handsRangeToTomcatSendfile() throws IOException {
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-5");
+        write();
+
+        assertEquals(206, response.getStatus());
+        assertEquals(file.getCanonicalPath(), request.getAttribute("org.apache.tomcat.sendfile.filename"));
+        assertEquals(2L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+        // Exclusive end
+        assertEquals(6L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+        assertArrayEquals(new byte[0], response.getContentAsByteArray());
+    }
+
+    private String fetchEtag() throws IOException {
+        MockHttpServletResponse first = new MockHttpServletResponse();
+        FileDownloadWriter.write(file, "video/mp4", "video.mp4",
+                new MockHttpServletRequest("GET", "/api/translation/download/video.mp4"), first);
+        return first.getHeader(HttpHeaders.ETAG);
+    }
+
+    private void write() throws IOException {
+        FileDownloadWriter.write(file, "video/mp4", "video.mp4", request, response);
+    }
+
+    private String body() {
+        return new String(response.getContentAsByteArray(), StandardCharsets.US_ASCII);
+    }
+}
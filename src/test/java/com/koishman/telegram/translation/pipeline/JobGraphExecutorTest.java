@@ -0,0 +1,215 @@
+package com.koishman.telegram.translation.pipeline;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(10)
+class JobGraphExecutorTest {
+
+    private JobGraphExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = new JobGraphExecutor();
+        ReflectionTestUtils.setField(executor, "extractAudioConcurrency", 2);
+        ReflectionTestUtils.setField(executor, "extractSubtitlesConcurrency", 1);
+        ReflectionTestUtils.setField(executor, "transcribeConcurrency", 1);
+        ReflectionTestUtils.setField(executor, "translateConcurrency", 2);
+        ReflectionTestUtils.setField(executor, "burnConcurrency", 2);
+        ReflectionTestUtils.setField(executor, "muxConcurrency", 2);
+        executor.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void runsStagesAfterTheirDependencies() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        JobGraph graph = new JobGraph()
+                .addStage("extract", StageType.EXTRACT_AUDIO, "Extract", stage -> order.add("extract"))
+                .addStage("transcribe", StageType.TRANSCRIBE, "Transcribe", stage -> order.add("transcribe"), "extract")
+                .addStage("translate", StageType.TRANSLATE, "Translate", stage -> order.add("translate"), "transcribe");
+
+        executor.execute("job", graph, stage -> { });
+
+        assertEquals(List.of("extract", "transcribe", "translate"), order);
+        graph.getStages().forEach(stage -> assertEquals(PipelineStage.State.DONE, stage.getState()));
+        assertEquals(100, graph.getOverallProgress());
+    }
+
+    @Test
+    void overlapsIndependentStages() throws Exception {
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        PipelineStage.Action meet = stage -> {
+            bothRunning.countDown();
+            // Only returns if the other stage runs at the same time
+            assertTrue(bothRunning.await(5, TimeUnit.SECONDS));
+        };
+        JobGraph graph = new JobGraph()
+                .addStage("burn", StageType.BURN, "Burn", meet)
+                .addStage("mux", StageType.MUX, "Mux", meet);
+
+        executor.execute("job", graph, stage -> { });
+
+        assertEquals(0, bothRunning.getCount());
+    }
+
+    @Test
+    void limitsConcurrencyPerStageType() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        PipelineStage.Action translate = stage -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            running.decrementAndGet();
+        };
+        JobGraph graph = new JobGraph();
+        for (int i = 0; i < 6; i++) {
+            graph.addStage("translate_" + i, StageType.TRANSLATE, "Translate", translate);
+        }
+
+        executor.execute("job", graph, stage -> { });
+
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    void subtitleExtractionHasItsOwnPermits() throws Exception {
+        AtomicInteger audioPermits = new AtomicInteger(-1);
+        JobGraph graph = new JobGraph()
+                .addStage("extract_subtitles", StageType.EXTRACT_SUBTITLES, "Extract subtitles",
+                        stage -> audioPermits.set(permit(StageType.EXTRACT_AUDIO).availablePermits()));
+
+        executor.execute("job", graph, stage -> { });
+
+        assertEquals(2, audioPermits.get());
+        assertEquals(1, permit(StageType.EXTRACT_SUBTITLES).availablePermits());
+    }
+
+    @Test
+    void failureSkipsDependentsAndStagesNotYetStarted() throws Exception {
+        CountDownLatch firstRunning = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+        AtomicBoolean ranAfterFailure = new AtomicBoolean();
+        IllegalStateException failure = new IllegalStateException("whisper crashed");
+
+        JobGraph graph = new JobGraph()
+                .addStage("transcribe_a", StageType.TRANSCRIBE, "Transcribe A", stage -> {
+                    firstRunning.countDown();
+                    fail.await();
+                    throw failure;
+                })
+                .addStage("extract", StageType.EXTRACT_AUDIO, "Extract", stage -> firstRunning.await())
+                // Waits for the single TRANSCRIBE permit while transcribe_a runs
+                .addStage("transcribe_b", StageType.TRANSCRIBE, "Transcribe B", stage -> ranAfterFailure.set(true), "extract")
+                .addStage("translate", StageType.TRANSLATE, "Translate", stage -> ranAfterFailure.set(true), "transcribe_a");
+
+        Thread failer = new Thread(() -> {
+            Semaphore transcribePermits = permit(StageType.TRANSCRIBE);
+            while (!transcribePermits.hasQueuedThreads()) {
+                Thread.onSpinWait();
+            }
+            fail.countDown();
+        });
+        failer.start();
+
+        List<String> changes = Collections.synchronizedList(new ArrayList<>());
+        Exception thrown = assertThrows(Exception.class,
+                () -> executor.execute("job", graph, stage -> changes.add(stage.getName() + ":" + stage.getState())));
+        failer.join();
+
+        assertSame(failure, thrown);
+        assertFalse(ranAfterFailure.get());
+        assertEquals(PipelineStage.State.FAILED, graph.getStage("transcribe_a").getState());
+        assertEquals(PipelineStage.State.DONE, graph.getStage("extract").getState());
+        assertEquals(PipelineStage.State.SKIPPED, graph.getStage("transcribe_b").getState());
+        assertEquals(PipelineStage.State.SKIPPED, graph.getStage("translate").getState());
+        assertTrue(changes.contains("transcribe_b:SKIPPED"));
+        assertTrue(changes.contains("translate:SKIPPED"));
+        // Permits of failed and skipped stages are returned
+        assertEquals(1, permit(StageType.TRANSCRIBE).availablePermits());
+    }
+
+    @Test
+    void reportsStateChangesAndProgress() throws Exception {
+        List<String> changes = Collections.synchronizedList(new ArrayList<>());
+        JobGraph graph = new JobGraph()
+                .addStage("burn", StageType.BURN, "Burn", stage -> {
+                    stage.setProgress(40);
+                    stage.setProgress(40);
+                    stage.setProgress(150);
+                });
+
+        executor.execute("job", graph, stage -> changes.add(stage.getState() + ":" + stage.getProgress()));
+
+        assertEquals(List.of("RUNNING:0", "RUNNING:40", "RUNNING:100", "DONE:100"), changes);
+    }
+
+    @Test
+    void perBatchStageHoldsNoPermitWhileWaiting() throws Exception {
+        executor.shutdown();
+        ReflectionTestUtils.setField(executor, "translateConcurrency", 1);
+        executor.init();
+
+        CountDownLatch otherDone = new CountDownLatch(1);
+        AtomicInteger permitsInBatch = new AtomicInteger(-1);
+        JobGraph graph = new JobGraph()
+                .addStage("streaming", StageType.TRANSLATE, "Streaming", stage -> {
+                    // Waiting for input, like a stage fed by a running transcription
+                    otherDone.await();
+                    stage.withPermit(() -> {
+                        permitsInBatch.set(permit(StageType.TRANSLATE).availablePermits());
+                        return null;
+                    });
+                })
+                .addStage("other", StageType.TRANSLATE, "Other", stage -> otherDone.countDown());
+        graph.getStage("streaming").setPermitPerBatch(true);
+
+        executor.execute("job", graph, stage -> { });
+
+        assertEquals(0, permitsInBatch.get());
+        assertEquals(1, permit(StageType.TRANSLATE).availablePermits());
+    }
+
+    @Test
+    void withPermitJustRunsForWholeRunStages() throws Exception {
+        AtomicInteger permitsInBatch = new AtomicInteger(-1);
+        JobGraph graph = new JobGraph()
+                .addStage("mux", StageType.MUX, "Mux", stage -> stage.withPermit(() -> {
+                    permitsInBatch.set(permit(StageType.MUX).availablePermits());
+                    return null;
+                }));
+
+        executor.execute("job", graph, stage -> { });
+
+        // The stage's own permit is held, and no second one is taken
+        assertEquals(1, permitsInBatch.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Semaphore permit(StageType type) {
+        return ((Map<StageType, Semaphore>) ReflectionTestUtils.getField(executor, "permits")).get(type);
+    }
+}
@@ -0,0 +1,198 @@
+package com.koishman.telegram.translation.pipeline;
+
+import com.koishman.telegram.translation.model.SubtitleSegment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(10)
+class SegmentFeedTest {
+
+    // How long a blocked call is given to (wrongly) return
+    private static final long BLOCKED_MS = 200;
+
+    private final ExecutorService background = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        background.shutdownNow();
+    }
+
+    private static SubtitleSegment segment(int index) {
+        return new SubtitleSegment(index, index, index + 1, "line " + index);
+    }
+
+    private static List<Integer> indexes(List<SubtitleSegment> segments) {
+        return segments.stream().map(SubtitleSegment::getIndex).collect(Collectors.toList());
+    }
+
+    private Future<?> publishInBackground(SegmentFeed feed, int index) {
+        return background.submit(() -> {
+            feed.publish(segment(index));
+            return null;
+        });
+    }
+
+    private static void assertBlocked(Future<?> future) {
+        assertThrows(TimeoutException.class, () -> future.get(BLOCKED_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void publishesWithoutReadersNeverBlock() throws InterruptedException {
+        SegmentFeed feed = new SegmentFeed(2);
+        for (int i = 1; i <= 10; i++) {
+            feed.publish(segment(i));
+        }
+
+        assertEquals(10, feed.size());
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), indexes(feed.getSegments()));
+    }
+
+    @Test
+    void readerSeesSegmentsInOrderInBatchesOfAtMostMax() throws InterruptedException {
+        SegmentFeed feed = new SegmentFeed(10);
+        SegmentFeed.Reader reader = feed.open();
+        for (int i = 1; i <= 5; i++) {
+            feed.publish(segment(i));
+        }
+        feed.complete();
+
+        assertEquals(List.of(1, 2), indexes(reader.next(2)));
+        assertEquals(List.of(3, 4), indexes(reader.next(2)));
+        assertEquals(List.of(5), indexes(reader.next(2)));
+        assertTrue(reader.next(2).isEmpty());
+    }
+
+    @Test
+    void publisherBlocksWhileReaderLagsByCapacity() throws Exception {
+        SegmentFeed feed = new SegmentFeed(2);
+        SegmentFeed.Reader reader = feed.open();
+        feed.publish(segment(1));
+        feed.publish(segment(2));
+
+        Future<?> third = publishInBackground(feed, 3);
+        assertBlocked(third);
+
+        assertEquals(List.of(1), indexes(reader.next(1)));
+        third.get(5, TimeUnit.SECONDS);
+        assertEquals(3, feed.size());
+    }
+
+    @Test
+    void slowestOfSeveralReadersHoldsBackThePublisher() throws Exception {
+        SegmentFeed feed = new SegmentFeed(2);
+        SegmentFeed.Reader fast = feed.open();
+        SegmentFeed.Reader slow = feed.open();
+        feed.publish(segment(1));
+        feed.publish(segment(2));
+        assertEquals(2, fast.next(10).size());
+
+        Future<?> third = publishInBackground(feed, 3);
+        assertBlocked(third);
+
+        slow.next(10);
+        third.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void closingReaderReleasesThePublisher() throws Exception {
+        SegmentFeed feed = new SegmentFeed(1);
+        SegmentFeed.Reader reader = feed.open();
+        feed.publish(segment(1));
+
+        Future<?> second = publishInBackground(feed, 2);
+        assertBlocked(second);
+
+        reader.close();
+        second.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void lateReaderReplaysFromTheFirstSegment() throws Exception {
+        SegmentFeed feed = new SegmentFeed(2);
+        feed.publish(segment(1));
+        feed.publish(segment(2));
+        feed.publish(segment(3));
+
+        SegmentFeed.Reader late = feed.open();
+        // The late reader is already a full capacity behind
+        Future<?> fourth = publishInBackground(feed, 4);
+        assertBlocked(fourth);
+
+        assertEquals(List.of(1, 2, 3), indexes(late.next(10)));
+        fourth.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(4), indexes(late.next(10)));
+    }
+
+    @Test
+    void readerJoiningAfterCompletionGetsEverythingThenEnd() throws InterruptedException {
+        SegmentFeed feed = new SegmentFeed(2);
+        feed.publish(segment(1));
+        feed.publish(segment(2));
+        feed.complete();
+
+        SegmentFeed.Reader late = feed.open();
+        assertEquals(List.of(1, 2), indexes(late.next(10)));
+        assertTrue(late.next(10).isEmpty());
+        assertTrue(feed.isCompleted());
+    }
+
+    @Test
+    void readerWaitsForSegments() throws Exception {
+        SegmentFeed feed = new SegmentFeed(2);
+        SegmentFeed.Reader reader = feed.open();
+
+        Future<List<SubtitleSegment>> next = background.submit(() -> reader.next(10));
+        assertBlocked(next);
+
+        feed.publish(segment(1));
+        assertEquals(List.of(1), indexes(next.get(5, TimeUnit.SECONDS)));
+    }
+
+    @Test
+    void failureWakesReadersAndThePublisher() throws Exception {
+        SegmentFeed feed = new SegmentFeed(1);
+        SegmentFeed.Reader stuck = feed.open();
+        SegmentFeed.Reader waiting = feed.open();
+        feed.publish(segment(1));
+        waiting.next(10);
+
+        Future<?> blockedPublish = publishInBackground(feed, 2);
+        Future<List<SubtitleSegment>> blockedRead = background.submit(() -> waiting.next(10));
+        assertBlocked(blockedPublish);
+        assertFalse(blockedRead.isDone());
+
+        RuntimeException cause = new RuntimeException("translation failed");
+        feed.fail(cause);
+        feed.fail(new RuntimeException("later failure"));
+
+        ExecutionException publishError = assertThrows(ExecutionException.class,
+                () -> blockedPublish.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, publishError.getCause());
+        assertSame(cause, publishError.getCause().getCause());
+
+        ExecutionException readError = assertThrows(ExecutionException.class,
+                () -> blockedRead.get(5, TimeUnit.SECONDS));
+        assertSame(cause, readError.getCause().getCause());
+
+        // Even with unread segments, a failed feed fails its readers
+        IllegalStateException error = assertThrows(IllegalStateException.class, () -> stuck.next(10));
+        assertSame(cause, error.getCause());
+    }
+}
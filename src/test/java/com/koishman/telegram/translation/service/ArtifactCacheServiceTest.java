@@ -0,0 +1,85 @@
+package com.koishman.telegram.translation.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ArtifactCacheServiceTest {
+
+    private static final int ENTRY_BYTES = 400 * 1024;
+
+    @TempDir
+    Path dir;
+
+    private ArtifactCacheService start() {
+        ArtifactCacheService cache = new ArtifactCacheService(new ObjectMapper());
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "cacheDir", dir.resolve("cache").toString());
+        ReflectionTestUtils.setField(cache, "maxSizeMb", 1L);
+        cache.init();
+        return cache;
+    }
+
+    private File source(String name, int size) throws IOException {
+        Path file = dir.resolve(name);
+        Files.write(file, new byte[size]);
+        return file.toFile();
+    }
+
+    private static long totalBytes(ArtifactCacheService cache) {
+        return ((AtomicLong) ReflectionTestUtils.getField(cache, "totalBytes")).get();
+    }
+
+    private static void age(ArtifactCacheService cache, String key, long millisAgo) throws IOException {
+        Files.setLastModifiedTime(cache.get(ArtifactCacheService.AUDIO, key).toPath(),
+                FileTime.fromMillis(System.currentTimeMillis() - millisAgo));
+    }
+
+    @Test
+    void tracksSizeOfAddedAndReplacedEntries() throws IOException {
+        ArtifactCacheService cache = start();
+        cache.put(ArtifactCacheService.AUDIO, "aa01", source("a", 1000));
+        cache.put(ArtifactCacheService.AUDIO, "bb02", source("b", 500));
+        assertEquals(1500, totalBytes(cache));
+
+        cache.put(ArtifactCacheService.AUDIO, "aa01", source("a2", 200));
+        assertEquals(700, totalBytes(cache));
+    }
+
+    @Test
+    void countsExistingEntriesAtStartup() throws IOException {
+        ArtifactCacheService first = start();
+        first.put(ArtifactCacheService.AUDIO, "aa01", source("a", 1000));
+        first.put(ArtifactCacheService.TRANSCRIPT, "bb02", source("b", 234));
+
+        assertEquals(1234, totalBytes(start()));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOnceOverTheLimit() throws IOException {
+        ArtifactCacheService cache = start();
+        cache.put(ArtifactCacheService.AUDIO, "aa01", source("a", ENTRY_BYTES));
+        cache.put(ArtifactCacheService.AUDIO, "bb02", source("b", ENTRY_BYTES));
+        age(cache, "aa01", 60_000);
+        age(cache, "bb02", 120_000);
+
+        cache.put(ArtifactCacheService.AUDIO, "cc03", source("c", ENTRY_BYTES));
+
+        assertNull(cache.get(ArtifactCacheService.AUDIO, "bb02"));
+        assertNotNull(cache.get(ArtifactCacheService.AUDIO, "aa01"));
+        assertNotNull(cache.get(ArtifactCacheService.AUDIO, "cc03"));
+        assertEquals(2L * ENTRY_BYTES, totalBytes(cache));
+    }
+}
@@ -0,0 +1,218 @@
+package com.koishman.telegram.translation.service;
+
+import com.koishman.telegram.translation.model.StoredUpload;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(10)
+class ChunkedUploadServiceTest {
+
+    private static final int CHUNK = 1024 * 1024;
+
+    @TempDir
+    Path uploadDir;
+
+    private ChunkedUploadService service;
+    // Two full chunks and a short last one
+    private final byte[] data = new byte[2 * CHUNK + 1000];
+
+    @BeforeEach
+    void setUp() {
+        new Random(42).nextBytes(data);
+
+        FileStorageService storage = new FileStorageService();
+        ReflectionTestUtils.setField(storage, "uploadDir", uploadDir.toString());
+        ReflectionTestUtils.setField(storage, "outputDir", uploadDir.resolve("outputs").toString());
+
+        service = new ChunkedUploadService(storage);
+        ReflectionTestUtils.setField(service, "chunkSizeMb", 1L);
+        ReflectionTestUtils.setField(service, "maxSizeMb", 10L);
+        ReflectionTestUtils.setField(service, "idleTimeoutSeconds", 3600L);
+    }
+
+    private InputStream chunk(int index) {
+        int from = index * CHUNK;
+        return new ByteArrayInputStream(Arrays.copyOfRange(data, from, Math.min(data.length, from + CHUNK)));
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    @Test
+    void resumesAfterADroppedChunk() throws Exception {
+        ChunkedUploadSession session = service.initiate("movie.mp4", data.length, sha256(data).toUpperCase());
+        assertEquals(3, session.getChunkCount());
+
+        assertTrue(service.writeChunk(session.getUploadId(), 0, chunk(0), null));
+        // The connection drops halfway through chunk 1
+        InputStream cutShort = new ByteArrayInputStream(Arrays.copyOfRange(data, CHUNK, CHUNK + CHUNK / 2));
+        assertThrows(IllegalArgumentException.class,
+                () -> service.writeChunk(session.getUploadId(), CHUNK, cutShort, null));
+        assertTrue(service.writeChunk(session.getUploadId(), 2L * CHUNK, chunk(2), null));
+
+        assertEquals(List.of(1), session.missingChunks());
+        assertEquals(CHUNK + 1000L, session.receivedBytes());
+        assertThrows(IllegalStateException.class, () -> service.commit(session.getUploadId()));
+
+        // The client re-sends only what is missing
+        assertTrue(service.writeChunk(session.getUploadId(), CHUNK, chunk(1), null));
+        assertTrue(session.missingChunks().isEmpty());
+
+        StoredUpload upload = service.commit(session.getUploadId());
+        assertEquals(sha256(data), upload.getContentHash());
+        assertArrayEquals(data, Files.readAllBytes(upload.getFile().toPath()));
+        assertThrows(NoSuchElementException.class, () -> service.getSession(session.getUploadId()));
+    }
+
+    @Test
+    void acceptsChunksInAnyOrderAndIgnoresRepeats() throws Exception {
+        ChunkedUploadSession session = service.initiate("movie.mp4", data.length, null);
+
+        assertTrue(service.writeChunk(session.getUploadId(), 2L * CHUNK, chunk(2), null));
+        assertTrue(service.writeChunk(session.getUploadId(), CHUNK, chunk(1), null));
+        assertFalse(service.writeChunk(session.getUploadId(), CHUNK, chunk(1), null));
+        assertTrue(service.writeChunk(session.getUploadId(), 0, chunk(0), null));
+
+        assertEquals(sha256(data), service.commit(session.getUploadId()).getContentHash());
+    }
+
+    @Test
+    void refusesChunkBeingWrittenByAnotherRequest() throws Exception {
+        ChunkedUploadSession session = service.initiate("movie.mp4", data.length, null);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        InputStream slow = new InputStream() {
+            private final InputStream delegate = chunk(0);
+
+            @Override
+            public int read() throws IOException {
+                return delegate.read();
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                started.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return delegate.read(buffer, offset, length);
+            }
+        };
+
+        CompletableFuture<Boolean> first = CompletableFuture.supplyAsync(() -> {
+            try {
+                return service.writeChunk(session.getUploadId(), 0, slow, null);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertFalse(service.writeChunk(session.getUploadId(), 0, chunk(0), null));
+        proceed.countDown();
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(1, 2), session.missingChunks());
+    }
+
+    @Test
+    void rejectsChunkFailingItsChecksumSoItCanBeResent() throws Exception {
+        ChunkedUploadSession session = service.initiate("movie.mp4", data.length, null);
+        String chunkHash = sha256(Arrays.copyOfRange(data, 0, CHUNK));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> service.writeChunk(session.getUploadId(), 0, chunk(1), chunkHash));
+        assertEquals(List.of(0, 1, 2), session.missingChunks());
+
+        assertTrue(service.writeChunk(session.getUploadId(), 0, chunk(0), chunkHash));
+        assertEquals(List.of(1, 2), session.missingChunks());
+    }
+
+    @Test
+    void rejectsOverlongChunkAndBadOffsets() throws Exception {
+        ChunkedUploadSession session = service.initiate("movie.mp4", data.length, null);
+        InputStream tooLong = new ByteArrayInputStream(new byte[CHUNK + 1]);
+
+        assertThrows(IllegalArgumentException.class, () -> service.writeChunk(session.getUploadId(), 0, tooLong, null));
+        assertThrows(IllegalArgumentException.class, () -> service.writeChunk(session.getUploadId(), 10, chunk(0), null));
+        assertThrows(IllegalArgumentException.class,
+                () -> service.writeChunk(session.getUploadId(), 3L * CHUNK, chunk(0), null));
+        assertThrows(IllegalArgumentException.class, () -> service.writeChunk(session.getUploadId(), -CHUNK, chunk(0), null));
+        assertEquals(List.of(0, 1, 2), session.missingChunks());
+    }
+
+    @Test
+    void deletesUploadFailingWholeFileChecksum() throws Exception {
+        ChunkedUploadSession session = service.initiate("movie.mp4", data.length, sha256(new byte[] {1}));
+        for (int chunk = 0; chunk < 3; chunk++) {
+            service.writeChunk(session.getUploadId(), (long) chunk * CHUNK, chunk(chunk), null);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> service.commit(session.getUploadId()));
+        assertFalse(session.getFile().exists());
+    }
+
+    @Test
+    void rejectsSizesOutsideTheLimit() {
+        assertThrows(IllegalArgumentException.class, () -> service.initiate("empty.mp4", 0, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> service.initiate("huge.mp4", 10L * 1024 * 1024 + 1, null));
+    }
+
+    @Test
+    void abortDeletesTheFile() throws Exception {
+        ChunkedUploadSession session = service.initiate("movie.mp4", data.length, null);
+        File file = session.getFile();
+        assertEquals(data.length, file.length());
+
+        service.abort(session.getUploadId());
+
+        assertFalse(file.exists());
+        assertThrows(NoSuchElementException.class,
+                () -> service.writeChunk(session.getUploadId(), 0, chunk(0), null));
+    }
+
+    @Test
+    void collectsAbandonedUploads() throws Exception {
+        ChunkedUploadSession session = service.initiate("movie.mp4", data.length, null);
+        service.collectAbandoned();
+        assertTrue(session.getFile().exists());
+
+        // Every session is now past its idle timeout
+        ReflectionTestUtils.setField(service, "idleTimeoutSeconds", -1L);
+        service.collectAbandoned();
+
+        assertFalse(session.getFile().exists());
+        assertThrows(NoSuchElementException.class, () -> service.getSession(session.getUploadId()));
+    }
+}
@@ -0,0 +1,80 @@
+package com.koishman.telegram.translation.service;
+
+import com.koishman.telegram.translation.model.JobEvent;
+import com.koishman.telegram.translation.model.TranslationJob;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(10)
+class JobStatusWatcherTest {
+
+    private JobTrackingService tracking;
+    private JobStatusWatcher watcher;
+
+    @BeforeEach
+    void setUp() {
+        tracking = new JobTrackingService(new FileStorageService(), event -> watcher.onJobEvent((JobEvent) event));
+        tracking.init();
+        watcher = new JobStatusWatcher(tracking);
+        watcher.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        watcher.shutdown();
+        tracking.shutdown();
+    }
+
+    @Test
+    void completesAtOnceWhenAlreadyChanged() {
+        TranslationJob job = tracking.createJob("movie.mp4", "/tmp/movie.mp4");
+
+        assertTrue(watcher.awaitChange(List.of(job.getJobId()), job.getVersion() - 1).isDone());
+        assertFalse(watcher.awaitChange(List.of(job.getJobId()), job.getVersion()).isDone());
+    }
+
+    @Test
+    void wakesWaitersOffThePublishingThread() throws Exception {
+        TranslationJob job = tracking.createJob("movie.mp4", "/tmp/movie.mp4");
+        CompletableFuture<Void> change = watcher.awaitChange(List.of(job.getJobId()), job.getVersion());
+
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> wokenOn = change.thenApply(ignored -> {
+            try {
+                // A slow response must not hold up the job
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Thread.currentThread().getName();
+        });
+
+        tracking.updateJobStatus(job.getJobId(), TranslationJob.JobStatus.COMPLETED);
+        release.countDown();
+
+        assertEquals("status-notifier", wokenOn.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void stopsWatchingCancelledRequests() {
+        TranslationJob job = tracking.createJob("movie.mp4", "/tmp/movie.mp4");
+        CompletableFuture<Void> change = watcher.awaitChange(List.of(job.getJobId()), job.getVersion());
+
+        change.cancel(false);
+
+        assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(watcher, "waitersByJobId")).isEmpty());
+    }
+}
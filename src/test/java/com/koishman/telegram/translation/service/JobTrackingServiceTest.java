@@ -0,0 +1,136 @@
+package com.koishman.telegram.translation.service;
+
+import com.koishman.telegram.translation.model.TranslationJob;
+import com.koishman.telegram.translation.model.TranslationJobRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Timeout(10)
+class JobTrackingServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private final AtomicInteger hashed = new AtomicInteger();
+    private final CountDownLatch hashingAllowed = new CountDownLatch(1);
+    private JobTrackingService tracking;
+
+    @BeforeEach
+    void setUp() {
+        FileStorageService storage = new FileStorageService() {
+            @Override
+            public String hashFile(File file) throws IOException {
+                try {
+                    hashingAllowed.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                hashed.incrementAndGet();
+                return super.hashFile(file);
+            }
+        };
+        ReflectionTestUtils.setField(storage, "uploadDir", dir.resolve("uploads").toString());
+        ReflectionTestUtils.setField(storage, "outputDir", dir.resolve("outputs").toString());
+
+        tracking = new JobTrackingService(storage, event -> { });
+        ReflectionTestUtils.setField(tracking, "dedupEnabled", true);
+        tracking.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        tracking.shutdown();
+    }
+
+    private TranslationJob job(String fileName) {
+        TranslationJob job = tracking.createJob(fileName, dir.resolve(fileName).toString());
+        TranslationJobRequest request = new TranslationJobRequest();
+        request.setTargetLanguages(List.of("ru"));
+        job.setRequest(request);
+        job.setContentHash("same-content");
+        return job;
+    }
+
+    private void addOutput(TranslationJob job, String key, String filename, String content) throws IOException {
+        Path output = dir.resolve("outputs").resolve(job.getJobId()).resolve(filename);
+        Files.createDirectories(output.getParent());
+        Files.write(output, content.getBytes(StandardCharsets.UTF_8));
+        tracking.addJobOutput(job.getJobId(), key, filename);
+    }
+
+    private void awaitHashing() throws Exception {
+        ExecutorService hasher = (ExecutorService) ReflectionTestUtils.getField(tracking, "outputHasher");
+        // Single-threaded, so this runs after everything queued before it
+        hasher.submit(() -> { }).get(5, TimeUnit.SECONDS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> hashes(TranslationJob job) {
+        return (Map<String, String>) tracking.describe(job).get("output_hashes");
+    }
+
+    @Test
+    void hashesOutputsInTheBackgroundOnceCompleted() throws Exception {
+        TranslationJob job = job("movie.mp4");
+        addOutput(job, "ru_srt", "movie_ru.srt", "subtitles");
+        addOutput(job, "ru_video", "movie_ru.mp4", "video");
+
+        // Completing and describing don't wait for hashing
+        tracking.updateJobStatus(job.getJobId(), TranslationJob.JobStatus.COMPLETED);
+        assertTrue(hashes(job).isEmpty());
+
+        hashingAllowed.countDown();
+        awaitHashing();
+
+        assertEquals(2, hashes(job).size());
+        assertEquals(64, hashes(job).get("ru_srt").length());
+        assertEquals(2, hashed.get());
+    }
+
+    @Test
+    void deduplicatedJobsTakeTheOriginalsHashes() throws Exception {
+        TranslationJob original = job("movie.mp4");
+        assertNull(tracking.deduplicate(original));
+        TranslationJob follower = job("clip.mp4");
+        assertSame(original, tracking.deduplicate(follower));
+
+        addOutput(original, "ru_srt", "movie_ru.srt", "subtitles");
+        tracking.updateJobStatus(original.getJobId(), TranslationJob.JobStatus.COMPLETED);
+        assertEquals(TranslationJob.JobStatus.COMPLETED, follower.getStatus());
+        assertEquals("clip_ru.srt", follower.getOutputs().get("ru_srt"));
+
+        hashingAllowed.countDown();
+        awaitHashing();
+
+        assertNotNull(hashes(original).get("ru_srt"));
+        assertEquals(hashes(original), hashes(follower));
+        assertEquals(1, hashed.get());
+
+        // A job deduplicated after the hashes are known gets them at once
+        TranslationJob late = job("late.mp4");
+        assertSame(original, tracking.deduplicate(late));
+        assertEquals(hashes(original), hashes(late));
+    }
+}
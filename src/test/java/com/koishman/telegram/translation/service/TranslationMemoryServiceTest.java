@@ -0,0 +1,136 @@
+package com.koishman.telegram.translation.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TranslationMemoryServiceTest {
+
+    @TempDir
+    Path memoryDir;
+
+    private TranslationMemoryService memory;
+
+    @AfterEach
+    void tearDown() {
+        memory.shutdown();
+    }
+
+    private TranslationMemoryService start(int maxEntries, int diskMaxEntries) {
+        TranslationMemoryService service = new TranslationMemoryService();
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "maxEntries", maxEntries);
+        ReflectionTestUtils.setField(service, "diskMaxEntries", diskMaxEntries);
+        ReflectionTestUtils.setField(service, "memoryDir", memoryDir.toString());
+        service.init();
+        return service;
+    }
+
+    private void restart(int maxEntries, int diskMaxEntries) {
+        memory.shutdown();
+        memory = start(maxEntries, diskMaxEntries);
+    }
+
+    private Path storeFile() {
+        return memoryDir.resolve("translation-memory.bin");
+    }
+
+    @Test
+    void normalizesWhitespaceInKeys() {
+        memory = start(10, 10);
+        memory.store("Hello   world ", "en", "ru", "nllb", "Привет, мир");
+
+        assertEquals("Привет, мир", memory.lookup(" Hello world", "en", "ru", "nllb"));
+        assertNull(memory.lookup("Hello world", "en", "de", "nllb"));
+    }
+
+    @Test
+    void keepsEntriesInOneFileAcrossRestarts() throws Exception {
+        memory = start(10, 10);
+        memory.store("one", "en", "ru", "nllb", "один");
+        memory.store("two", "en", "ru", "nllb", "два");
+        restart(10, 10);
+
+        assertEquals("один", memory.lookup("one", "en", "ru", "nllb"));
+        assertEquals("два", memory.lookup("two", "en", "ru", "nllb"));
+        assertEquals(2L, memory.getStats().get("disk_hits"));
+        try (var files = Files.list(memoryDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void capsDiskEntriesDroppingLeastRecentlyUsed() {
+        memory = start(1, 3);
+        memory.store("a", "en", "ru", "nllb", "A");
+        memory.store("b", "en", "ru", "nllb", "B");
+        memory.store("c", "en", "ru", "nllb", "C");
+        // Makes "b" the least recently used on disk
+        memory.lookup("a", "en", "ru", "nllb");
+        memory.store("d", "en", "ru", "nllb", "D");
+
+        assertEquals(3, memory.getStats().get("disk_entries"));
+        assertNull(memory.lookup("b", "en", "ru", "nllb"));
+        assertEquals("A", memory.lookup("a", "en", "ru", "nllb"));
+        assertEquals("D", memory.lookup("d", "en", "ru", "nllb"));
+    }
+
+    @Test
+    void compactsOnceEvictedRecordsOutnumberLiveOnes() throws Exception {
+        memory = start(1, 2);
+        for (int i = 0; i < 50; i++) {
+            memory.store("line " + i, "en", "ru", "nllb", "строка " + i);
+        }
+
+        // Two live records plus at most three evicted ones before the next rewrite
+        long recordBytes = 32 + 4 + "строка 49".getBytes(StandardCharsets.UTF_8).length;
+        assertTrue(Files.size(storeFile()) <= 5 * recordBytes);
+        assertEquals(Files.size(storeFile()), memory.getStats().get("disk_bytes"));
+        assertEquals("строка 48", memory.lookup("line 48", "en", "ru", "nllb"));
+        assertEquals("строка 49", memory.lookup("line 49", "en", "ru", "nllb"));
+
+        restart(1, 2);
+        assertEquals(2, memory.getStats().get("disk_entries"));
+        assertEquals("строка 49", memory.lookup("line 49", "en", "ru", "nllb"));
+    }
+
+    @Test
+    void dropsIncompleteRecordLeftByACrash() throws Exception {
+        memory = start(10, 10);
+        memory.store("kept", "en", "ru", "nllb", "сохранено");
+        memory.shutdown();
+        long complete = Files.size(storeFile());
+        Files.write(storeFile(), new byte[] {1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        memory = start(10, 10);
+        assertEquals(complete, Files.size(storeFile()));
+        assertEquals("сохранено", memory.lookup("kept", "en", "ru", "nllb"));
+
+        memory.store("next", "en", "ru", "nllb", "следующий");
+        restart(10, 10);
+        assertEquals("следующий", memory.lookup("next", "en", "ru", "nllb"));
+    }
+
+    @Test
+    void disabledMemoryRemembersNothing() {
+        memory = new TranslationMemoryService();
+        ReflectionTestUtils.setField(memory, "enabled", false);
+        ReflectionTestUtils.setField(memory, "memoryDir", memoryDir.toString());
+        memory.init();
+
+        memory.store("one", "en", "ru", "nllb", "один");
+        assertNull(memory.lookup("one", "en", "ru", "nllb"));
+        assertFalse(Files.exists(storeFile()));
+    }
+}
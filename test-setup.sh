@@ -58,10 +58,10 @@ else
     exit 1
 fi
 
-if [ -f "src/main/resources/python/translate_text.py" ]; then
-    echo "   ✓ translate_text.py found"
+if [ -f "src/main/resources/python/translation_worker.py" ]; then
+    echo "   ✓ translation_worker.py found"
 else
-    echo "   ✗ translate_text.py not found"
+    echo "   ✗ translation_worker.py not found"
     exit 1
 fi
 